@@ -0,0 +1,125 @@
+package de.hpi.nlp.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.hpi.nlp.model.BatchNaiveBayesScorer;
+import de.hpi.nlp.model.BayesModel;
+import de.hpi.nlp.model.CompiledBayesModel;
+import de.hpi.nlp.model.CompiledNaiveBayesModel;
+import de.hpi.nlp.model.NaiveBayesModel;
+import de.hpi.nlp.model.OhsumedArticle;
+import de.hpi.nlp.model.PackedCorpus;
+import de.hpi.nlp.preparation.OhsumedParser;
+
+/**
+ * Time to score a single test document against all categories, with the compiled models 
+ * NaiveBayesClassifier and BayesClassifier use. The documents are taken in turn from a 
+ * synthetic test corpus (see SyntheticCorpus). The batch benchmarks score BATCH_SIZE documents
+ * per invocation, wrapping around at the end of the corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassifyBenchmark {
+	private static final int BATCH_SIZE = 256;
+	
+	@Param({"0.1"})
+	private double scale;
+	
+	private OhsumedArticle[] articles;
+	// the articles followed by the first BATCH_SIZE of them again (repeated if there are fewer),
+	// so every batch is one range of BATCH_SIZE articles
+	private List<OhsumedArticle> batches;
+	private CompiledNaiveBayesModel naiveBayesModel;
+	private BatchNaiveBayesScorer batchScorer;
+	private CompiledBayesModel bayesModel;
+	private double[] scores;
+	private double[] batchScores;
+	private int next = 0;
+	
+	@Setup
+	public void setUp() throws IOException, URISyntaxException {
+		File directory = Files.createTempDirectory("synthetic-ohsumed").toFile();
+		PackedCorpus training;
+		PackedCorpus test;
+		try {
+			new SyntheticCorpus(42).write(directory, scale);
+			training = OhsumedParser.parsePacked(new File(directory, "training"), 1);
+			test = OhsumedParser.parsePacked(new File(directory, "test"), 1);
+		} finally {
+			SyntheticCorpus.delete(directory);
+		}
+		naiveBayesModel = new CompiledNaiveBayesModel(new NaiveBayesModel(training));
+		bayesModel = new CompiledBayesModel(new BayesModel(training));
+		batchScorer = new BatchNaiveBayesScorer(naiveBayesModel);
+		scores = new double[naiveBayesModel.getNumCategories()];
+		batchScores = new double[BATCH_SIZE * naiveBayesModel.getNumCategories()];
+		
+		articles = new OhsumedArticle[test.getNumArticles()];
+		for (int article = 0; article < articles.length; article++) {
+			articles[article] = test.getArticle(article);
+		}
+		batches = new ArrayList<>(articles.length + BATCH_SIZE);
+		for (int article = 0; article < articles.length + BATCH_SIZE; article++) {
+			batches.add(articles[article % articles.length]);
+		}
+	}
+	
+	private OhsumedArticle nextArticle() {
+		OhsumedArticle article = articles[next];
+		next = next + 1 == articles.length ? 0 : next + 1;
+		return article;
+	}
+	
+	@Benchmark
+	public int naiveBayes() {
+		return naiveBayesModel.bestCategory(nextArticle());
+	}
+	
+	@Benchmark
+	public int bayes() {
+		return bayesModel.bestCategory(nextArticle());
+	}
+	
+	@Benchmark
+	public double[] naiveBayesScores() {
+		naiveBayesModel.score(nextArticle(), scores);
+		return scores;
+	}
+	
+	@Benchmark
+	public double[] naiveBayesTermMajorScores() {
+		batchScorer.score(nextArticle(), scores);
+		return scores;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public double[] naiveBayesBatchScores() {
+		batchScorer.score(batches, next, next + BATCH_SIZE, batchScores);
+		next = (next + BATCH_SIZE) % articles.length;
+		return batchScores;
+	}
+}
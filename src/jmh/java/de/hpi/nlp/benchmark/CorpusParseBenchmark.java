@@ -0,0 +1,100 @@
+package de.hpi.nlp.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.hpi.nlp.model.OhsumedCorpus;
+import de.hpi.nlp.model.PackedCorpus;
+import de.hpi.nlp.preparation.OhsumedParser;
+import de.hpi.nlp.preparation.StopWordParser;
+
+/**
+ * Parsing a synthetic training corpus of the given scale (see SyntheticCorpus) with the given 
+ * number of threads, and the stop word filtering of single lines. A real corpus directory 
+ * (e.g. "-p corpus=OhsumedCorpus/training") is parsed instead of the synthetic one if given.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CorpusParseBenchmark {
+	@Param({"0.1"})
+	private double scale;
+	
+	@Param({"1"})
+	private int numThreads;
+	
+	@Param({""})
+	private String corpus;
+	
+	private File directory;
+	private File training;
+	private String[] lines;
+	
+	@Setup
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("synthetic-ohsumed").toFile();
+		SyntheticCorpus generator = new SyntheticCorpus(42);
+		if (corpus.isEmpty()) {
+			generator.write(directory, scale);
+			training = new File(directory, "training");
+		} else {
+			training = new File(corpus);
+		}
+		
+		List<String> sentences = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			sentences.add(generator.sentence(i % SyntheticCorpus.NUM_CATEGORIES));
+		}
+		lines = sentences.toArray(new String[sentences.size()]);
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		SyntheticCorpus.delete(directory);
+	}
+	
+	@Benchmark
+	public OhsumedCorpus parse() throws IOException, URISyntaxException {
+		return OhsumedParser.parse(training, numThreads);
+	}
+	
+	@Benchmark
+	public PackedCorpus parsePacked() throws IOException, URISyntaxException {
+		return OhsumedParser.parsePacked(training, numThreads);
+	}
+	
+	/**
+	 * One operation filters 1000 lines.
+	 */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public long parseLine() {
+		StopWordParser stopWordParser = StopWordParser.getInstance();
+		long numTokens = 0;
+		for (String line : lines) {
+			numTokens += stopWordParser.parseLine(line).size();
+		}
+		return numTokens;
+	}
+}
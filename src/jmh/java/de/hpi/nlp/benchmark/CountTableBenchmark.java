@@ -0,0 +1,110 @@
+package de.hpi.nlp.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.hpi.nlp.util.IntIntHashMap;
+import de.hpi.nlp.util.LongIntHashMap;
+
+/**
+ * Compares counting unigrams and bigrams with the primitive count tables against the 
+ * String keyed HashMaps (get-then-put) the models used before. The token stream is 
+ * Zipf distributed like natural language.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CountTableBenchmark {
+	@Param({"1000000"})
+	private int numTokens;
+	
+	@Param({"50000"})
+	private int vocabularySize;
+	
+	private String[] tokens;
+	private int[] termIds;
+	
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		String[] vocabulary = new String[vocabularySize];
+		for (int i = 0; i < vocabularySize; i++) {
+			vocabulary[i] = "term" + i;
+		}
+		
+		tokens = new String[numTokens];
+		termIds = new int[numTokens];
+		for (int i = 0; i < numTokens; i++) {
+			// approximately Zipf distributed rank
+			int rank = (int) Math.min(vocabularySize - 1, Math.exp(random.nextDouble() * Math.log(vocabularySize)) - 1);
+			termIds[i] = rank;
+			tokens[i] = vocabulary[rank];
+		}
+	}
+	
+	@Benchmark
+	public Map<String, Integer> unigramsHashMap() {
+		Map<String, Integer> counts = new HashMap<>();
+		for (String token : tokens) {
+			if (!counts.containsKey(token)) {
+				counts.put(token, 1);
+			} else {
+				counts.put(token, counts.get(token) + 1);
+			}
+		}
+		return counts;
+	}
+	
+	@Benchmark
+	public IntIntHashMap unigramsIntIntHashMap() {
+		IntIntHashMap counts = new IntIntHashMap();
+		for (int termId : termIds) {
+			counts.addTo(termId, 1);
+		}
+		return counts;
+	}
+	
+	@Benchmark
+	public Map<String, Map<String, Integer>> bigramsHashMap() {
+		Map<String, Map<String, Integer>> counts = new HashMap<>();
+		for (int i = 1; i < tokens.length; i++) {
+			Map<String, Integer> successors = counts.get(tokens[i - 1]);
+			if (successors == null) {
+				successors = new HashMap<>();
+				counts.put(tokens[i - 1], successors);
+			}
+			if (successors.containsKey(tokens[i])) {
+				successors.put(tokens[i], successors.get(tokens[i]) + 1);
+			} else {
+				successors.put(tokens[i], 1);
+			}
+		}
+		return counts;
+	}
+	
+	@Benchmark
+	public LongIntHashMap bigramsLongIntHashMap() {
+		LongIntHashMap counts = new LongIntHashMap();
+		for (int i = 1; i < termIds.length; i++) {
+			counts.addTo(LongIntHashMap.key(termIds[i - 1], termIds[i]), 1);
+		}
+		return counts;
+	}
+}
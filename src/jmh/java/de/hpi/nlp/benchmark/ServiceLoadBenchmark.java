@@ -0,0 +1,127 @@
+package de.hpi.nlp.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.hpi.nlp.model.CompiledNaiveBayesModel;
+import de.hpi.nlp.model.NaiveBayesModel;
+import de.hpi.nlp.preparation.OhsumedParser;
+import de.hpi.nlp.service.MicroBatcher;
+
+/**
+ * The classification service under load: every benchmark thread is a client which submits the
+ * raw documents of a synthetic test corpus (see SyntheticCorpus) to one MicroBatcher. classify
+ * waits for each document before it submits the next one, its sample distribution is the
+ * latency a client sees. classifyPipelined keeps WINDOW documents in flight per client and is
+ * reported per document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class ServiceLoadBenchmark {
+	private static final int WINDOW = 64;
+	
+	@Param({"0.1"})
+	private double scale;
+	
+	@Param({"32"})
+	private int batchSize;
+	
+	@Param({"2"})
+	private long maxDelayMillis;
+	
+	private String[] documents;
+	private MicroBatcher batcher;
+	
+	/**
+	 * Position of one client in the test documents.
+	 */
+	@State(Scope.Thread)
+	public static class Client {
+		private int next = 0;
+		private final List<MicroBatcher.Request> requests = new ArrayList<>(WINDOW);
+		
+		private String nextDocument(String[] documents) {
+			String document = documents[next];
+			next = next + 1 == documents.length ? 0 : next + 1;
+			return document;
+		}
+	}
+	
+	@Setup
+	public void setUp() throws IOException, URISyntaxException {
+		File directory = Files.createTempDirectory("synthetic-ohsumed").toFile();
+		CompiledNaiveBayesModel scorer;
+		List<String> texts = new ArrayList<>();
+		try {
+			new SyntheticCorpus(42).write(directory, scale);
+			scorer = new CompiledNaiveBayesModel(
+					new NaiveBayesModel(OhsumedParser.parsePacked(new File(directory, "training"), 1)));
+			for (File classFolder : new File(directory, "test").listFiles()) {
+				if (classFolder.isDirectory()) {
+					for (File file : classFolder.listFiles()) {
+						texts.add(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+					}
+				}
+			}
+		} finally {
+			SyntheticCorpus.delete(directory);
+		}
+		documents = texts.toArray(new String[texts.size()]);
+		
+		int numWorkers = Runtime.getRuntime().availableProcessors();
+		batcher = new MicroBatcher(scorer, numWorkers, batchSize, maxDelayMillis, TimeUnit.MILLISECONDS,
+				4 * numWorkers * batchSize);
+	}
+	
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		batcher.shutdown();
+	}
+	
+	@Benchmark
+	public String classify(Client client) throws InterruptedException {
+		return batcher.submit(client.nextDocument(documents)).getCategory();
+	}
+	
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OperationsPerInvocation(WINDOW)
+	public String classifyPipelined(Client client) throws InterruptedException {
+		List<MicroBatcher.Request> requests = client.requests;
+		for (int i = 0; i < WINDOW; i++) {
+			requests.add(batcher.submit(client.nextDocument(documents)));
+		}
+		String category = null;
+		for (MicroBatcher.Request request : requests) {
+			category = request.getCategory();
+		}
+		requests.clear();
+		return category;
+	}
+}
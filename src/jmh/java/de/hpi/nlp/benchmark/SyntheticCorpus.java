@@ -0,0 +1,160 @@
+package de.hpi.nlp.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.hpi.nlp.preparation.StopWordParser;
+
+/**
+ * Writes a corpus in the OHSUMED layout (training/ and test/ with one folder per category and 
+ * one file per article, the first line being the title) so the benchmarks run without the real 
+ * corpus. Scale 1 is roughly the size of OHSUMED: 23 categories, 10000 training and 10000 test 
+ * articles of about 10 sentences. Terms are Zipf distributed, every category prefers some terms 
+ * of its own, about a third of the tokens are stop words and some have inflection suffixes, 
+ * so that parsing, stemming and classifying do realistic work. The same seed gives the same corpus.
+ * 
+ * Usage: SyntheticCorpus <target directory> [scale]
+ */
+public class SyntheticCorpus {
+	public static final int NUM_CATEGORIES = 23;
+	public static final int ARTICLES_AT_SCALE_ONE = 10000;
+	private static final int VOCABULARY_SIZE = 50000;
+	private static final int TERMS_PER_CATEGORY = 500;
+	private static final String[] SUFFIXES = {"", "", "", "s", "ing", "ed", "ation", "ly"};
+	
+	private final Random random;
+	private final String[] vocabulary;
+	private final String[] stopWords;
+	private final int[][] categoryTerms;
+	
+	public SyntheticCorpus(long seed) {
+		this.random = new Random(seed);
+		this.stopWords = StopWordParser.getInstance().getStopWords().toArray(new String[0]);
+		this.vocabulary = new String[VOCABULARY_SIZE];
+		for (int i = 0; i < VOCABULARY_SIZE; i++) {
+			StringBuilder word = new StringBuilder();
+			int length = 3 + random.nextInt(8);
+			for (int j = 0; j < length; j++) {
+				word.append((char) ('a' + random.nextInt(26)));
+			}
+			vocabulary[i] = word.toString();
+		}
+		this.categoryTerms = new int[NUM_CATEGORIES][TERMS_PER_CATEGORY];
+		for (int category = 0; category < NUM_CATEGORIES; category++) {
+			for (int i = 0; i < TERMS_PER_CATEGORY; i++) {
+				categoryTerms[category][i] = zipfRank();
+			}
+		}
+	}
+	
+	public static String categoryName(int category) {
+		return String.format("C%02d", category + 1);
+	}
+	
+	/**
+	 * Writes training and test articles below the directory.
+	 */
+	public void write(File directory, double scale) throws IOException {
+		int numArticles = (int) Math.max(NUM_CATEGORIES, Math.round(scale * ARTICLES_AT_SCALE_ONE));
+		for (String split : new String[] {"training", "test"}) {
+			for (int article = 0; article < numArticles; article++) {
+				int category = article % NUM_CATEGORIES;
+				File folder = new File(new File(directory, split), categoryName(category));
+				if (!folder.isDirectory() && !folder.mkdirs()) {
+					throw new IOException("Could not create " + folder);
+				}
+				File file = new File(folder, String.format("%07d", article));
+				try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+					for (String sentence : article(category)) {
+						out.write(sentence);
+						out.write('\n');
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The sentences of a new article, the first one is the title.
+	 */
+	public List<String> article(int category) {
+		List<String> sentences = new ArrayList<>();
+		int numSentences = 3 + random.nextInt(15);
+		for (int i = 0; i < numSentences; i++) {
+			sentences.add(sentence(category));
+		}
+		return sentences;
+	}
+	
+	public String sentence(int category) {
+		StringBuilder sentence = new StringBuilder();
+		int numTokens = 5 + random.nextInt(25);
+		for (int i = 0; i < numTokens; i++) {
+			double r = random.nextDouble();
+			String word;
+			if (r < 0.3) {
+				word = stopWords[random.nextInt(stopWords.length)];
+			} else if (r < 0.45) {
+				word = vocabulary[categoryTerms[category][random.nextInt(TERMS_PER_CATEGORY)]] + suffix();
+			} else {
+				word = vocabulary[zipfRank()] + suffix();
+			}
+			if (random.nextInt(10) == 0) {
+				word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+			}
+			if (i > 0) {
+				sentence.append(' ');
+			}
+			sentence.append(word);
+		}
+		return sentence.append(" .").toString();
+	}
+	
+	private String suffix() {
+		return SUFFIXES[random.nextInt(SUFFIXES.length)];
+	}
+	
+	/**
+	 * Approximately Zipf distributed rank.
+	 */
+	private int zipfRank() {
+		return (int) Math.min(VOCABULARY_SIZE - 1, Math.exp(random.nextDouble() * Math.log(VOCABULARY_SIZE)) - 1);
+	}
+	
+	public static void delete(File directory) throws IOException {
+		Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+			
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+	
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: SyntheticCorpus <target directory> [scale]");
+			return;
+		}
+		double scale = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+		new SyntheticCorpus(42).write(new File(args[0]), scale);
+	}
+}
@@ -0,0 +1,116 @@
+package de.hpi.nlp.benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tartarus.martin.Stemmer;
+
+import de.hpi.nlp.model.TermDictionary;
+import de.hpi.nlp.preparation.StopWordParser;
+import de.hpi.nlp.preparation.Tokenizer;
+
+/**
+ * Compares the Tokenizer against the previous preprocessing of a line (split, toLowerCase,
+ * stop word check, a new Stemmer per token and a String per term). Run with -prof gc to see 
+ * the allocation rate per operation, one operation is a whole batch of lines.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+	@Param({"1000"})
+	private int numLines;
+	
+	@Param({"20000"})
+	private int vocabularySize;
+	
+	private String[] lines;
+	private char[][] lineChars;
+	private Tokenizer tokenizer;
+	
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		String[] stopWords = StopWordParser.getInstance().getStopWords().toArray(new String[0]);
+		String[] vocabulary = new String[vocabularySize];
+		for (int i = 0; i < vocabularySize; i++) {
+			StringBuilder word = new StringBuilder();
+			int length = 3 + random.nextInt(8);
+			for (int j = 0; j < length; j++) {
+				word.append((char) ('a' + random.nextInt(26)));
+			}
+			// typical english suffixes, so the stemmer has something to do
+			word.append(new String[] {"", "s", "ing", "ed", "ation", "ly"}[random.nextInt(6)]);
+			vocabulary[i] = random.nextInt(10) == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word.toString();
+		}
+		
+		lines = new String[numLines];
+		lineChars = new char[numLines][];
+		for (int i = 0; i < numLines; i++) {
+			StringBuilder line = new StringBuilder();
+			int numTokens = 10 + random.nextInt(20);
+			for (int j = 0; j < numTokens; j++) {
+				if (random.nextInt(3) == 0) {
+					line.append(stopWords[random.nextInt(stopWords.length)]);
+				} else {
+					// approximately Zipf distributed rank
+					int rank = (int) Math.min(vocabularySize - 1, Math.exp(random.nextDouble() * Math.log(vocabularySize)) - 1);
+					line.append(vocabulary[rank]);
+				}
+				line.append(' ');
+			}
+			lines[i] = line.toString();
+			lineChars[i] = lines[i].toCharArray();
+		}
+		
+		tokenizer = new Tokenizer();
+		// both variants only look up terms that are already known
+		for (String line : lines) {
+			tokenizer.tokenize(line, true);
+		}
+	}
+	
+	@Benchmark
+	public long splitAndStem() {
+		StopWordParser stopWordParser = StopWordParser.getInstance();
+		TermDictionary dictionary = TermDictionary.getInstance();
+		long sum = 0;
+		for (String line : lines) {
+			ArrayList<String> tokens = stopWordParser.parseLine(line);
+			int[] termIds = new int[tokens.size()];
+			for (int i = 0; i < termIds.length; i++) {
+				String token = tokens.get(i);
+				Stemmer stemmer = new Stemmer();
+				stemmer.add(token.toCharArray(), token.length());
+				stemmer.stem();
+				termIds[i] = dictionary.intern(stemmer.toString());
+			}
+			sum += termIds.length;
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	public long tokenizer() {
+		long sum = 0;
+		for (char[] chars : lineChars) {
+			sum += tokenizer.tokenize(chars, 0, chars.length, true).length;
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,78 @@
+package de.hpi.nlp.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.hpi.nlp.model.BayesModel;
+import de.hpi.nlp.model.CompiledBayesModel;
+import de.hpi.nlp.model.CompiledNaiveBayesModel;
+import de.hpi.nlp.model.NaiveBayesModel;
+import de.hpi.nlp.model.PackedCorpus;
+import de.hpi.nlp.preparation.OhsumedParser;
+
+/**
+ * Building both models from a parsed synthetic training corpus (see SyntheticCorpus),
+ * and compiling them into their scoring form.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrainBenchmark {
+	@Param({"0.1"})
+	private double scale;
+	
+	private PackedCorpus training;
+	private NaiveBayesModel naiveBayesModel;
+	private BayesModel bayesModel;
+	
+	@Setup
+	public void setUp() throws IOException, URISyntaxException {
+		File directory = Files.createTempDirectory("synthetic-ohsumed").toFile();
+		try {
+			new SyntheticCorpus(42).write(directory, scale);
+			training = OhsumedParser.parsePacked(new File(directory, "training"), 1);
+		} finally {
+			SyntheticCorpus.delete(directory);
+		}
+		naiveBayesModel = new NaiveBayesModel(training);
+		bayesModel = new BayesModel(training);
+	}
+	
+	@Benchmark
+	public NaiveBayesModel naiveBayesModel() {
+		return new NaiveBayesModel(training);
+	}
+	
+	@Benchmark
+	public BayesModel bayesModel() {
+		return new BayesModel(training);
+	}
+	
+	@Benchmark
+	public CompiledNaiveBayesModel compileNaiveBayesModel() {
+		return new CompiledNaiveBayesModel(naiveBayesModel);
+	}
+	
+	@Benchmark
+	public CompiledBayesModel compileBayesModel() {
+		return new CompiledBayesModel(bayesModel);
+	}
+}
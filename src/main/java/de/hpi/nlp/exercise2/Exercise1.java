@@ -3,21 +3,87 @@ package de.hpi.nlp.exercise2;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.BitSet;
 
+import de.hpi.nlp.metrics.Metrics;
+import de.hpi.nlp.model.ClassificationEvaluator;
+import de.hpi.nlp.model.ComplementNaiveBayesClassifier;
+import de.hpi.nlp.model.ComplementNaiveBayesModel;
+import de.hpi.nlp.model.CrossValidation;
+import de.hpi.nlp.model.EvaluationResult;
+import de.hpi.nlp.model.FeatureSelector;
+import de.hpi.nlp.model.FeatureSelector.Criterion;
 import de.hpi.nlp.model.NaiveBayesClassifier;
+import de.hpi.nlp.model.NGramModel;
 import de.hpi.nlp.model.NaiveBayesModel;
-import de.hpi.nlp.model.OhsumedCorpus;
+import de.hpi.nlp.model.PackedCorpus;
+import de.hpi.nlp.model.ParallelTrainer;
+import de.hpi.nlp.model.SmoothingSweep;
 import de.hpi.nlp.preparation.OhsumedParser;
 
 public class Exercise1 {
 	public static void main(String[] args) throws URISyntaxException, IOException {
 		String trainingDir = "/OhsumedCorpus/training/";
 		String testDir = "/OhsumedCorpus/test/";
-		OhsumedCorpus training = OhsumedParser.parse(new File(Exercise1.class.getResource(trainingDir).toURI()));
-		OhsumedCorpus test = OhsumedParser.parse(new File(Exercise1.class.getResource(testDir).toURI()));
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		PackedCorpus training = OhsumedParser.parseCached(new File(Exercise1.class.getResource(trainingDir).toURI()), numThreads);
+		PackedCorpus test = OhsumedParser.parseCached(new File(Exercise1.class.getResource(testDir).toURI()), numThreads);
 		
-		NaiveBayesModel model = new NaiveBayesModel(training);
-		double precision = NaiveBayesClassifier.determine(model, test);
+		// -Dde.hpi.nlp.folds=<k> runs a k-fold cross-validation on the training corpus instead
+		int numFolds = Integer.getInteger("de.hpi.nlp.folds", 0);
+		if (numFolds > 0) {
+			System.out.println("Naive Bayes:\n" + CrossValidation.naiveBayes(training, numFolds, numThreads));
+			System.out.println("Bigram Bayes:\n" + CrossValidation.bayes(training, numFolds, numThreads));
+			return;
+		}
+		
+		// -Dde.hpi.nlp.ngramOrder=<n> classifies with n-gram category language models instead
+		int ngramOrder = Integer.getInteger("de.hpi.nlp.ngramOrder", 0);
+		if (ngramOrder > 0) {
+			NGramModel model = new NGramModel(training, ngramOrder);
+			System.out.println("Overall Classification Precision: " 
+					+ ClassificationEvaluator.evaluate(model, test, numThreads).getAccuracy());
+			return;
+		}
+		
+		// -Dde.hpi.nlp.features=<n> builds the model from the n best terms only,
+		// -Dde.hpi.nlp.featureCriterion chooses how they are ranked (see FeatureSelector.Criterion)
+		int numFeatures = Integer.getInteger("de.hpi.nlp.features", 0);
+		BitSet features = null;
+		if (numFeatures > 0) {
+			Criterion criterion = Criterion.valueOf(System.getProperty("de.hpi.nlp.featureCriterion", Criterion.CHI_SQUARE.name()));
+			features = FeatureSelector.select(training, criterion, numFeatures, numThreads);
+			System.err.println("Selected " + features.cardinality() + " features by " + criterion);
+		}
+		// -Dde.hpi.nlp.smoothing=<alpha>,<alpha>,... evaluates Lidstone smoothing for each alpha instead
+		String smoothing = System.getProperty("de.hpi.nlp.smoothing");
+		if (smoothing != null) {
+			String[] values = smoothing.split(",");
+			double[] alphas = new double[values.length];
+			for(int i = 0; i < values.length; i++) {
+				alphas[i] = Double.parseDouble(values[i].trim());
+			}
+			NaiveBayesModel naiveBayes = ParallelTrainer.trainNaiveBayes(training, features, numThreads);
+			EvaluationResult[] naiveBayesResults = SmoothingSweep.lidstoneNaiveBayes(naiveBayes, test, alphas, numThreads);
+			EvaluationResult[] bayesResults = SmoothingSweep.lidstoneBayes(ParallelTrainer.trainBayes(training, numThreads), test, alphas, numThreads);
+			for(int i = 0; i < alphas.length; i++) {
+				System.out.println("alpha " + alphas[i] + ": Naive Bayes " + naiveBayesResults[i].getAccuracy() 
+						+ ", Bigram Bayes " + bayesResults[i].getAccuracy());
+			}
+			return;
+		}
+		double precision;
+		if (Boolean.getBoolean("de.hpi.nlp.complement")) {
+			// -Dde.hpi.nlp.complement=true uses TF-IDF weighted complement naive bayes instead
+			ComplementNaiveBayesModel model = new ComplementNaiveBayesModel(training, features);
+			precision = ComplementNaiveBayesClassifier.determine(model, test);
+		} else {
+			NaiveBayesModel model = ParallelTrainer.trainNaiveBayes(training, features, numThreads);
+			precision = NaiveBayesClassifier.determine(model, test);
+		}
 		System.out.println("Overall Classification Precision: " + precision);
+		if (Metrics.ENABLED) {
+			System.err.print(Metrics.dump());
+		}
 	}
 }
@@ -0,0 +1,78 @@
+package de.hpi.nlp.exercise2;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.hpi.nlp.model.EvaluationResult;
+import de.hpi.nlp.sentiment.SentimentAnalyzer;
+import de.hpi.nlp.sentiment.SentimentScore;
+
+/**
+ * Classifies the polarity of the annotated tweets in dev_gold_b.tsv with the sentiment lexicon
+ * and reports precision, recall and f-measure per polarity and the throughput of the analyzer.
+ */
+public class Exercise2 {
+	public static final String TWEETS_RESOURCE = "/dev_gold_b.tsv";
+	private static final String NOT_AVAILABLE = "Not Available";
+	
+	public static void main(String[] args) throws IOException {
+		List<String> polarities = new ArrayList<>();
+		List<String> texts = new ArrayList<>();
+		InputStream in = Exercise2.class.getResourceAsStream(TWEETS_RESOURCE);
+		if (in == null) {
+			throw new IllegalStateException("Tweets not found on classpath: " + TWEETS_RESOURCE);
+		}
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// id, user id, polarity, text
+				String[] fields = line.split("\t", 4);
+				if (fields.length == 4 && !fields[3].equals(NOT_AVAILABLE)) {
+					polarities.add(fields[2]);
+					texts.add(fields[3]);
+				}
+			}
+		}
+		
+		String[] categories = { SentimentScore.POSITIVE, SentimentScore.NEGATIVE, SentimentScore.NEUTRAL };
+		long[][] confusionMatrix = new long[categories.length][categories.length];
+		SentimentAnalyzer analyzer = new SentimentAnalyzer();
+		for(int i = 0; i < texts.size(); i++) {
+			String determined = analyzer.score(texts.get(i)).getPolarity();
+			confusionMatrix[indexOf(categories, polarities.get(i))][indexOf(categories, determined)]++;
+		}
+		System.out.println(new EvaluationResult(categories, confusionMatrix));
+		
+		// throughput, after the JIT compiler has seen the analyzer a few times
+		char[][] chars = new char[texts.size()][];
+		for(int i = 0; i < texts.size(); i++) {
+			chars[i] = texts.get(i).toCharArray();
+		}
+		long numTokens = 0;
+		long start = 0;
+		for(int round = 0; round < 200; round++) {
+			if (round == 100) {
+				numTokens = 0;
+				start = System.nanoTime();
+			}
+			for(char[] text : chars) {
+				numTokens += analyzer.score(text, 0, text.length).getNumTokens();
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%d tweets, %.1f million tokens per second%n", texts.size(), numTokens / seconds / 1e6);
+	}
+	
+	private static int indexOf(String[] categories, String category) {
+		for(int i = 0; i < categories.length; i++) {
+			if (categories[i].equals(category)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Unknown polarity: " + category);
+	}
+}
@@ -0,0 +1,37 @@
+package de.hpi.nlp.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number of events, e.g. parsed articles. Cheap to increment from many threads.
+ */
+public class Counter {
+	private final String name;
+	private final LongAdder count = new LongAdder();
+	
+	Counter(String name) {
+		this.name = name;
+	}
+	
+	public void increment() {
+		add(1);
+	}
+	
+	public void add(long n) {
+		if (Metrics.ENABLED) {
+			count.add(n);
+		}
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public long getCount() {
+		return count.sum();
+	}
+	
+	void reset() {
+		count.reset();
+	}
+}
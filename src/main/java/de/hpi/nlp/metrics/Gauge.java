@@ -0,0 +1,29 @@
+package de.hpi.nlp.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Last value of a size, e.g. of the vocabulary or of a model in bytes.
+ */
+public class Gauge {
+	private final String name;
+	private final AtomicLong value = new AtomicLong();
+	
+	Gauge(String name) {
+		this.name = name;
+	}
+	
+	public void set(long newValue) {
+		if (Metrics.ENABLED) {
+			value.set(newValue);
+		}
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public long getValue() {
+		return value.get();
+	}
+}
@@ -0,0 +1,166 @@
+package de.hpi.nlp.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import de.hpi.nlp.util.LatencyHistogram;
+
+/**
+ * Registry of the timers, counters and gauges of the pipeline. Metrics are off unless the JVM 
+ * is started with -Dde.hpi.nlp.metrics=true. As ENABLED is a static final, the JIT removes 
+ * all recording code when they are off; when they are on, recording is a few lock-free 
+ * additions and the metrics are exported through JMX (see MetricsMXBean) and dump().
+ * Call sites keep their metrics in static final fields, e.g. 
+ * <pre>private static final Timer SCORE_TIMER = Metrics.timer("score.naiveBayes");</pre>
+ */
+public final class Metrics {
+	public static final boolean ENABLED = Boolean.getBoolean("de.hpi.nlp.metrics");
+	public static final String OBJECT_NAME = "de.hpi.nlp:type=Metrics";
+	
+	// sorted by name, so the dump groups the stages
+	private static final ConcurrentMap<String, Timer> TIMERS = new ConcurrentSkipListMap<>();
+	private static final ConcurrentMap<String, Counter> COUNTERS = new ConcurrentSkipListMap<>();
+	private static final ConcurrentMap<String, Gauge> GAUGES = new ConcurrentSkipListMap<>();
+	private static volatile long startNanos = System.nanoTime();
+	
+	static {
+		if (ENABLED) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), new ObjectName(OBJECT_NAME));
+			} catch (JMException e) {
+				System.err.println("Could not register " + OBJECT_NAME + ": " + e.getMessage());
+			}
+		}
+	}
+	
+	private Metrics() {
+	}
+	
+	public static Timer timer(String name) {
+		Timer timer = TIMERS.get(name);
+		if (timer == null) {
+			TIMERS.putIfAbsent(name, new Timer(name));
+			timer = TIMERS.get(name);
+		}
+		return timer;
+	}
+	
+	public static Counter counter(String name) {
+		Counter counter = COUNTERS.get(name);
+		if (counter == null) {
+			COUNTERS.putIfAbsent(name, new Counter(name));
+			counter = COUNTERS.get(name);
+		}
+		return counter;
+	}
+	
+	public static Gauge gauge(String name) {
+		Gauge gauge = GAUGES.get(name);
+		if (gauge == null) {
+			GAUGES.putIfAbsent(name, new Gauge(name));
+			gauge = GAUGES.get(name);
+		}
+		return gauge;
+	}
+	
+	/**
+	 * Resets timers and counters, gauges keep their last value.
+	 */
+	public static void reset() {
+		for(Timer timer : TIMERS.values()) {
+			timer.reset();
+		}
+		for(Counter counter : COUNTERS.values()) {
+			counter.reset();
+		}
+		startNanos = System.nanoTime();
+	}
+	
+	/**
+	 * All metrics as text, one per line. Rates are per second since start or the last reset.
+	 */
+	public static String dump() {
+		if (!ENABLED) {
+			return "metrics disabled, start with -Dde.hpi.nlp.metrics=true\n";
+		}
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+		StringBuilder dump = new StringBuilder();
+		for(Timer timer : TIMERS.values()) {
+			LatencyHistogram histogram = timer.getHistogram();
+			dump.append(String.format("timer   %-28s count %d (%.1f/s), total %.1f ms, mean %.3f ms, p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+					timer.getName(), timer.getCount(), timer.getCount() / seconds, timer.getTotalNanos() / 1e6, 
+					histogram.getMean() / 1e6, histogram.getPercentile(50) / 1e6, histogram.getPercentile(99) / 1e6, 
+					histogram.getMax() / 1e6));
+		}
+		for(Counter counter : COUNTERS.values()) {
+			dump.append(String.format("counter %-28s %d (%.1f/s)%n", counter.getName(), counter.getCount(), counter.getCount() / seconds));
+		}
+		for(Gauge gauge : GAUGES.values()) {
+			dump.append(String.format("gauge   %-28s %d%n", gauge.getName(), gauge.getValue()));
+		}
+		return dump.toString();
+	}
+	
+	private static class MBean implements MetricsMXBean {
+		@Override
+		public Map<String, Long> getCounters() {
+			Map<String, Long> counters = new LinkedHashMap<>();
+			for(Counter counter : COUNTERS.values()) {
+				counters.put(counter.getName(), counter.getCount());
+			}
+			return counters;
+		}
+		
+		@Override
+		public Map<String, Long> getGauges() {
+			Map<String, Long> gauges = new LinkedHashMap<>();
+			for(Gauge gauge : GAUGES.values()) {
+				gauges.put(gauge.getName(), gauge.getValue());
+			}
+			return gauges;
+		}
+		
+		@Override
+		public Map<String, Long> getTimerCounts() {
+			Map<String, Long> counts = new LinkedHashMap<>();
+			for(Timer timer : TIMERS.values()) {
+				counts.put(timer.getName(), timer.getCount());
+			}
+			return counts;
+		}
+		
+		@Override
+		public Map<String, Double> getTimerMeanMillis() {
+			Map<String, Double> means = new LinkedHashMap<>();
+			for(Timer timer : TIMERS.values()) {
+				means.put(timer.getName(), timer.getHistogram().getMean() / 1e6);
+			}
+			return means;
+		}
+		
+		@Override
+		public Map<String, Double> getTimerP99Millis() {
+			Map<String, Double> percentiles = new LinkedHashMap<>();
+			for(Timer timer : TIMERS.values()) {
+				percentiles.put(timer.getName(), timer.getHistogram().getPercentile(99) / 1e6);
+			}
+			return percentiles;
+		}
+		
+		@Override
+		public String getDump() {
+			return dump();
+		}
+		
+		@Override
+		public void reset() {
+			Metrics.reset();
+		}
+	}
+}
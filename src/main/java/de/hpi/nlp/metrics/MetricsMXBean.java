@@ -0,0 +1,22 @@
+package de.hpi.nlp.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the metrics, registered as de.hpi.nlp:type=Metrics when metrics are enabled.
+ */
+public interface MetricsMXBean {
+	Map<String, Long> getCounters();
+	
+	Map<String, Long> getGauges();
+	
+	Map<String, Long> getTimerCounts();
+	
+	Map<String, Double> getTimerMeanMillis();
+	
+	Map<String, Double> getTimerP99Millis();
+	
+	String getDump();
+	
+	void reset();
+}
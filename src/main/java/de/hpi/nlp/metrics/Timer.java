@@ -0,0 +1,62 @@
+package de.hpi.nlp.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import de.hpi.nlp.util.LatencyHistogram;
+
+/**
+ * Durations of one stage in nanoseconds. Used as
+ * <pre>
+ * long start = TIMER.start();
+ * ...
+ * TIMER.stop(start);
+ * </pre>
+ * which does nothing at all when metrics are disabled.
+ */
+public class Timer {
+	private final String name;
+	private final LatencyHistogram histogram = new LatencyHistogram();
+	private final LongAdder totalNanos = new LongAdder();
+	
+	Timer(String name) {
+		this.name = name;
+	}
+	
+	public long start() {
+		return Metrics.ENABLED ? System.nanoTime() : 0;
+	}
+	
+	public void stop(long start) {
+		if (Metrics.ENABLED) {
+			record(System.nanoTime() - start);
+		}
+	}
+	
+	public void record(long nanos) {
+		if (Metrics.ENABLED) {
+			histogram.record(nanos);
+			totalNanos.add(nanos);
+		}
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public long getCount() {
+		return histogram.getCount();
+	}
+	
+	public long getTotalNanos() {
+		return totalNanos.sum();
+	}
+	
+	public LatencyHistogram getHistogram() {
+		return histogram;
+	}
+	
+	void reset() {
+		histogram.reset();
+		totalNanos.reset();
+	}
+}
@@ -1,6 +1,7 @@
 package de.hpi.nlp.model;
 
-import java.util.Map;
+import de.hpi.nlp.util.IntIntHashMap;
+import de.hpi.nlp.util.LongIntHashMap;
 
 public class BayesClassifier {
 	
@@ -9,136 +10,50 @@ public class BayesClassifier {
 	 * correctly annotated with the right classes/categories per article.
 	 * Returns the overall classification precision.
 	 */
-	public static double determine(BayesModel model, OhsumedCorpus corpus) {
-		Map<String, Map<String, Map<String, Integer>>> categoryBigrams = model.getCategoryBigrams();
+	public static double determine(BayesModel model, Iterable<OhsumedArticle> corpus) {
+		EvaluationResult result = evaluate(model, corpus, Runtime.getRuntime().availableProcessors());
 		
-		int correct = 0;
-		int incorrect = 0;
-		
-		for(OhsumedArticle article : corpus) {
-			String correctCategory = article.getCategory();
-			
-			if (!categoryBigrams.containsKey(article.getCategory())) {
-				System.err.println("Category did not exist in training data! Cannot proceed.");
-				System.exit(-1);
-			}
-
-			String determinedCategory = determineBestCategory(article, model);
-			
-			if (correctCategory.equals(determinedCategory)) {
-				correct++;
-			} else {
-				incorrect++;
-			}
+		for(int category = model.getCategoryBigrams().size(); category < result.getNumCategories(); category++) {
+			System.err.println("Category did not exist in training data: " + result.getCategory(category));
 		}
-		
-		return (double) correct / (correct + incorrect);
-	}
-	
-	// TODO: precision, recall, f-measure per class
-	
-	private static String determineBestCategory(OhsumedArticle article, BayesModel model) {
-		Map<String, Map<String, Map<String, Integer>>> categoryBigrams = model.getCategoryBigrams();
-		
-		String bestCategory = null;
-		double maxProbability = Double.NEGATIVE_INFINITY;
-		
-		for(String categoryName : categoryBigrams.keySet()) {
-			double prior = determinePriorClassProbability(model, categoryName);
-			double articleInClass = determineArticleInClassLogProbability(model, article, categoryName);
-			
-			double classProbability = Math.log(prior) + articleInClass;
-			
-			// argmax { log(prior) + log(wordInClass) }
-			if (classProbability > maxProbability) {
-				maxProbability = classProbability;
-				bestCategory = categoryName;
-			}
-		}
-		return bestCategory;
+		return result.getAccuracy();
 	}
 	
 	/**
-	 * Return prior probability, which describes how likely
-	 * it is for any document to be in this class.
+	 * Classifies the test corpus with the given number of threads, without any output.
+	 * The result also holds precision, recall and f-measure per class.
 	 */
-	private static double determinePriorClassProbability(BayesModel model, String categoryName) {
-		//System.out.println("catName: " + categoryName);
-		long numAllClassInstances = model.getNumArticles();
-		long numInstancesInClass = model.getNumArticlesPerCategory(categoryName);
-		
-		return (double) numInstancesInClass / numAllClassInstances;
+	public static EvaluationResult evaluate(BayesModel model, Iterable<OhsumedArticle> corpus, int numThreads) {
+		// all log probabilities are computed once up front
+		CompiledBayesModel compiledModel = new CompiledBayesModel(model);
+		return ClassificationEvaluator.evaluate(compiledModel, corpus, numThreads);
 	}
 	
-	/**
-	 * Return probability that a given article belongs to a given class.
-	 */
-	private static double determineArticleInClassLogProbability(BayesModel model, OhsumedArticle article, String categoryName) {
-		Map<String, Map<String, Map<String, Integer>>> categoryBigrams = model.getCategoryBigrams();
-		Map<String, Map<String, Integer>> bigrams = categoryBigrams.get(categoryName);
-		Map<String, Map<String, Integer>> categoryTermFrequency = model.getCategoryTermFrequency();
-		Map<String, Integer> termFrequency = categoryTermFrequency.get(categoryName);
-		
-		double articleProbability = 0.0;
+	public static double tokenProbabilityWithoutPreviousToken(int currToken, LongIntHashMap bigrams, IntIntHashMap termFrequency) {
+		int prevTokenOccurrences = termFrequency.get(BayesModel.BEGINNING_OF_SENTENCE_ID);
+		// if contained get count, if not leave it 0
+		int currTokenOccurrences = termFrequency.get(currToken);
+		int vocabSize = termFrequency.size();
 		
-		for(Sentence s : article) {
-			String prevToken = "";
-			String currToken = "";
-			double sentenceProbability = 0.0;
-			
-			for(Token tok : s) {
-				currToken = tok.getText();
-				
-				// double wordProbability = (double) (occurrenceCount + 1.0) / (numInstancesInClass + vocabSize);
-				if (prevToken.equals("")) {
-					prevToken = BayesModel.BEGINNING_OF_SENTENCE;
-					sentenceProbability += Math.log(tokenProbabilityWithoutPreviousToken(currToken, bigrams, termFrequency));
-				} else {
-					sentenceProbability += Math.log(tokenProbabilityWithPreviousToken(prevToken, currToken, bigrams, termFrequency));
-				}
-				prevToken = currToken;
-				
-			}
-			//System.out.println(sentenceProbability);
-			articleProbability += sentenceProbability;
-		}
-		return articleProbability;
+		return tokenProbability(currTokenOccurrences, prevTokenOccurrences, vocabSize);
 	}
 	
-	public static double tokenProbabilityWithoutPreviousToken(String currToken, Map<String, Map<String, Integer>> bigrams, Map<String, Integer> termFrequency) {
-		int prevTokenOccurrences = termFrequency.get(BayesModel.BEGINNING_OF_SENTENCE);
-		int currTokenOccurrences = 0;
+	public static double tokenProbabilityWithPreviousToken(int prevToken, int currToken, LongIntHashMap bigrams, IntIntHashMap termFrequency) {
 		int vocabSize = termFrequency.size();
+		// a term may be followed by others iff it has a term frequency (every term but the first 
+		// of a sentence is counted), otherwise both counts are 0: (0.0 + 1.0) / (0.0 + vocabSize)
+		int prevTokenOccurrences = termFrequency.get(prevToken);
+		// 0 if the bigram has not been seen: (0.0 + 1.0) / (prevTokenOccs + vocabSize)
+		int bigramOccurrences = prevToken < 0 || currToken < 0 ? 0 : bigrams.get(LongIntHashMap.key(prevToken, currToken));
 		
-		if (termFrequency.containsKey(currToken)) {
-			// if contained get count, if not leave it 0
-			currTokenOccurrences = termFrequency.get(currToken);
-		}
-		
-		return (currTokenOccurrences + 1.0) / (prevTokenOccurrences + vocabSize);
+		return tokenProbability(bigramOccurrences, prevTokenOccurrences, vocabSize);
 	}
 	
-	public static double tokenProbabilityWithPreviousToken(String prevToken, String currToken, Map<String, Map<String, Integer>> bigrams, Map<String, Integer> termFrequency) {
-		int prevTokenOccurrences = 0;
-		int bigramOccurrences = 0;
-		int vocabSize = termFrequency.size();
-		
-		if (!bigrams.containsKey(prevToken)) {
-			// probability = (0.0 + 1.0) / (0.0 + vocabSize);
-			bigramOccurrences = 0;
-			prevTokenOccurrences = 0;
-		} else {
-			if (!bigrams.get(prevToken).containsKey(currToken)) {
-				// probability = (0.0 + 1.0) / (prevTokenOccs + vocabSize);
-				bigramOccurrences = 0;
-				prevTokenOccurrences = termFrequency.get(prevToken);
-			}
-			else {
-				// probability = (bigramOccs + 1.0) / (prevTokenOccs + vocabSize);
-				bigramOccurrences = bigrams.get(prevToken).get(currToken);
-				prevTokenOccurrences = termFrequency.get(prevToken);
-			}
-		}
+	/**
+	 * P(token | previous token) with add one smoothing from the counts of the bigram and of the 
+	 * previous token, or BEGINNING_OF_SENTENCE for the first token of a sentence.
+	 */
+	public static double tokenProbability(int bigramOccurrences, int prevTokenOccurrences, int vocabSize) {
 		return (bigramOccurrences + 1.0) / (prevTokenOccurrences + vocabSize);
 	}
 	
@@ -1,110 +1,216 @@
 package de.hpi.nlp.model;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+
+import de.hpi.nlp.metrics.Gauge;
+import de.hpi.nlp.metrics.Metrics;
+import de.hpi.nlp.metrics.Timer;
+import de.hpi.nlp.util.IntIntHashMap;
+import de.hpi.nlp.util.LongIntHashMap;
 
 public class BayesModel {
 	public static final String BEGINNING_OF_SENTENCE = "<s>";
-	// each category (or class) is a bigram language model
-	private final Map<String, Map<String, Map<String, Integer>>> categoryBigrams;
-	private final Map<String, Map<String, Integer>> categoryTermFrequency;
+	public static final int BEGINNING_OF_SENTENCE_ID = TermDictionary.getInstance().intern(BEGINNING_OF_SENTENCE);
+	// each category (or class) is a bigram language model, all terms are given as term ids,
+	// a bigram is keyed by LongIntHashMap.key(previous term, current term)
+	private static final Timer COUNT_TIMER = Metrics.timer("train.bayes.count");
+	private static final Timer MERGE_TIMER = Metrics.timer("train.bayes.merge");
+	private static final Gauge MODEL_BYTES = Metrics.gauge("model.bayes.bytes");
+	private static final Gauge NUM_BIGRAMS = Metrics.gauge("model.bayes.bigrams");
+	private final Map<String, LongIntHashMap> categoryBigrams;
+	private final Map<String, IntIntHashMap> categoryTermFrequency;
 	private final Map<String, Long> numArticlesPerCategory;
 	private final long numArticles;
 	
 	public BayesModel(OhsumedCorpus corpus) {
-		Set<String> categories = corpus.getCategories();
+		this(PackedCorpus.of(corpus));
+	}
+	
+	public BayesModel(PackedCorpus corpus) {
+		this(corpus, 0, corpus.getNumArticles());
+		updateGauges();
+	}
+	
+	/**
+	 * Counts the articles from fromArticle to toArticle (exclusive) only, a shard of the 
+	 * corpus (see ParallelTrainer). Categories without an article in the range are left out.
+	 */
+	BayesModel(PackedCorpus corpus, int fromArticle, int toArticle) {
+		long start = COUNT_TIMER.start();
+		int numCategories = corpus.getNumCategories();
 		this.categoryBigrams = new HashMap<>();
-		this.numArticles = corpus.getNumArticles();
+		this.numArticles = toArticle - fromArticle;
 		this.numArticlesPerCategory = new HashMap<>();
 		this.categoryTermFrequency = new HashMap<>();
+		LongIntHashMap[] bigrams = new LongIntHashMap[numCategories];
+		IntIntHashMap[] termFrequencies = new IntIntHashMap[numCategories];
+		long[] articles = new long[numCategories];
 		
-		Iterator<String> it = categories.iterator();
-		while (it.hasNext()) {
-			String categoryName = it.next();
-			numArticlesPerCategory.put(categoryName, corpus.getNumArticlesPerCategory(categoryName)); 
+		// every class has its own bigrams and term frequencies
+		for(int category = 0; category < numCategories; category++) {
+			bigrams[category] = new LongIntHashMap();
+			termFrequencies[category] = new IntIntHashMap();
 		}
 		
 		// build bayes model for each category/class there is, so that it can later be used
-		// do determine how much a new unseen article matches the classes (and which one matches best)
-		Set<String> categoryNames = corpus.getCategories();
-		it = categoryNames.iterator();
-		while (it.hasNext()) {
-			String categoryName = it.next();
+		// do determine how much a new unseen article matches the classes (and which one matches best),
+		// all articles are counted in a single scan over the term ids
+		int[] termIds = corpus.getTermIds();
+		int[] sentenceOffsets = corpus.getSentenceOffsets();
+		int[] articleOffsets = corpus.getArticleOffsets();
+		int[] articleCategories = corpus.getArticleCategories();
+		for(int article = fromArticle; article < toArticle; article++) {
+			int category = articleCategories[article];
+			LongIntHashMap categoryLocalBigrams = bigrams[category];
+			IntIntHashMap categoryLocalTermFrequency = termFrequencies[category];
+			articles[category]++;
 			
-			// every class has its own bigrams and term frequencies
-			if (!categoryBigrams.containsKey(categoryName)) {
-				categoryBigrams.put(categoryName, new HashMap<String, Map<String, Integer>>());
-			}
-			Map<String, Map<String, Integer>> categoryLocalBigrams = categoryBigrams.get(categoryName);
-			
-			if (!categoryTermFrequency.containsKey(categoryName)) {
-				categoryTermFrequency.put(categoryName, new HashMap<String, Integer>());
-			}
-			Map<String, Integer> categoryLocalTermFrequency = categoryTermFrequency.get(categoryName);
-			
-			// iterate over all articles of one category/class
-			Iterator<OhsumedArticle> iter = corpus.getArticlesOfCategory(categoryName);
-			while (iter.hasNext()) {
-				OhsumedArticle article = iter.next();
-				for(Sentence sentence : article) {
-					// reset per sentence
-					String prevToken = "";
+			for(int sentence = articleOffsets[article]; sentence < articleOffsets[article + 1]; sentence++) {
+				int from = sentenceOffsets[sentence];
+				// reset per sentence
+				int prevToken = -1;
+				
+				for(int i = from; i < sentenceOffsets[sentence + 1]; i++) {	
+					// feature selection: use only a subset of words (features)
 					
-					for(Token token : sentence) {	
-						// feature selection: use only a subset of words (features)
-						
-						// increase occurrence count of the token
-						String currToken = token.getText();
-
-						if (prevToken.equals("")) {
-							currToken = BEGINNING_OF_SENTENCE;
-							
-							if (categoryLocalBigrams.get(currToken) == null) {
-								categoryLocalBigrams.put(currToken, new HashMap<String, Integer>());
-							}
-						} else {
-							// anywhere in the sentence
-								
-							if (!categoryLocalBigrams.containsKey(currToken)) {
-								categoryLocalBigrams.put(currToken, new HashMap<String, Integer>());
-							}
+					// increase occurrence count of the token
+					int currToken = termIds[i];
 
-							Map<String, Integer> tempMap = categoryLocalBigrams.get(prevToken);
-
-							if (tempMap.containsKey(currToken)) {
-								tempMap.put(currToken, tempMap.get(currToken) + 1);
-							} else {
-								tempMap.put(currToken, 1);
-							}
-							
-						}
-						
-						prevToken = currToken;
-						
-						// save term frequency for later probability calculation
-						if (categoryLocalTermFrequency.get(currToken) != null) {
-							categoryLocalTermFrequency.put(currToken, categoryLocalTermFrequency.get(currToken) + 1);
-						} else {
-							categoryLocalTermFrequency.put(currToken, 1);
-						}	
+					if (i == from) {
+						currToken = BEGINNING_OF_SENTENCE_ID;
+					} else {
+						// anywhere in the sentence
+						categoryLocalBigrams.addTo(LongIntHashMap.key(prevToken, currToken), 1);
 					}
+					
+					prevToken = currToken;
+					
+					// save term frequency for later probability calculation,
+					// every term that may precede another one is counted here as well
+					categoryLocalTermFrequency.addTo(currToken, 1);
 				}
 			}
 		}
-
+		
+		for(int category = 0; category < numCategories; category++) {
+			if (articles[category] > 0) {
+				categoryBigrams.put(corpus.getCategory(category), bigrams[category]);
+				categoryTermFrequency.put(corpus.getCategory(category), termFrequencies[category]);
+				numArticlesPerCategory.put(corpus.getCategory(category), articles[category]);
+			}
+		}
+		COUNT_TIMER.stop(start);
+	}
+	
+	/**
+	 * Used by merge and by CountsFile to restore stored counts.
+	 */
+	BayesModel(Map<String, LongIntHashMap> categoryBigrams, Map<String, IntIntHashMap> categoryTermFrequency, 
+			Map<String, Long> numArticlesPerCategory, long numArticles) {
+		this.categoryBigrams = categoryBigrams;
+		this.categoryTermFrequency = categoryTermFrequency;
+		this.numArticlesPerCategory = numArticlesPerCategory;
+		this.numArticles = numArticles;
+	}
+	
+	/**
+	 * Adds up the counts of several models, e.g. trained on shards of a corpus on different 
+	 * threads or machines (see ParallelTrainer and CountsFile). The models are not changed.
+	 */
+	public static BayesModel merge(List<BayesModel> models) {
+		return combine(models, 1);
+	}
+	
+	/**
+	 * The counts of total without the counts of part, i.e. the model of all articles of total 
+	 * that are not part of part, without counting them again. All articles of part have to be 
+	 * counted in total as well. Categories without any article left are dropped. CrossValidation 
+	 * scores its folds without building this model, the tests check it against this one.
+	 */
+	static BayesModel subtract(BayesModel total, BayesModel part) {
+		return combine(Arrays.asList(total, part), -1);
+	}
+	
+	/**
+	 * The first model plus factor times every other model.
+	 */
+	private static BayesModel combine(List<BayesModel> models, int factor) {
+		long start = MERGE_TIMER.start();
+		Map<String, LongIntHashMap> categoryBigrams = new HashMap<>();
+		Map<String, IntIntHashMap> categoryTermFrequency = new HashMap<>();
+		Map<String, Long> numArticlesPerCategory = new HashMap<>();
+		long numArticles = 0;
+		for(int i = 0; i < models.size(); i++) {
+			BayesModel model = models.get(i);
+			int modelFactor = i == 0 ? 1 : factor;
+			for(String categoryName : model.numArticlesPerCategory.keySet()) {
+				LongIntHashMap bigrams = categoryBigrams.get(categoryName);
+				if (bigrams == null) {
+					if (modelFactor < 0) {
+						throw new IllegalArgumentException("Category " + categoryName + " is not part of the model");
+					}
+					categoryBigrams.put(categoryName, new LongIntHashMap(model.categoryBigrams.get(categoryName)));
+					categoryTermFrequency.put(categoryName, new IntIntHashMap(model.categoryTermFrequency.get(categoryName)));
+					numArticlesPerCategory.put(categoryName, model.numArticlesPerCategory.get(categoryName));
+				} else {
+					bigrams.addAll(model.categoryBigrams.get(categoryName), modelFactor);
+					categoryTermFrequency.get(categoryName).addAll(model.categoryTermFrequency.get(categoryName), modelFactor);
+					numArticlesPerCategory.put(categoryName, numArticlesPerCategory.get(categoryName) 
+							+ modelFactor * model.numArticlesPerCategory.get(categoryName));
+				}
+			}
+			numArticles += modelFactor * model.numArticles;
+		}
+		
+		for(String categoryName : new ArrayList<>(numArticlesPerCategory.keySet())) {
+			long categoryArticles = numArticlesPerCategory.get(categoryName);
+			if (categoryArticles < 0) {
+				throw new IllegalArgumentException("Category " + categoryName + " has less articles than subtracted");
+			} else if (categoryArticles == 0) {
+				categoryBigrams.remove(categoryName);
+				categoryTermFrequency.remove(categoryName);
+				numArticlesPerCategory.remove(categoryName);
+			}
+		}
+		BayesModel combined = new BayesModel(categoryBigrams, categoryTermFrequency, numArticlesPerCategory, numArticles);
+		MERGE_TIMER.stop(start);
+		combined.updateGauges();
+		return combined;
+	}
+	
+	private void updateGauges() {
+		if (Metrics.ENABLED) {
+			long bytes = 0;
+			long numBigrams = 0;
+			for(String categoryName : categoryBigrams.keySet()) {
+				bytes += categoryBigrams.get(categoryName).sizeInBytes() + categoryTermFrequency.get(categoryName).sizeInBytes();
+				numBigrams += categoryBigrams.get(categoryName).size();
+			}
+			MODEL_BYTES.set(bytes);
+			NUM_BIGRAMS.set(numBigrams);
+		}
 	}
 
-	public Map<String, Map<String, Integer>> getCategoryTermFrequency() {
+	public Map<String, IntIntHashMap> getCategoryTermFrequency() {
 		return categoryTermFrequency;
 	}
+	
+	/**
+	 * Number of distinct terms (including BEGINNING_OF_SENTENCE) that occur in the given category.
+	 */
+	public int getVocabularySize(String categoryName) {
+		return categoryTermFrequency.get(categoryName).size();
+	}
 
 	public long getNumArticles() {
 		return numArticles;
 	}
 	
-	public Map<String, Map<String, Map<String, Integer>>> getCategoryBigrams() {
+	public Map<String, LongIntHashMap> getCategoryBigrams() {
 		return categoryBigrams;
 	}
 	
@@ -0,0 +1,27 @@
+package de.hpi.nlp.model;
+
+/**
+ * A trained model that assigns categories to articles. Implementations are immutable,
+ * so one instance can be used from several threads at once.
+ */
+public interface CategoryScorer {
+	
+	public int getNumCategories();
+	
+	public String getCategory(int category);
+	
+	/**
+	 * Index of the category, -1 if the model does not know it.
+	 */
+	public int getCategoryIndex(String categoryName);
+	
+	/**
+	 * Writes the log score of every category into scores, which has to have getNumCategories() entries.
+	 */
+	public void score(OhsumedArticle article, double[] scores);
+	
+	/**
+	 * Returns the index of the best scoring category.
+	 */
+	public int bestCategory(OhsumedArticle article);
+}
@@ -0,0 +1,118 @@
+package de.hpi.nlp.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Classifies an annotated test corpus in parallel and collects the results in a confusion matrix.
+ * Every worker fills a matrix of its own, these are added up at the end, so no state is shared 
+ * while classifying. Articles whose category is unknown to the model are counted as misclassified,
+ * their category is added to the result as an extra row.
+ */
+public class ClassificationEvaluator {
+	/**
+	 * Number of articles a worker classifies on its own before the work is not split any further.
+	 */
+	private static final int MIN_ARTICLES_PER_TASK = 64;
+	
+	public static EvaluationResult evaluate(CategoryScorer scorer, Iterable<OhsumedArticle> articles) {
+		return evaluate(scorer, articles, Runtime.getRuntime().availableProcessors());
+	}
+	
+	public static EvaluationResult evaluate(CategoryScorer scorer, Iterable<OhsumedArticle> articles, int numThreads) {
+		List<OhsumedArticle> articleList = new ArrayList<>();
+		TreeSet<String> unknownCategories = new TreeSet<>();
+		for(OhsumedArticle article : articles) {
+			articleList.add(article);
+			if (scorer.getCategoryIndex(article.getCategory()) < 0) {
+				unknownCategories.add(article.getCategory());
+			}
+		}
+		
+		// the categories of the model keep their index, unknown ones are appended
+		int numModelCategories = scorer.getNumCategories();
+		String[] categories = new String[numModelCategories + unknownCategories.size()];
+		for(int category = 0; category < numModelCategories; category++) {
+			categories[category] = scorer.getCategory(category);
+		}
+		int category = numModelCategories;
+		for(String categoryName : unknownCategories) {
+			categories[category++] = categoryName;
+		}
+		
+		EvaluationTask task = new EvaluationTask(scorer, articleList, categories, 0, articleList.size());
+		long[][] confusionMatrix;
+		if (numThreads <= 1) {
+			confusionMatrix = task.compute();
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(numThreads);
+			try {
+				confusionMatrix = pool.invoke(task);
+			} finally {
+				pool.shutdown();
+			}
+		}
+		return new EvaluationResult(categories, confusionMatrix);
+	}
+	
+	private static class EvaluationTask extends RecursiveTask<long[][]> {
+		private static final long serialVersionUID = 1L;
+		private final CategoryScorer scorer;
+		private final List<OhsumedArticle> articles;
+		private final String[] categories;
+		private final int from;
+		private final int to;
+		
+		EvaluationTask(CategoryScorer scorer, List<OhsumedArticle> articles, String[] categories, int from, int to) {
+			this.scorer = scorer;
+			this.articles = articles;
+			this.categories = categories;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected long[][] compute() {
+			if (to - from <= MIN_ARTICLES_PER_TASK) {
+				return classify();
+			}
+			int middle = (from + to) >>> 1;
+			EvaluationTask left = new EvaluationTask(scorer, articles, categories, from, middle);
+			EvaluationTask right = new EvaluationTask(scorer, articles, categories, middle, to);
+			right.fork();
+			long[][] confusionMatrix = left.compute();
+			long[][] rightMatrix = right.join();
+			for(int correct = 0; correct < confusionMatrix.length; correct++) {
+				for(int determined = 0; determined < confusionMatrix.length; determined++) {
+					confusionMatrix[correct][determined] += rightMatrix[correct][determined];
+				}
+			}
+			return confusionMatrix;
+		}
+		
+		private long[][] classify() {
+			long[][] confusionMatrix = new long[categories.length][categories.length];
+			for(int i = from; i < to; i++) {
+				OhsumedArticle article = articles.get(i);
+				int correct = scorer.getCategoryIndex(article.getCategory());
+				if (correct < 0) {
+					correct = indexOf(article.getCategory());
+				}
+				confusionMatrix[correct][scorer.bestCategory(article)]++;
+			}
+			return confusionMatrix;
+		}
+		
+		private int indexOf(String categoryName) {
+			for(int category = scorer.getNumCategories(); category < categories.length; category++) {
+				if (categories[category].equals(categoryName)) {
+					return category;
+				}
+			}
+			throw new IllegalStateException("Category has not been collected: " + categoryName);
+		}
+	}
+}
@@ -0,0 +1,325 @@
+package de.hpi.nlp.model;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.hpi.nlp.metrics.Metrics;
+import de.hpi.nlp.metrics.Timer;
+import de.hpi.nlp.util.IntIntHashMap;
+import de.hpi.nlp.util.LongIntHashMap;
+
+/**
+ * Immutable scoring form of a BayesModel, which scores an article against all categories 
+ * in a single pass over its tokens. Tables are laid out term major, i.e. the values of all 
+ * categories for one term are next to each other:
+ * - log P(term | <s>) for the first token of a sentence,
+ * - log P(unseen term | previous term), the smoothed value of every bigram that has not been seen,
+ * - for each bigram seen in any category one sparse row with the categories it has been seen in
+ *   and their log probabilities, found with a single lookup of the bigram key.
+ * Safe to use from several threads, scoring does not allocate. All tables are buffers, so a model 
+ * loaded with ModelFile can be scored directly from the memory mapped file.
+ */
+public class CompiledBayesModel implements CategoryScorer {
+	private static final Timer SCORE_TIMER = Metrics.timer("score.bayes");
+	
+	private final String[] categories;
+	private final Map<String, Integer> categoryIndex;
+	private final double[] logPriors;
+	private final ModelVocabulary vocabulary;
+	private final int numTerms;
+	
+	// [term row * numCategories + category], plus one row for terms unknown to the model
+	private final DoubleBuffer firstLogProbabilities;
+	private final DoubleBuffer unseenLogProbabilities;
+	
+	// open addressing index of the bigram keys (see LongIntHashMap.findSlot) with the row of each key,
+	// the entries of row r are at rowOffsets[r] ... rowOffsets[r + 1] - 1
+	private final LongBuffer bigramKeys;
+	private final IntBuffer bigramRows;
+	private final IntBuffer rowOffsets;
+	private final IntBuffer rowCategories;
+	private final DoubleBuffer rowLogProbabilities;
+	
+	// the scores of the current sentence and token, and of the article in bestCategory
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch(categories.length);
+		}
+	};
+	
+	private static class Scratch {
+		final double[] sentenceScores;
+		final double[] tokenScores;
+		final double[] articleScores;
+		
+		Scratch(int numCategories) {
+			this.sentenceScores = new double[numCategories];
+			this.tokenScores = new double[numCategories];
+			this.articleScores = new double[numCategories];
+		}
+	}
+	
+	public CompiledBayesModel(BayesModel model) {
+		Map<String, LongIntHashMap> categoryBigrams = model.getCategoryBigrams();
+		Map<String, IntIntHashMap> categoryTermFrequency = model.getCategoryTermFrequency();
+		int numCategories = categoryBigrams.size();
+		this.numTerms = TermDictionary.getInstance().size();
+		this.vocabulary = ModelVocabulary.ofDictionary(numTerms);
+		
+		this.categories = new String[numCategories];
+		this.categoryIndex = new HashMap<>();
+		this.logPriors = new double[numCategories];
+		double[] first = new double[(numTerms + 1) * numCategories];
+		double[] unseen = new double[(numTerms + 1) * numCategories];
+		
+		LongIntHashMap[] bigrams = new LongIntHashMap[numCategories];
+		IntIntHashMap[] termFrequencies = new IntIntHashMap[numCategories];
+		int category = 0;
+		for(String categoryName : categoryBigrams.keySet()) {
+			categories[category] = categoryName;
+			categoryIndex.put(categoryName, category);
+			bigrams[category] = categoryBigrams.get(categoryName);
+			termFrequencies[category] = categoryTermFrequency.get(categoryName);
+			logPriors[category] = Math.log((double) model.getNumArticlesPerCategory(categoryName) / model.getNumArticles());
+			category++;
+		}
+		
+		// the same add one smoothing as in BayesClassifier, unknown terms (-1) have no counts at all
+		for(int term = 0; term <= numTerms; term++) {
+			int modelTerm = term < numTerms ? term : -1;
+			for(category = 0; category < numCategories; category++) {
+				first[term * numCategories + category] = Math.log(
+						BayesClassifier.tokenProbabilityWithoutPreviousToken(modelTerm, bigrams[category], termFrequencies[category]));
+				unseen[term * numCategories + category] = Math.log(
+						BayesClassifier.tokenProbabilityWithPreviousToken(modelTerm, -1, bigrams[category], termFrequencies[category]));
+			}
+		}
+		this.firstLogProbabilities = DoubleBuffer.wrap(first);
+		this.unseenLogProbabilities = DoubleBuffer.wrap(unseen);
+		
+		// count the categories each bigram has been seen in to lay out the rows
+		LongIntHashMap keyRows = new LongIntHashMap();
+		IntIntHashMap rowSizes = new IntIntHashMap();
+		int numEntries = 0;
+		for(category = 0; category < numCategories; category++) {
+			LongIntHashMap categoryLocalBigrams = bigrams[category];
+			for(int slot = 0; slot < categoryLocalBigrams.capacity(); slot++) {
+				if (categoryLocalBigrams.isOccupied(slot)) {
+					long key = categoryLocalBigrams.keyAt(slot);
+					int row = keyRows.get(key) - 1; // rows are stored + 1, as absent keys are 0
+					if (row < 0) {
+						row = keyRows.size();
+						keyRows.put(key, row + 1);
+					}
+					rowSizes.addTo(row, 1);
+					numEntries++;
+				}
+			}
+		}
+		int numRows = keyRows.size();
+		int[] offsets = new int[numRows + 1];
+		for(int row = 0; row < numRows; row++) {
+			offsets[row + 1] = offsets[row] + rowSizes.get(row);
+		}
+		
+		int[] entryCategories = new int[numEntries];
+		double[] entryLogProbabilities = new double[numEntries];
+		int[] rowFill = Arrays.copyOf(offsets, numRows);
+		for(category = 0; category < numCategories; category++) {
+			LongIntHashMap categoryLocalBigrams = bigrams[category];
+			for(int slot = 0; slot < categoryLocalBigrams.capacity(); slot++) {
+				if (categoryLocalBigrams.isOccupied(slot)) {
+					long key = categoryLocalBigrams.keyAt(slot);
+					int prevToken = (int) (key >>> 32);
+					int currToken = (int) key;
+					int entry = rowFill[keyRows.get(key) - 1]++;
+					entryCategories[entry] = category;
+					entryLogProbabilities[entry] = Math.log(BayesClassifier.tokenProbabilityWithPreviousToken(
+							prevToken, currToken, bigrams[category], termFrequencies[category]));
+				}
+			}
+		}
+		
+		// freeze the index, the slots keep their positions
+		long[] keys = new long[keyRows.capacity()];
+		int[] rows = new int[keyRows.capacity()];
+		for(int slot = 0; slot < keys.length; slot++) {
+			keys[slot] = keyRows.keyAt(slot);
+			rows[slot] = keyRows.valueAt(slot) - 1;
+		}
+		this.bigramKeys = LongBuffer.wrap(keys);
+		this.bigramRows = IntBuffer.wrap(rows);
+		this.rowOffsets = IntBuffer.wrap(offsets);
+		this.rowCategories = IntBuffer.wrap(entryCategories);
+		this.rowLogProbabilities = DoubleBuffer.wrap(entryLogProbabilities);
+	}
+	
+	/**
+	 * Used by ModelFile to restore a stored model.
+	 */
+	CompiledBayesModel(String[] categories, double[] logPriors, ModelVocabulary vocabulary, 
+			DoubleBuffer firstLogProbabilities, DoubleBuffer unseenLogProbabilities, LongBuffer bigramKeys, 
+			IntBuffer bigramRows, IntBuffer rowOffsets, IntBuffer rowCategories, DoubleBuffer rowLogProbabilities) {
+		this.categories = categories;
+		this.categoryIndex = new HashMap<>();
+		for(int category = 0; category < categories.length; category++) {
+			categoryIndex.put(categories[category], category);
+		}
+		this.logPriors = logPriors;
+		this.vocabulary = vocabulary;
+		this.numTerms = vocabulary.size();
+		this.firstLogProbabilities = firstLogProbabilities;
+		this.unseenLogProbabilities = unseenLogProbabilities;
+		this.bigramKeys = bigramKeys;
+		this.bigramRows = bigramRows;
+		this.rowOffsets = rowOffsets;
+		this.rowCategories = rowCategories;
+		this.rowLogProbabilities = rowLogProbabilities;
+	}
+	
+	public int getNumCategories() {
+		return categories.length;
+	}
+	
+	public String getCategory(int category) {
+		return categories[category];
+	}
+	
+	/**
+	 * Index of the category, -1 if the model does not know it.
+	 */
+	public int getCategoryIndex(String categoryName) {
+		Integer category = categoryIndex.get(categoryName);
+		return category == null ? -1 : category;
+	}
+	
+	/**
+	 * Row of the term in the term major tables, unknown terms share the last row.
+	 */
+	private int termIndex(int termId) {
+		int row = vocabulary.row(termId);
+		return row >= 0 ? row : numTerms;
+	}
+	
+	/**
+	 * Writes log P(category) + log P(article | category) of every category into scores,
+	 * which has to have getNumCategories() entries. All categories are scored in one pass.
+	 */
+	public void score(OhsumedArticle article, double[] scores) {
+		long start = SCORE_TIMER.start();
+		int numCategories = categories.length;
+		Arrays.fill(scores, 0, numCategories, 0.0);
+		Scratch threadScratch = scratch.get();
+		double[] sentenceScores = threadScratch.sentenceScores;
+		double[] tokenScores = threadScratch.tokenScores;
+		
+		for(Sentence s : article) {
+			int[] termIds = s.getTermIds();
+			int numTokens = s.getNumTokens();
+			Arrays.fill(sentenceScores, 0.0);
+			
+			int prevToken = -1;
+			for(int i = 0; i < numTokens; i++) {
+				int currToken = termIndex(termIds[i]);
+				if (i == 0) {
+					int base = currToken * numCategories;
+					for(int category = 0; category < numCategories; category++) {
+						sentenceScores[category] += firstLogProbabilities.get(base + category);
+					}
+					prevToken = currToken;
+					continue;
+				}
+				
+				int base = prevToken * numCategories;
+				for(int category = 0; category < numCategories; category++) {
+					tokenScores[category] = unseenLogProbabilities.get(base + category);
+				}
+				if (prevToken < numTerms && currToken < numTerms) {
+					// overwrite the unseen values of the categories this bigram has been seen in
+					int slot = LongIntHashMap.findSlot(bigramKeys, LongIntHashMap.key(prevToken, currToken));
+					if (slot >= 0) {
+						int row = bigramRows.get(slot);
+						for(int entry = rowOffsets.get(row); entry < rowOffsets.get(row + 1); entry++) {
+							tokenScores[rowCategories.get(entry)] = rowLogProbabilities.get(entry);
+						}
+					}
+				}
+				for(int category = 0; category < numCategories; category++) {
+					sentenceScores[category] += tokenScores[category];
+				}
+				prevToken = currToken;
+			}
+			for(int category = 0; category < numCategories; category++) {
+				scores[category] += sentenceScores[category];
+			}
+		}
+		for(int category = 0; category < numCategories; category++) {
+			scores[category] = logPriors[category] + scores[category];
+		}
+		SCORE_TIMER.stop(start);
+	}
+	
+	/**
+	 * argmax { log(prior) + log(wordInClass) }, returns the index of the best category.
+	 */
+	public int bestCategory(OhsumedArticle article) {
+		double[] scores = scratch.get().articleScores;
+		score(article, scores);
+		
+		int bestCategory = -1;
+		double maxProbability = Double.NEGATIVE_INFINITY;
+		for(int category = 0; category < scores.length; category++) {
+			if (scores[category] > maxProbability) {
+				maxProbability = scores[category];
+				bestCategory = category;
+			}
+		}
+		return bestCategory;
+	}
+	
+	public String classify(OhsumedArticle article) {
+		int category = bestCategory(article);
+		return category < 0 ? null : categories[category];
+	}
+	
+	ModelVocabulary getVocabulary() {
+		return vocabulary;
+	}
+	
+	double[] getLogPriors() {
+		return logPriors;
+	}
+	
+	DoubleBuffer getFirstLogProbabilities() {
+		return firstLogProbabilities.duplicate();
+	}
+	
+	DoubleBuffer getUnseenLogProbabilities() {
+		return unseenLogProbabilities.duplicate();
+	}
+	
+	LongBuffer getBigramKeys() {
+		return bigramKeys.duplicate();
+	}
+	
+	IntBuffer getBigramRows() {
+		return bigramRows.duplicate();
+	}
+	
+	IntBuffer getRowOffsets() {
+		return rowOffsets.duplicate();
+	}
+	
+	IntBuffer getRowCategories() {
+		return rowCategories.duplicate();
+	}
+	
+	DoubleBuffer getRowLogProbabilities() {
+		return rowLogProbabilities.duplicate();
+	}
+}
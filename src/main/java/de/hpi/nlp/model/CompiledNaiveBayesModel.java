@@ -0,0 +1,316 @@
+package de.hpi.nlp.model;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.hpi.nlp.metrics.Metrics;
+import de.hpi.nlp.metrics.Timer;
+import de.hpi.nlp.util.IntIntHashMap;
+import de.hpi.nlp.util.TopKHeap;
+
+/**
+ * Immutable scoring form of a NaiveBayesModel. All log probabilities are computed once, 
+ * so scoring an article is nothing but array lookups and additions, without any hashing, 
+ * Math.log calls or allocations. Safe to use from several threads.
+ * The table is a DoubleBuffer, so a model loaded with ModelFile can be scored directly 
+ * from the memory mapped file.
+ * A model restricted to features (see FeatureSelector) only has rows for these and ignores 
+ * all other terms. The same table also holds the weights of a ComplementNaiveBayesModel.
+ */
+public class CompiledNaiveBayesModel implements CategoryScorer {
+	private static final Timer SCORE_TIMER = Metrics.timer("score.naiveBayes");
+	
+	private final String[] categories;
+	private final Map<String, Integer> categoryIndex;
+	private final ModelVocabulary vocabulary;
+	private final int numTerms;
+	// log P(term | category), at category * numTerms + term row
+	private final DoubleBuffer logLikelihoods;
+	// the same table as plain array, if it is on the heap and rows are term ids, otherwise null
+	private final double[] heapLogLikelihoods;
+	// log P(term | category) of terms the model has never seen
+	private final double[] unknownLogLikelihoods;
+	private final double[] logPriors;
+	// category indexes by descending prior, the order topCategories scores them in
+	private final int[] priorOrder;
+	
+	/**
+	 * Compiles the current state of the model, later updates of the model are not seen.
+	 */
+	public CompiledNaiveBayesModel(NaiveBayesModel model) {
+		model = model.snapshot();
+		Map<String, IntIntHashMap> categoryUnigrams = model.getCategoryUnigrams();
+		int numCategories = categoryUnigrams.size();
+		BitSet features = model.getFeatures();
+		// a model restricted to features only has rows for these, all other terms are ignored
+		int[] termIds = termIdsOf(features);
+		this.vocabulary = termIds == null 
+				? ModelVocabulary.ofDictionary(TermDictionary.getInstance().size()) : ModelVocabulary.ofTermIds(termIds);
+		this.numTerms = vocabulary.size();
+		
+		this.categories = new String[numCategories];
+		this.categoryIndex = new HashMap<>();
+		double[] table = new double[numCategories * numTerms];
+		this.unknownLogLikelihoods = new double[numCategories];
+		this.logPriors = new double[numCategories];
+		
+		int category = 0;
+		for(String categoryName : categoryUnigrams.keySet()) {
+			IntIntHashMap unigrams = categoryUnigrams.get(categoryName);
+			int numWordsInClass = model.getTokensPerCategory().get(categoryName);
+			int vocabSize = unigrams.size();
+			
+			// add one smoothing, the same as in NaiveBayesClassifier
+			double unknown = NaiveBayesClassifier.logLikelihood(0, numWordsInClass, vocabSize);
+			for(int row = 0; row < numTerms; row++) {
+				int occurrenceCount = unigrams.get(termIds == null ? row : termIds[row]);
+				table[category * numTerms + row] = occurrenceCount == 0 
+						? unknown : NaiveBayesClassifier.logLikelihood(occurrenceCount, numWordsInClass, vocabSize);
+			}
+			
+			categories[category] = categoryName;
+			categoryIndex.put(categoryName, category);
+			// terms that are not features do not count at all
+			unknownLogLikelihoods[category] = termIds == null ? unknown : 0.0;
+			logPriors[category] = Math.log((double) model.getNumArticlesPerCategory(categoryName) / model.getNumArticles());
+			category++;
+		}
+		this.logLikelihoods = DoubleBuffer.wrap(table);
+		this.heapLogLikelihoods = termIds == null ? table : null;
+		this.priorOrder = sortByPrior(logPriors);
+	}
+	
+	/**
+	 * Compiles the weights of a complement naive bayes model, the scores are the summed weights 
+	 * of all terms of an article, without priors.
+	 */
+	public CompiledNaiveBayesModel(ComplementNaiveBayesModel model) {
+		int numCategories = model.getNumCategories();
+		int[] termIds = termIdsOf(model.getFeatures());
+		this.vocabulary = termIds == null 
+				? ModelVocabulary.ofDictionary(model.getNumTerms()) : ModelVocabulary.ofTermIds(termIds);
+		this.numTerms = vocabulary.size();
+		
+		this.categories = new String[numCategories];
+		this.categoryIndex = new HashMap<>();
+		double[] table = new double[numCategories * numTerms];
+		for(int category = 0; category < numCategories; category++) {
+			for(int row = 0; row < numTerms; row++) {
+				table[category * numTerms + row] = model.getWeight(category, termIds == null ? row : termIds[row]);
+			}
+			categories[category] = model.getCategory(category);
+			categoryIndex.put(categories[category], category);
+		}
+		// unknown terms do not count, and the complement model has no priors
+		this.unknownLogLikelihoods = new double[numCategories];
+		this.logPriors = new double[numCategories];
+		this.logLikelihoods = DoubleBuffer.wrap(table);
+		this.heapLogLikelihoods = termIds == null ? table : null;
+		this.priorOrder = sortByPrior(logPriors);
+	}
+	
+	/**
+	 * Used by ModelFile to restore a stored model.
+	 */
+	CompiledNaiveBayesModel(String[] categories, ModelVocabulary vocabulary, DoubleBuffer logLikelihoods,
+			double[] unknownLogLikelihoods, double[] logPriors) {
+		this.categories = categories;
+		this.categoryIndex = new HashMap<>();
+		for(int category = 0; category < categories.length; category++) {
+			categoryIndex.put(categories[category], category);
+		}
+		this.vocabulary = vocabulary;
+		this.numTerms = vocabulary.size();
+		this.logLikelihoods = logLikelihoods;
+		this.heapLogLikelihoods = null;
+		this.unknownLogLikelihoods = unknownLogLikelihoods;
+		this.logPriors = logPriors;
+		this.priorOrder = sortByPrior(logPriors);
+	}
+	
+	/**
+	 * The selected term ids in ascending order, null if all terms are used.
+	 */
+	private static int[] termIdsOf(BitSet features) {
+		if (features == null) {
+			return null;
+		}
+		int[] termIds = new int[features.cardinality()];
+		int row = 0;
+		for(int term = features.nextSetBit(0); term >= 0; term = features.nextSetBit(term + 1)) {
+			termIds[row++] = term;
+		}
+		return termIds;
+	}
+	
+	private static int[] sortByPrior(final double[] logPriors) {
+		Integer[] order = new Integer[logPriors.length];
+		for(int category = 0; category < order.length; category++) {
+			order[category] = category;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(logPriors[b], logPriors[a]);
+			}
+		});
+		int[] priorOrder = new int[order.length];
+		for(int i = 0; i < order.length; i++) {
+			priorOrder[i] = order[i];
+		}
+		return priorOrder;
+	}
+	
+	public int getNumCategories() {
+		return categories.length;
+	}
+	
+	public String getCategory(int category) {
+		return categories[category];
+	}
+	
+	/**
+	 * Index of the category, -1 if the model does not know it.
+	 */
+	public int getCategoryIndex(String categoryName) {
+		Integer category = categoryIndex.get(categoryName);
+		return category == null ? -1 : category;
+	}
+	
+	/**
+	 * Returns log P(article | category) without the prior.
+	 */
+	public double articleLogLikelihood(OhsumedArticle article, int category) {
+		return articleLogLikelihood(article, category, 0.0, Double.NEGATIVE_INFINITY);
+	}
+	
+	/**
+	 * Same as articleLogLikelihood(article, category), but gives up after any sentence 
+	 * once logPrior plus the partial sum is below the cutoff and returns negative infinity then.
+	 * All log likelihoods are at most 0, so the partial sum never grows again.
+	 */
+	private double articleLogLikelihood(OhsumedArticle article, int category, double logPrior, double cutoff) {
+		int base = category * numTerms;
+		double unknown = unknownLogLikelihoods[category];
+		double articleProbability = 0.0;
+		
+		if (heapLogLikelihoods != null) {
+			// fast path for models compiled in this JVM
+			double[] table = heapLogLikelihoods;
+			for(Sentence s : article) {
+				int[] termIds = s.getTermIds();
+				for(int i = 0; i < s.getNumTokens(); i++) {
+					// terms that were added to the dictionary after compiling are unknown as well
+					int term = termIds[i];
+					articleProbability += term >= 0 && term < numTerms ? table[base + term] : unknown;
+				}
+				if (logPrior + articleProbability < cutoff) {
+					return Double.NEGATIVE_INFINITY;
+				}
+			}
+			return articleProbability;
+		}
+		
+		for(Sentence s : article) {
+			int[] termIds = s.getTermIds();
+			for(int i = 0; i < s.getNumTokens(); i++) {
+				int term = vocabulary.row(termIds[i]);
+				articleProbability += term >= 0 ? logLikelihoods.get(base + term) : unknown;
+			}
+			if (logPrior + articleProbability < cutoff) {
+				return Double.NEGATIVE_INFINITY;
+			}
+		}
+		return articleProbability;
+	}
+	
+	/**
+	 * Writes log P(category) + log P(article | category) of every category into scores,
+	 * which has to have getNumCategories() entries.
+	 */
+	public void score(OhsumedArticle article, double[] scores) {
+		long start = SCORE_TIMER.start();
+		for(int category = 0; category < categories.length; category++) {
+			scores[category] = logPriors[category] + articleLogLikelihood(article, category);
+		}
+		SCORE_TIMER.stop(start);
+	}
+	
+	/**
+	 * argmax { log(prior) + log(wordInClass) }, returns the index of the best category.
+	 */
+	public int bestCategory(OhsumedArticle article) {
+		long start = SCORE_TIMER.start();
+		int bestCategory = -1;
+		double maxProbability = Double.NEGATIVE_INFINITY;
+		
+		for(int category = 0; category < categories.length; category++) {
+			double classProbability = logPriors[category] + articleLogLikelihood(article, category);
+			if (classProbability > maxProbability) {
+				maxProbability = classProbability;
+				bestCategory = category;
+			}
+		}
+		SCORE_TIMER.stop(start);
+		return bestCategory;
+	}
+	
+	/**
+	 * Writes the k best categories and their scores, the same as score() computes them, best first 
+	 * into topCategories and topScores and returns how many have been written (less than k if the 
+	 * model has less categories). Categories are scored in the order of their priors, and a category 
+	 * is dropped as soon as its partial score is below the k-th best complete score seen so far.
+	 * k has to be at least 1.
+	 */
+	public int topCategories(OhsumedArticle article, int k, int[] topCategories, double[] topScores) {
+		if (k < 1) {
+			throw new IllegalArgumentException("k has to be at least 1: " + k);
+		}
+		if (categories.length == 0) {
+			return 0;
+		}
+		long start = SCORE_TIMER.start();
+		TopKHeap heap = new TopKHeap(Math.min(k, categories.length));
+		for(int i = 0; i < priorOrder.length; i++) {
+			int category = priorOrder[i];
+			double logPrior = logPriors[category];
+			double cutoff = heap.isFull() ? heap.minScore() : Double.NEGATIVE_INFINITY;
+			if (logPrior < cutoff) {
+				// the priors are sorted, none of the remaining categories can make it
+				break;
+			}
+			double likelihood = articleLogLikelihood(article, category, logPrior, cutoff);
+			if (likelihood != Double.NEGATIVE_INFINITY) {
+				heap.offer(category, logPrior + likelihood);
+			}
+		}
+		int numTop = heap.drainDescending(topCategories, topScores);
+		SCORE_TIMER.stop(start);
+		return numTop;
+	}
+	
+	public String classify(OhsumedArticle article) {
+		int category = bestCategory(article);
+		return category < 0 ? null : categories[category];
+	}
+	
+	ModelVocabulary getVocabulary() {
+		return vocabulary;
+	}
+	
+	DoubleBuffer getLogLikelihoods() {
+		return logLikelihoods.duplicate();
+	}
+	
+	double[] getUnknownLogLikelihoods() {
+		return unknownLogLikelihoods;
+	}
+	
+	double[] getLogPriors() {
+		return logPriors;
+	}
+}
@@ -0,0 +1,28 @@
+package de.hpi.nlp.model;
+
+public class ComplementNaiveBayesClassifier {
+	
+	/**
+	 * Will do text classification for a given test corpus. The test corpus is required to be 
+	 * correctly annotated with the right classes/categories per article.
+	 * Prints precision, recall and f-measure per class and returns the overall classification precision.
+	 */
+	public static double determine(ComplementNaiveBayesModel model, Iterable<OhsumedArticle> corpus) {
+		EvaluationResult result = evaluate(model, corpus, Runtime.getRuntime().availableProcessors());
+		
+		for(int category = model.getNumCategories(); category < result.getNumCategories(); category++) {
+			System.err.println("Category did not exist in training data: " + result.getCategory(category));
+		}
+		System.out.println(result);
+		return result.getAccuracy();
+	}
+	
+	/**
+	 * Classifies the test corpus with the given number of threads, without any output.
+	 */
+	public static EvaluationResult evaluate(ComplementNaiveBayesModel model, Iterable<OhsumedArticle> corpus, int numThreads) {
+		// the weights are scored by the same loop as the multinomial model
+		CompiledNaiveBayesModel compiledModel = new CompiledNaiveBayesModel(model);
+		return ClassificationEvaluator.evaluate(compiledModel, corpus, numThreads);
+	}
+}
@@ -0,0 +1,199 @@
+package de.hpi.nlp.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import de.hpi.nlp.metrics.Metrics;
+import de.hpi.nlp.metrics.Timer;
+
+/**
+ * Complement naive bayes on TF-IDF weighted term counts, as described by Rennie et al., 
+ * "Tackling the Poor Assumptions of Naive Bayes Text Classifiers". The term counts of every 
+ * training article are transformed to log(1 + tf) * idf and normalized to unit length, each 
+ * category is then described by the term distribution of all other categories (its complement), 
+ * which has far more training data than the category itself for small categories.
+ * The weights are compiled into a CompiledNaiveBayesModel, so that scoring is the same 
+ * loop as for the multinomial model.
+ */
+public class ComplementNaiveBayesModel {
+	private static final Timer COUNT_TIMER = Metrics.timer("train.complementNaiveBayes.count");
+	private static final double ALPHA = 1.0; // smoothing of the complement distributions
+	
+	private final String[] categories;
+	private final int numTerms;
+	private final int[] documentFrequency;
+	private final long numArticles;
+	// the higher the better, at category * numTerms + term
+	private final double[] weights;
+	// term ids the model is restricted to, null if it uses all terms
+	private final BitSet features;
+	
+	public ComplementNaiveBayesModel(PackedCorpus corpus) {
+		this(corpus, null);
+	}
+	
+	/**
+	 * Uses only the given term ids (see FeatureSelector.select), null for all terms.
+	 */
+	public ComplementNaiveBayesModel(PackedCorpus corpus, BitSet features) {
+		long start = COUNT_TIMER.start();
+		int numCategories = corpus.getNumCategories();
+		this.categories = corpus.getCategories().toArray(new String[numCategories]);
+		this.numTerms = TermDictionary.getInstance().size();
+		this.numArticles = corpus.getNumArticles();
+		this.features = features;
+		int[] termIds = corpus.getTermIds();
+		int[] sentenceOffsets = corpus.getSentenceOffsets();
+		int[] articleOffsets = corpus.getArticleOffsets();
+		int[] articleCategories = corpus.getArticleCategories();
+		
+		// first scan: document frequencies, which the weights of the second scan need
+		this.documentFrequency = new int[numTerms];
+		int[] termFrequency = new int[numTerms];
+		for(int article = 0; article < numArticles; article++) {
+			int from = sentenceOffsets[articleOffsets[article]];
+			int to = sentenceOffsets[articleOffsets[article + 1]];
+			for(int i = from; i < to; i++) {
+				int term = termIds[i];
+				if ((features == null || features.get(term)) && termFrequency[term]++ == 0) {
+					documentFrequency[term]++;
+				}
+			}
+			// reset only what has been touched
+			for(int i = from; i < to; i++) {
+				termFrequency[termIds[i]] = 0;
+			}
+		}
+		
+		// second scan: sum of the transformed and normalized term counts per category
+		double[] categoryWeights = new double[numCategories * numTerms];
+		int[] articleTerms = new int[64];
+		for(int article = 0; article < numArticles; article++) {
+			int from = sentenceOffsets[articleOffsets[article]];
+			int to = sentenceOffsets[articleOffsets[article + 1]];
+			int numArticleTerms = 0;
+			for(int i = from; i < to; i++) {
+				int term = termIds[i];
+				if ((features == null || features.get(term)) && termFrequency[term]++ == 0) {
+					if (numArticleTerms == articleTerms.length) {
+						articleTerms = Arrays.copyOf(articleTerms, 2 * numArticleTerms);
+					}
+					articleTerms[numArticleTerms++] = term;
+				}
+			}
+			
+			double squaredLength = 0.0;
+			for(int i = 0; i < numArticleTerms; i++) {
+				int term = articleTerms[i];
+				double weight = Math.log(1.0 + termFrequency[term]) * getInverseDocumentFrequency(term);
+				squaredLength += weight * weight;
+			}
+			double length = Math.sqrt(squaredLength);
+			int base = articleCategories[article] * numTerms;
+			for(int i = 0; i < numArticleTerms; i++) {
+				int term = articleTerms[i];
+				if (length > 0) {
+					categoryWeights[base + term] += Math.log(1.0 + termFrequency[term]) * getInverseDocumentFrequency(term) / length;
+				}
+				termFrequency[term] = 0;
+			}
+		}
+		
+		// totals over all categories, the complement of a category is the total minus the category
+		double[] termTotals = new double[numTerms];
+		double[] categoryTotals = new double[numCategories];
+		double total = 0.0;
+		int vocabularySize = 0;
+		for(int term = 0; term < numTerms; term++) {
+			if (documentFrequency[term] > 0) {
+				vocabularySize++;
+			}
+		}
+		for(int category = 0; category < numCategories; category++) {
+			for(int term = 0; term < numTerms; term++) {
+				double weight = categoryWeights[category * numTerms + term];
+				termTotals[term] += weight;
+				categoryTotals[category] += weight;
+			}
+			total += categoryTotals[category];
+		}
+		
+		// log of the smoothed complement distribution, normalized by its sum, and negated, 
+		// as a term that is frequent in the complement speaks against the category
+		this.weights = new double[numCategories * numTerms];
+		for(int category = 0; category < numCategories; category++) {
+			int base = category * numTerms;
+			double complementTotal = ALPHA * vocabularySize + total - categoryTotals[category];
+			double norm = 0.0;
+			for(int term = 0; term < numTerms; term++) {
+				if (documentFrequency[term] > 0) {
+					double complement = ALPHA + termTotals[term] - categoryWeights[base + term];
+					weights[base + term] = Math.log(complement / complementTotal);
+					norm += Math.abs(weights[base + term]);
+				}
+			}
+			for(int term = 0; term < numTerms; term++) {
+				weights[base + term] = norm > 0 ? -weights[base + term] / norm : 0.0;
+			}
+		}
+		
+		// subtracting the best weight of every term changes all scores of an article by the same 
+		// amount, but keeps all weights at most 0 like log probabilities, which topCategories relies on
+		for(int term = 0; term < numTerms; term++) {
+			double max = Double.NEGATIVE_INFINITY;
+			for(int category = 0; category < numCategories; category++) {
+				max = Math.max(max, weights[category * numTerms + term]);
+			}
+			for(int category = 0; category < numCategories; category++) {
+				weights[category * numTerms + term] -= max;
+			}
+		}
+		COUNT_TIMER.stop(start);
+	}
+	
+	public int getNumCategories() {
+		return categories.length;
+	}
+	
+	public String getCategory(int category) {
+		return categories[category];
+	}
+	
+	/**
+	 * Number of term ids the model has weights for.
+	 */
+	public int getNumTerms() {
+		return numTerms;
+	}
+	
+	/**
+	 * Weight of one occurrence of the term in an article for the category, the higher the better. 
+	 * 0 for terms that are unknown to the model.
+	 */
+	public double getWeight(int category, int termId) {
+		return termId >= 0 && termId < numTerms ? weights[category * numTerms + termId] : 0.0;
+	}
+	
+	/**
+	 * Number of training articles the term occurs in, 0 for terms that are unknown to the model.
+	 */
+	public int getDocumentFrequency(int termId) {
+		return termId >= 0 && termId < numTerms ? documentFrequency[termId] : 0;
+	}
+	
+	/**
+	 * The bigger the better. The bigger the number, the more important (less frequent) the word is,
+	 * considering the whole collection of documents. 0 for terms that are unknown to the model.
+	 */
+	public double getInverseDocumentFrequency(int termId) {
+		int numDocumentsContainingToken = getDocumentFrequency(termId);
+		return numDocumentsContainingToken == 0 ? 0.0 : Math.log((double) numArticles / numDocumentsContainingToken);
+	}
+	
+	/**
+	 * Term ids the model is restricted to, null if it uses all terms. Must not be modified.
+	 */
+	public BitSet getFeatures() {
+		return features;
+	}
+}
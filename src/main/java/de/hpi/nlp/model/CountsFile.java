@@ -0,0 +1,239 @@
+package de.hpi.nlp.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.hpi.nlp.util.IntIntHashMap;
+import de.hpi.nlp.util.LongIntHashMap;
+
+/**
+ * Binary file of the counts of a NaiveBayesModel or BayesModel, so that models trained on 
+ * different machines can be merged afterwards (see NaiveBayesModel.merge and BayesModel.merge).
+ * Term ids are only valid within one JVM, the file therefore carries the terms it uses, which 
+ * are interned into the TermDictionary when it is read.
+ * 
+ * Layout, as written by DataOutputStream:
+ * - header: magic, format version, model type
+ * - the terms, each as modified UTF-8, in the order of their numbers within the file
+ * - the counts, every term given by its number
+ */
+public class CountsFile {
+	private static final int MAGIC = 0x4E42434E; // "NCBN"
+	public static final int VERSION = 1;
+	
+	public static final int NAIVE_BAYES = 1;
+	public static final int BIGRAM_BAYES = 2;
+	
+	public static void write(NaiveBayesModel model, File file) throws IOException {
+		model = model.snapshot();
+		BitSet features = model.getFeatures();
+		int dictionarySize = TermDictionary.getInstance().size();
+		// every term that is counted or selected as feature
+		BitSet used = features == null ? new BitSet() : (BitSet) features.clone();
+		for(int term = 0; term < dictionarySize; term++) {
+			if (model.getDocumentFrequency(term) > 0) {
+				used.set(term);
+			}
+		}
+		
+		try (DataOutputStream out = open(file, NAIVE_BAYES)) {
+			int[] numbers = writeTerms(out, used);
+			out.writeLong(model.getNumArticles());
+			if (features == null) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(features.cardinality());
+				for(int term = features.nextSetBit(0); term >= 0; term = features.nextSetBit(term + 1)) {
+					out.writeInt(numbers[term]);
+				}
+			}
+			for(int term = used.nextSetBit(0); term >= 0; term = used.nextSetBit(term + 1)) {
+				out.writeInt(model.getDocumentFrequency(term));
+			}
+			
+			Map<String, IntIntHashMap> categoryUnigrams = model.getCategoryUnigrams();
+			out.writeInt(categoryUnigrams.size());
+			for(String categoryName : categoryUnigrams.keySet()) {
+				out.writeUTF(categoryName);
+				out.writeLong(model.getNumArticlesPerCategory(categoryName));
+				out.writeInt(model.getTokensPerCategory().get(categoryName));
+				writeCounts(out, categoryUnigrams.get(categoryName), numbers);
+			}
+		}
+	}
+	
+	public static void write(BayesModel model, File file) throws IOException {
+		Map<String, IntIntHashMap> categoryTermFrequency = model.getCategoryTermFrequency();
+		// every term that may be part of a bigram is counted in the term frequencies
+		BitSet used = new BitSet();
+		for(IntIntHashMap termFrequency : categoryTermFrequency.values()) {
+			for(int slot = 0; slot < termFrequency.capacity(); slot++) {
+				if (termFrequency.isOccupied(slot)) {
+					used.set(termFrequency.keyAt(slot));
+				}
+			}
+		}
+		
+		try (DataOutputStream out = open(file, BIGRAM_BAYES)) {
+			int[] numbers = writeTerms(out, used);
+			out.writeLong(model.getNumArticles());
+			out.writeInt(categoryTermFrequency.size());
+			for(String categoryName : categoryTermFrequency.keySet()) {
+				out.writeUTF(categoryName);
+				out.writeLong(model.getNumArticlesPerCategory(categoryName));
+				writeCounts(out, categoryTermFrequency.get(categoryName), numbers);
+				LongIntHashMap bigrams = model.getCategoryBigrams().get(categoryName);
+				out.writeInt(bigrams.size());
+				for(int slot = 0; slot < bigrams.capacity(); slot++) {
+					if (bigrams.isOccupied(slot)) {
+						long key = bigrams.keyAt(slot);
+						out.writeInt(numbers[(int) (key >>> 32)]);
+						out.writeInt(numbers[(int) key]);
+						out.writeInt(bigrams.valueAt(slot));
+					}
+				}
+			}
+		}
+	}
+	
+	public static NaiveBayesModel readNaiveBayes(File file) throws IOException {
+		try (DataInputStream in = open(file)) {
+			checkHeader(in, file, NAIVE_BAYES);
+			int[] ids = readTerms(in);
+			long numArticles = in.readLong();
+			int numFeatures = in.readInt();
+			BitSet features = null;
+			if (numFeatures >= 0) {
+				features = new BitSet();
+				for(int i = 0; i < numFeatures; i++) {
+					features.set(ids[in.readInt()]);
+				}
+			}
+			int[] documentFrequency = new int[TermDictionary.getInstance().size()];
+			for(int number = 0; number < ids.length; number++) {
+				documentFrequency[ids[number]] = in.readInt();
+			}
+			
+			Map<String, IntIntHashMap> categoryUnigrams = new HashMap<>();
+			Map<String, Integer> tokensPerCategory = new HashMap<>();
+			Map<String, Long> numArticlesPerCategory = new HashMap<>();
+			int numCategories = in.readInt();
+			for(int category = 0; category < numCategories; category++) {
+				String categoryName = in.readUTF();
+				numArticlesPerCategory.put(categoryName, in.readLong());
+				tokensPerCategory.put(categoryName, in.readInt());
+				categoryUnigrams.put(categoryName, readCounts(in, ids));
+			}
+			return NaiveBayesModel.of(categoryUnigrams, tokensPerCategory, documentFrequency, 
+					numArticlesPerCategory, numArticles, features);
+		}
+	}
+	
+	public static BayesModel readBayes(File file) throws IOException {
+		try (DataInputStream in = open(file)) {
+			checkHeader(in, file, BIGRAM_BAYES);
+			int[] ids = readTerms(in);
+			long numArticles = in.readLong();
+			Map<String, LongIntHashMap> categoryBigrams = new HashMap<>();
+			Map<String, IntIntHashMap> categoryTermFrequency = new HashMap<>();
+			Map<String, Long> numArticlesPerCategory = new HashMap<>();
+			int numCategories = in.readInt();
+			for(int category = 0; category < numCategories; category++) {
+				String categoryName = in.readUTF();
+				numArticlesPerCategory.put(categoryName, in.readLong());
+				categoryTermFrequency.put(categoryName, readCounts(in, ids));
+				int numBigrams = in.readInt();
+				LongIntHashMap bigrams = new LongIntHashMap(numBigrams);
+				for(int i = 0; i < numBigrams; i++) {
+					int previous = ids[in.readInt()];
+					int current = ids[in.readInt()];
+					bigrams.put(LongIntHashMap.key(previous, current), in.readInt());
+				}
+				categoryBigrams.put(categoryName, bigrams);
+			}
+			return new BayesModel(categoryBigrams, categoryTermFrequency, numArticlesPerCategory, numArticles);
+		}
+	}
+	
+	private static DataOutputStream open(File file, int type) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(type);
+		return out;
+	}
+	
+	private static DataInputStream open(File file) throws IOException {
+		return new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+	}
+	
+	private static void checkHeader(DataInputStream in, File file, int expectedType) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException(file + " is not a counts file");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported counts file version " + version + " in " + file);
+		}
+		int type = in.readInt();
+		if (type != expectedType) {
+			throw new IOException("Counts file " + file + " has model type " + type + " instead of " + expectedType);
+		}
+	}
+	
+	/**
+	 * Writes the used terms and returns the number of every term id within the file.
+	 */
+	private static int[] writeTerms(DataOutputStream out, BitSet used) throws IOException {
+		TermDictionary dictionary = TermDictionary.getInstance();
+		int[] numbers = new int[used.length()];
+		out.writeInt(used.cardinality());
+		int number = 0;
+		for(int term = used.nextSetBit(0); term >= 0; term = used.nextSetBit(term + 1)) {
+			out.writeUTF(dictionary.getTerm(term));
+			numbers[term] = number++;
+		}
+		return numbers;
+	}
+	
+	/**
+	 * Interns the terms and returns the term id of every number within the file.
+	 */
+	private static int[] readTerms(DataInputStream in) throws IOException {
+		TermDictionary dictionary = TermDictionary.getInstance();
+		int[] ids = new int[in.readInt()];
+		for(int number = 0; number < ids.length; number++) {
+			ids[number] = dictionary.intern(in.readUTF());
+		}
+		return ids;
+	}
+	
+	private static void writeCounts(DataOutputStream out, IntIntHashMap counts, int[] numbers) throws IOException {
+		out.writeInt(counts.size());
+		for(int slot = 0; slot < counts.capacity(); slot++) {
+			if (counts.isOccupied(slot)) {
+				out.writeInt(numbers[counts.keyAt(slot)]);
+				out.writeInt(counts.valueAt(slot));
+			}
+		}
+	}
+	
+	private static IntIntHashMap readCounts(DataInputStream in, int[] ids) throws IOException {
+		int size = in.readInt();
+		IntIntHashMap counts = new IntIntHashMap(size);
+		for(int i = 0; i < size; i++) {
+			int term = ids[in.readInt()];
+			counts.put(term, in.readInt());
+		}
+		return counts;
+	}
+}
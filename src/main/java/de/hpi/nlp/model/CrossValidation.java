@@ -0,0 +1,552 @@
+package de.hpi.nlp.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import de.hpi.nlp.util.IntIntHashMap;
+import de.hpi.nlp.util.LongIntHashMap;
+
+/**
+ * k-fold cross-validation on a corpus that has been parsed once. Article i belongs to fold i mod k, 
+ * as the articles of a PackedCorpus are grouped by category, every fold gets about the same share 
+ * of every category. Every fold is counted once, the counts of the whole corpus are the merged 
+ * counts of the folds, and the model of every fold is that model minus the counts of the fold. 
+ * The subtracted model is neither copied nor compiled: a fold is only scored on its own articles, 
+ * so only the terms and bigrams of the fold get their probabilities computed, from the counts of 
+ * the whole corpus minus those of the fold, the same way the compiled models compute them. 
+ * The folds are counted and evaluated in parallel.
+ */
+public class CrossValidation {
+	// the log probabilities of counts below this are computed once per category
+	private static final int LOG_TABLE_COUNTS = 64;
+	
+	/**
+	 * Counts the folds and builds the scorer of every fold from the counts.
+	 */
+	private interface FoldTrainer<M, T> {
+		M count(PackedCorpus fold);
+		
+		/**
+		 * The counts of the whole corpus, from the counts of all folds.
+		 */
+		T total(List<M> folds);
+		
+		/**
+		 * The scorer of the articles of the fold, trained on everything but the fold.
+		 */
+		CategoryScorer train(T total, M fold, PackedCorpus foldArticles);
+	}
+	
+	public static CrossValidationResult naiveBayes(PackedCorpus corpus, int numFolds, int numThreads) {
+		return crossValidate(corpus, numFolds, numThreads, new FoldTrainer<NaiveBayesModel, NaiveBayesTotal>() {
+			@Override
+			public NaiveBayesModel count(PackedCorpus fold) {
+				return new NaiveBayesModel(fold);
+			}
+			
+			@Override
+			public NaiveBayesTotal total(List<NaiveBayesModel> folds) {
+				return new NaiveBayesTotal(NaiveBayesModel.merge(folds));
+			}
+			
+			@Override
+			public CategoryScorer train(NaiveBayesTotal total, NaiveBayesModel fold, PackedCorpus foldArticles) {
+				return new NaiveBayesFoldScorer(total, fold);
+			}
+		});
+	}
+	
+	public static CrossValidationResult bayes(PackedCorpus corpus, int numFolds, int numThreads) {
+		return crossValidate(corpus, numFolds, numThreads, new FoldTrainer<BayesModel, BayesModel>() {
+			@Override
+			public BayesModel count(PackedCorpus fold) {
+				return new BayesModel(fold);
+			}
+			
+			@Override
+			public BayesModel total(List<BayesModel> folds) {
+				return BayesModel.merge(folds);
+			}
+			
+			@Override
+			public CategoryScorer train(BayesModel total, BayesModel fold, PackedCorpus foldArticles) {
+				return new BayesFoldScorer(total, fold, foldArticles);
+			}
+		});
+	}
+	
+	/**
+	 * The articles of every fold, article i belongs to fold i mod numFolds.
+	 */
+	public static List<PackedCorpus> split(PackedCorpus corpus, int numFolds) {
+		if (numFolds < 2 || numFolds > corpus.getNumArticles()) {
+			throw new IllegalArgumentException("Cannot split " + corpus.getNumArticles() + " articles into " + numFolds + " folds");
+		}
+		List<PackedCorpus.Builder> builders = new ArrayList<>();
+		for(int fold = 0; fold < numFolds; fold++) {
+			builders.add(new PackedCorpus.Builder());
+		}
+		for(int article = 0; article < corpus.getNumArticles(); article++) {
+			builders.get(article % numFolds).addArticle(corpus.getArticle(article));
+		}
+		List<PackedCorpus> folds = new ArrayList<>();
+		for(PackedCorpus.Builder builder : builders) {
+			folds.add(builder.build());
+		}
+		return folds;
+	}
+	
+	private static <M, T> CrossValidationResult crossValidate(PackedCorpus corpus, int numFolds, int numThreads, 
+			FoldTrainer<M, T> trainer) {
+		List<PackedCorpus> folds = split(corpus, numFolds);
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, numThreads));
+		EvaluationResult[] results = new EvaluationResult[numFolds];
+		try {
+			List<CountTask<M>> countTasks = new ArrayList<>();
+			for(PackedCorpus fold : folds) {
+				CountTask<M> task = new CountTask<>(trainer, fold);
+				countTasks.add(task);
+				pool.execute(task);
+			}
+			List<M> counts = new ArrayList<>();
+			for(CountTask<M> task : countTasks) {
+				counts.add(task.join());
+			}
+			T total = trainer.total(counts);
+			
+			List<FoldTask<M, T>> tasks = new ArrayList<>();
+			for(int fold = 0; fold < numFolds; fold++) {
+				FoldTask<M, T> task = new FoldTask<>(trainer, total, counts.get(fold), folds.get(fold));
+				tasks.add(task);
+				pool.execute(task);
+			}
+			for(int fold = 0; fold < numFolds; fold++) {
+				results[fold] = tasks.get(fold).join();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return new CrossValidationResult(results);
+	}
+	
+	private static class CountTask<M> extends RecursiveTask<M> {
+		private static final long serialVersionUID = 1L;
+		private final FoldTrainer<M, ?> trainer;
+		private final PackedCorpus fold;
+		
+		CountTask(FoldTrainer<M, ?> trainer, PackedCorpus fold) {
+			this.trainer = trainer;
+			this.fold = fold;
+		}
+		
+		@Override
+		protected M compute() {
+			return trainer.count(fold);
+		}
+	}
+	
+	private static class FoldTask<M, T> extends RecursiveTask<EvaluationResult> {
+		private static final long serialVersionUID = 1L;
+		private final FoldTrainer<M, T> trainer;
+		private final T total;
+		private final M counts;
+		private final PackedCorpus fold;
+		
+		FoldTask(FoldTrainer<M, T> trainer, T total, M counts, PackedCorpus fold) {
+			this.trainer = trainer;
+			this.total = total;
+			this.counts = counts;
+			this.fold = fold;
+		}
+		
+		@Override
+		protected EvaluationResult compute() {
+			// the folds are the unit of parallelism, every fold is classified on one thread
+			return ClassificationEvaluator.evaluate(trainer.train(total, counts, fold), fold, 1);
+		}
+	}
+	
+	/**
+	 * Categories, priors and the argmax of the scorer of one fold. The categories have the order 
+	 * of the total model, those without any article outside of the fold are dropped, the same as 
+	 * NaiveBayesModel.subtract() and BayesModel.subtract() do.
+	 */
+	static abstract class FoldScorer implements CategoryScorer {
+		final String[] categories;
+		final Map<String, Integer> categoryIndex = new HashMap<>();
+		final double[] logPriors;
+		
+		FoldScorer(Iterable<String> totalCategories, Map<String, Long> totalArticles, Map<String, Long> foldArticles) {
+			List<String> remaining = new ArrayList<>();
+			long numArticles = 0;
+			for(String categoryName : totalCategories) {
+				long articles = totalArticles.get(categoryName) - count(foldArticles.get(categoryName));
+				if (articles > 0) {
+					categoryIndex.put(categoryName, remaining.size());
+					remaining.add(categoryName);
+					numArticles += articles;
+				}
+			}
+			this.categories = remaining.toArray(new String[remaining.size()]);
+			this.logPriors = new double[categories.length];
+			for(int category = 0; category < categories.length; category++) {
+				long articles = totalArticles.get(categories[category]) - count(foldArticles.get(categories[category]));
+				logPriors[category] = Math.log((double) articles / numArticles);
+			}
+		}
+		
+		static long count(Long count) {
+			return count == null ? 0 : count;
+		}
+		
+		public int getNumCategories() {
+			return categories.length;
+		}
+		
+		public String getCategory(int category) {
+			return categories[category];
+		}
+		
+		public int getCategoryIndex(String categoryName) {
+			Integer category = categoryIndex.get(categoryName);
+			return category == null ? -1 : category;
+		}
+		
+		public int bestCategory(OhsumedArticle article) {
+			double[] scores = new double[categories.length];
+			score(article, scores);
+			int bestCategory = -1;
+			double maxProbability = Double.NEGATIVE_INFINITY;
+			for(int category = 0; category < scores.length; category++) {
+				if (scores[category] > maxProbability) {
+					maxProbability = scores[category];
+					bestCategory = category;
+				}
+			}
+			return bestCategory;
+		}
+	}
+	
+	/**
+	 * The naive bayes counts of the whole corpus, with the term counts of every category as dense 
+	 * array over the term ids as well, in which the scorers of all folds look up their terms.
+	 */
+	static class NaiveBayesTotal {
+		final NaiveBayesModel model;
+		final Map<String, int[]> denseCounts = new HashMap<>();
+		// all counted term ids are below this
+		final int numTerms;
+		
+		NaiveBayesTotal(NaiveBayesModel model) {
+			this.model = model;
+			int numTerms = 0;
+			for(IntIntHashMap unigrams : model.getCategoryUnigrams().values()) {
+				for(int slot = 0; slot < unigrams.capacity(); slot++) {
+					if (unigrams.isOccupied(slot)) {
+						numTerms = Math.max(numTerms, unigrams.keyAt(slot) + 1);
+					}
+				}
+			}
+			this.numTerms = numTerms;
+			for(Map.Entry<String, IntIntHashMap> entry : model.getCategoryUnigrams().entrySet()) {
+				IntIntHashMap unigrams = entry.getValue();
+				int[] counts = new int[numTerms];
+				for(int slot = 0; slot < unigrams.capacity(); slot++) {
+					if (unigrams.isOccupied(slot)) {
+						counts[unigrams.keyAt(slot)] = unigrams.valueAt(slot);
+					}
+				}
+				denseCounts.put(entry.getKey(), counts);
+			}
+		}
+	}
+	
+	/**
+	 * Naive bayes trained on everything but the fold, the same scores as a CompiledNaiveBayesModel 
+	 * of the subtracted model for the articles of the fold. Other terms are scored as unknown.
+	 */
+	static class NaiveBayesFoldScorer extends FoldScorer {
+		// row + 1 of every term id of the fold, 0 for all other terms
+		private final int[] termRows;
+		private final int numRows;
+		// log P(term | category) at term row * numCategories + category, plus one row for unknown terms
+		private final double[] logLikelihoods;
+		
+		NaiveBayesFoldScorer(NaiveBayesTotal total, NaiveBayesModel fold) {
+			super(total.model.getCategoryUnigrams().keySet(), numArticlesPerCategory(total.model), numArticlesPerCategory(fold));
+			Map<String, IntIntHashMap> foldUnigrams = fold.getCategoryUnigrams();
+			// every token of the fold is counted in its category, and in the total
+			this.termRows = new int[total.numTerms];
+			int maxRows = 0;
+			for(IntIntHashMap unigrams : foldUnigrams.values()) {
+				maxRows += unigrams.size();
+			}
+			int[] terms = new int[maxRows];
+			int numRows = 0;
+			for(IntIntHashMap unigrams : foldUnigrams.values()) {
+				for(int slot = 0; slot < unigrams.capacity(); slot++) {
+					if (unigrams.isOccupied(slot) && termRows[unigrams.keyAt(slot)] == 0) {
+						terms[numRows] = unigrams.keyAt(slot);
+						termRows[unigrams.keyAt(slot)] = ++numRows;
+					}
+				}
+			}
+			this.numRows = numRows;
+			int numCategories = categories.length;
+			this.logLikelihoods = new double[(numRows + 1) * numCategories];
+			
+			int[] occurrenceCounts = new int[numRows];
+			double[] smallCountLogLikelihoods = new double[LOG_TABLE_COUNTS];
+			for(int category = 0; category < numCategories; category++) {
+				String categoryName = categories[category];
+				int[] totalCounts = total.denseCounts.get(categoryName);
+				IntIntHashMap foldCounts = foldUnigrams.get(categoryName);
+				Integer foldTokens = fold.getTokensPerCategory().get(categoryName);
+				int numWordsInClass = total.model.getTokensPerCategory().get(categoryName) - (foldTokens == null ? 0 : foldTokens);
+				
+				// the counts without the fold, terms that only occur in the fold leave the vocabulary
+				for(int row = 0; row < numRows; row++) {
+					occurrenceCounts[row] = totalCounts[terms[row]];
+				}
+				int vocabSize = total.model.getVocabularySize(categoryName);
+				for(int slot = 0; foldCounts != null && slot < foldCounts.capacity(); slot++) {
+					if (foldCounts.isOccupied(slot)) {
+						int row = termRows[foldCounts.keyAt(slot)] - 1;
+						occurrenceCounts[row] -= foldCounts.valueAt(slot);
+						if (occurrenceCounts[row] == 0) {
+							vocabSize--;
+						}
+					}
+				}
+				
+				// the same smoothing as CompiledNaiveBayesModel, unknown terms have a count of 0
+				for(int count = 0; count < LOG_TABLE_COUNTS; count++) {
+					smallCountLogLikelihoods[count] = NaiveBayesClassifier.logLikelihood(count, numWordsInClass, vocabSize);
+				}
+				for(int row = 0; row < numRows; row++) {
+					int occurrenceCount = occurrenceCounts[row];
+					logLikelihoods[row * numCategories + category] = occurrenceCount < LOG_TABLE_COUNTS 
+							? smallCountLogLikelihoods[occurrenceCount] 
+							: NaiveBayesClassifier.logLikelihood(occurrenceCount, numWordsInClass, vocabSize);
+				}
+				logLikelihoods[numRows * numCategories + category] = smallCountLogLikelihoods[0];
+			}
+		}
+		
+		private static Map<String, Long> numArticlesPerCategory(NaiveBayesModel model) {
+			Map<String, Long> numArticles = new HashMap<>();
+			for(String categoryName : model.getCategoryUnigrams().keySet()) {
+				numArticles.put(categoryName, model.getNumArticlesPerCategory(categoryName));
+			}
+			return numArticles;
+		}
+		
+		/**
+		 * The tokens are added up per category in the order of the article, as CompiledNaiveBayesModel 
+		 * does, so the scores are the same.
+		 */
+		public void score(OhsumedArticle article, double[] scores) {
+			int numCategories = categories.length;
+			Arrays.fill(scores, 0, numCategories, 0.0);
+			for(Sentence s : article) {
+				int[] termIds = s.getTermIds();
+				for(int i = 0; i < s.getNumTokens(); i++) {
+					int term = termIds[i];
+					int row = term >= 0 && term < termRows.length ? termRows[term] - 1 : -1;
+					int base = (row < 0 ? numRows : row) * numCategories;
+					for(int category = 0; category < numCategories; category++) {
+						scores[category] += logLikelihoods[base + category];
+					}
+				}
+			}
+			for(int category = 0; category < numCategories; category++) {
+				scores[category] = logPriors[category] + scores[category];
+			}
+		}
+	}
+	
+	/**
+	 * Bigram bayes trained on everything but the fold, the same scores as a CompiledBayesModel 
+	 * of the subtracted model for the articles of the fold. Other terms are scored as unknown.
+	 */
+	static class BayesFoldScorer extends FoldScorer {
+		// row + 1 of every term id of the fold, 0 for all other terms
+		private final int[] termRows;
+		private final int numRows;
+		// row + 1 of every pair of consecutive terms in a sentence of the fold
+		private final LongIntHashMap bigramRows;
+		// [term row * numCategories + category], plus one row for unknown terms
+		private final double[] firstLogProbabilities;
+		private final double[] unseenLogProbabilities;
+		// [bigram row * numCategories + category], the unseen probability of the previous term 
+		// for categories the bigram does not occur in outside of the fold
+		private final double[] bigramLogProbabilities;
+		
+		BayesFoldScorer(BayesModel total, BayesModel fold, PackedCorpus foldArticles) {
+			super(total.getCategoryBigrams().keySet(), numArticlesPerCategory(total), numArticlesPerCategory(fold));
+			// the terms and pairs of terms of the articles, the first terms of the sentences and 
+			// their successors are not counted as such in the model
+			int[] termIds = foldArticles.getTermIds();
+			int maxTerm = -1;
+			for(int term : termIds) {
+				maxTerm = Math.max(maxTerm, term);
+			}
+			this.termRows = new int[maxTerm + 1];
+			int[] terms = new int[termIds.length];
+			int numRows = 0;
+			for(int term : termIds) {
+				if (termRows[term] == 0) {
+					terms[numRows] = term;
+					termRows[term] = ++numRows;
+				}
+			}
+			this.numRows = numRows;
+			
+			this.bigramRows = new LongIntHashMap();
+			long[] bigrams = new long[termIds.length];
+			int[] bigramPrevRows = new int[termIds.length];
+			int[] sentenceOffsets = foldArticles.getSentenceOffsets();
+			for(int sentence = 0; sentence < foldArticles.getNumSentences(); sentence++) {
+				for(int i = sentenceOffsets[sentence] + 1; i < sentenceOffsets[sentence + 1]; i++) {
+					long key = LongIntHashMap.key(termIds[i - 1], termIds[i]);
+					if (!bigramRows.containsKey(key)) {
+						bigrams[bigramRows.size()] = key;
+						bigramPrevRows[bigramRows.size()] = termRows[termIds[i - 1]] - 1;
+						bigramRows.put(key, bigramRows.size() + 1);
+					}
+				}
+			}
+			int numBigrams = bigramRows.size();
+			int numCategories = categories.length;
+			this.firstLogProbabilities = new double[(numRows + 1) * numCategories];
+			this.unseenLogProbabilities = new double[(numRows + 1) * numCategories];
+			this.bigramLogProbabilities = new double[numBigrams * numCategories];
+			
+			int[] termFrequencies = new int[numRows];
+			int[] bigramCounts = new int[numBigrams];
+			for(int category = 0; category < numCategories; category++) {
+				String categoryName = categories[category];
+				IntIntHashMap totalCounts = total.getCategoryTermFrequency().get(categoryName);
+				IntIntHashMap foldCounts = fold.getCategoryTermFrequency().get(categoryName);
+				LongIntHashMap totalBigrams = total.getCategoryBigrams().get(categoryName);
+				LongIntHashMap foldBigrams = fold.getCategoryBigrams().get(categoryName);
+				
+				// the counts without the fold, terms that only occur in the fold leave the vocabulary
+				for(int row = 0; row < numRows; row++) {
+					termFrequencies[row] = totalCounts.get(terms[row]);
+				}
+				int vocabSize = totalCounts.size();
+				int beginnings = totalCounts.get(BayesModel.BEGINNING_OF_SENTENCE_ID);
+				for(int slot = 0; foldCounts != null && slot < foldCounts.capacity(); slot++) {
+					if (foldCounts.isOccupied(slot)) {
+						int term = foldCounts.keyAt(slot);
+						int remaining;
+						if (term == BayesModel.BEGINNING_OF_SENTENCE_ID) {
+							remaining = beginnings -= foldCounts.valueAt(slot);
+						} else {
+							int row = termRows[term] - 1;
+							remaining = termFrequencies[row] -= foldCounts.valueAt(slot);
+						}
+						if (remaining == 0) {
+							vocabSize--;
+						}
+					}
+				}
+				for(int row = 0; row < numBigrams; row++) {
+					bigramCounts[row] = totalBigrams.get(bigrams[row]);
+				}
+				for(int slot = 0; foldBigrams != null && slot < foldBigrams.capacity(); slot++) {
+					if (foldBigrams.isOccupied(slot)) {
+						// bigrams after BEGINNING_OF_SENTENCE are not pairs of terms of the fold
+						int row = bigramRows.get(foldBigrams.keyAt(slot)) - 1;
+						if (row >= 0) {
+							bigramCounts[row] -= foldBigrams.valueAt(slot);
+						}
+					}
+				}
+				
+				// the same smoothing as CompiledBayesModel, unknown terms have no counts at all
+				for(int row = 0; row < numRows; row++) {
+					int base = row * numCategories;
+					firstLogProbabilities[base + category] = Math.log(
+							BayesClassifier.tokenProbability(termFrequencies[row], beginnings, vocabSize));
+					unseenLogProbabilities[base + category] = Math.log(
+							BayesClassifier.tokenProbability(0, termFrequencies[row], vocabSize));
+				}
+				firstLogProbabilities[numRows * numCategories + category] = Math.log(
+						BayesClassifier.tokenProbability(0, beginnings, vocabSize));
+				unseenLogProbabilities[numRows * numCategories + category] = Math.log(
+						BayesClassifier.tokenProbability(0, 0, vocabSize));
+				
+				for(int row = 0; row < numBigrams; row++) {
+					int prevRow = bigramPrevRows[row];
+					bigramLogProbabilities[row * numCategories + category] = bigramCounts[row] == 0 
+							? unseenLogProbabilities[prevRow * numCategories + category] 
+							: Math.log(BayesClassifier.tokenProbability(bigramCounts[row], termFrequencies[prevRow], vocabSize));
+				}
+			}
+		}
+		
+		private static Map<String, Long> numArticlesPerCategory(BayesModel model) {
+			Map<String, Long> numArticles = new HashMap<>();
+			for(String categoryName : model.getCategoryBigrams().keySet()) {
+				numArticles.put(categoryName, model.getNumArticlesPerCategory(categoryName));
+			}
+			return numArticles;
+		}
+		
+		private int rowOf(int term) {
+			return term >= 0 && term < termRows.length ? termRows[term] - 1 : -1;
+		}
+		
+		/**
+		 * The tokens are added up per sentence and category in the order of the article, as 
+		 * CompiledBayesModel does, so the scores are the same.
+		 */
+		public void score(OhsumedArticle article, double[] scores) {
+			int numCategories = categories.length;
+			Arrays.fill(scores, 0, numCategories, 0.0);
+			double[] sentenceScores = new double[numCategories];
+			
+			for(Sentence s : article) {
+				int[] termIds = s.getTermIds();
+				Arrays.fill(sentenceScores, 0.0);
+				int prevRow = -1;
+				for(int i = 0; i < s.getNumTokens(); i++) {
+					int row = rowOf(termIds[i]);
+					double[] table;
+					int base;
+					if (i == 0) {
+						table = firstLogProbabilities;
+						base = (row < 0 ? numRows : row) * numCategories;
+					} else {
+						int bigramRow = prevRow < 0 || row < 0 ? -1 
+								: bigramRows.get(LongIntHashMap.key(termIds[i - 1], termIds[i])) - 1;
+						if (bigramRow >= 0) {
+							table = bigramLogProbabilities;
+							base = bigramRow * numCategories;
+						} else {
+							table = unseenLogProbabilities;
+							base = (prevRow < 0 ? numRows : prevRow) * numCategories;
+						}
+					}
+					for(int category = 0; category < numCategories; category++) {
+						sentenceScores[category] += table[base + category];
+					}
+					prevRow = row;
+				}
+				for(int category = 0; category < numCategories; category++) {
+					scores[category] += sentenceScores[category];
+				}
+			}
+			for(int category = 0; category < numCategories; category++) {
+				scores[category] = logPriors[category] + scores[category];
+			}
+		}
+	}
+}
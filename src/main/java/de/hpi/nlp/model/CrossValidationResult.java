@@ -0,0 +1,111 @@
+package de.hpi.nlp.model;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.TreeSet;
+
+/**
+ * The evaluation results of all folds of a cross-validation, with mean and variance of the 
+ * accuracy and of the f-measure of every category over the folds.
+ */
+public class CrossValidationResult {
+	private final EvaluationResult[] folds;
+	
+	public CrossValidationResult(EvaluationResult[] folds) {
+		this.folds = folds;
+	}
+	
+	public int getNumFolds() {
+		return folds.length;
+	}
+	
+	public EvaluationResult getFold(int fold) {
+		return folds[fold];
+	}
+	
+	public double getMeanAccuracy() {
+		return mean(accuracies());
+	}
+	
+	/**
+	 * Sample variance of the accuracy over the folds.
+	 */
+	public double getAccuracyVariance() {
+		return variance(accuracies());
+	}
+	
+	/**
+	 * Mean f-measure of the category, folds without the category count as 0.
+	 */
+	public double getMeanFMeasure(String categoryName) {
+		return mean(fMeasures(categoryName));
+	}
+	
+	public double getFMeasureVariance(String categoryName) {
+		return variance(fMeasures(categoryName));
+	}
+	
+	private double[] accuracies() {
+		double[] accuracies = new double[folds.length];
+		for(int fold = 0; fold < folds.length; fold++) {
+			accuracies[fold] = folds[fold].getAccuracy();
+		}
+		return accuracies;
+	}
+	
+	private double[] fMeasures(String categoryName) {
+		double[] fMeasures = new double[folds.length];
+		for(int fold = 0; fold < folds.length; fold++) {
+			int category = folds[fold].getCategoryIndex(categoryName);
+			fMeasures[fold] = category < 0 ? 0.0 : folds[fold].getFMeasure(category);
+		}
+		return fMeasures;
+	}
+	
+	private static double mean(double[] values) {
+		double sum = 0.0;
+		for(double value : values) {
+			sum += value;
+		}
+		return sum / values.length;
+	}
+	
+	private static double variance(double[] values) {
+		if (values.length < 2) {
+			return 0.0;
+		}
+		double mean = mean(values);
+		double sum = 0.0;
+		for(double value : values) {
+			sum += (value - mean) * (value - mean);
+		}
+		return sum / (values.length - 1);
+	}
+	
+	/**
+	 * One line per category (sorted by name) with mean and standard deviation of the f-measure, 
+	 * then the accuracy.
+	 */
+	@Override
+	public String toString() {
+		NumberFormat formatter = new DecimalFormat("#0.000");
+		TreeSet<String> names = new TreeSet<>();
+		for(EvaluationResult fold : folds) {
+			for(int category = 0; category < fold.getNumCategories(); category++) {
+				names.add(fold.getCategory(category));
+			}
+		}
+		StringBuilder report = new StringBuilder();
+		for(String name : names) {
+			report.append("Class: ").append(name)
+					.append(" | F-Measure: ").append(formatter.format(getMeanFMeasure(name)))
+					.append(" +/- ").append(formatter.format(Math.sqrt(getFMeasureVariance(name))))
+					.append('\n');
+		}
+		report.append("Accuracy: ").append(formatter.format(getMeanAccuracy()))
+				.append(" +/- ").append(formatter.format(Math.sqrt(getAccuracyVariance())))
+				.append(" (variance ").append(new DecimalFormat("#0.000000").format(getAccuracyVariance()))
+				.append(", ").append(folds.length).append(" folds)");
+		return report.toString();
+	}
+}
@@ -0,0 +1,129 @@
+package de.hpi.nlp.model;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.Arrays;
+
+/**
+ * Outcome of classifying an annotated test corpus: a confusion matrix with
+ * the correct categories as rows and the determined categories as columns, 
+ * and the measures derived from it.
+ */
+public class EvaluationResult {
+	private final String[] categories;
+	private final long[][] confusionMatrix;
+	
+	public EvaluationResult(String[] categories, long[][] confusionMatrix) {
+		this.categories = categories;
+		this.confusionMatrix = confusionMatrix;
+	}
+	
+	public int getNumCategories() {
+		return categories.length;
+	}
+	
+	public String getCategory(int category) {
+		return categories[category];
+	}
+	
+	/**
+	 * Index of the category, -1 if it occurs neither in the model nor in the test corpus.
+	 */
+	public int getCategoryIndex(String categoryName) {
+		for(int category = 0; category < categories.length; category++) {
+			if (categories[category].equals(categoryName)) {
+				return category;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Number of articles of category correct that have been classified as category determined.
+	 */
+	public long getCount(int correct, int determined) {
+		return confusionMatrix[correct][determined];
+	}
+	
+	public long[][] getConfusionMatrix() {
+		long[][] copy = new long[confusionMatrix.length][];
+		for(int i = 0; i < copy.length; i++) {
+			copy[i] = Arrays.copyOf(confusionMatrix[i], confusionMatrix[i].length);
+		}
+		return copy;
+	}
+	
+	public long getNumArticles() {
+		long numArticles = 0;
+		for(long[] row : confusionMatrix) {
+			for(long count : row) {
+				numArticles += count;
+			}
+		}
+		return numArticles;
+	}
+	
+	public long getNumCorrect() {
+		long correct = 0;
+		for(int category = 0; category < categories.length; category++) {
+			correct += confusionMatrix[category][category];
+		}
+		return correct;
+	}
+	
+	public double getAccuracy() {
+		long numArticles = getNumArticles();
+		return numArticles == 0 ? 0.0 : (double) getNumCorrect() / numArticles;
+	}
+	
+	/**
+	 * tp / (tp + fp), 0 if the category has never been determined.
+	 */
+	public double getPrecision(int category) {
+		long truePositives = confusionMatrix[category][category];
+		long determined = 0;
+		for(long[] row : confusionMatrix) {
+			determined += row[category];
+		}
+		return determined == 0 ? 0.0 : (double) truePositives / determined;
+	}
+	
+	/**
+	 * tp / (tp + fn), 0 if the category does not occur in the test corpus.
+	 */
+	public double getRecall(int category) {
+		long truePositives = confusionMatrix[category][category];
+		long correct = 0;
+		for(long count : confusionMatrix[category]) {
+			correct += count;
+		}
+		return correct == 0 ? 0.0 : (double) truePositives / correct;
+	}
+	
+	public double getFMeasure(int category) {
+		double precision = getPrecision(category);
+		double recall = getRecall(category);
+		return precision + recall == 0.0 ? 0.0 : (2.0 * precision * recall) / (precision + recall);
+	}
+	
+	/**
+	 * One line per category (sorted by name) with precision, recall and f-measure, then the accuracy.
+	 */
+	@Override
+	public String toString() {
+		NumberFormat formatter = new DecimalFormat("#0.00");
+		StringBuilder report = new StringBuilder();
+		String[] names = Arrays.copyOf(categories, categories.length);
+		Arrays.sort(names);
+		for(String name : names) {
+			int category = getCategoryIndex(name);
+			report.append("Class: ").append(categories[category])
+					.append(" | Precision: ").append(formatter.format(getPrecision(category)))
+					.append("; Recall: ").append(formatter.format(getRecall(category)))
+					.append("; F-Measure: ").append(formatter.format(getFMeasure(category)))
+					.append('\n');
+		}
+		report.append("Accuracy: ").append(formatter.format(getAccuracy()));
+		return report.toString();
+	}
+}
@@ -0,0 +1,199 @@
+package de.hpi.nlp.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import de.hpi.nlp.metrics.Metrics;
+import de.hpi.nlp.metrics.Timer;
+import de.hpi.nlp.util.TopKHeap;
+
+/**
+ * Chooses the terms (features) a model is built from. All criteria are computed from the number 
+ * of articles of every category a term occurs in, which is counted in one parallel pass over the 
+ * corpus. The selected terms are passed to NaiveBayesModel, which ignores all other terms.
+ */
+public class FeatureSelector {
+	private static final Timer SELECT_TIMER = Metrics.timer("train.featureSelection");
+	/**
+	 * Number of articles a worker counts on its own before the work is not split any further.
+	 */
+	private static final int MIN_ARTICLES_PER_TASK = 1024;
+	
+	public enum Criterion {
+		/**
+		 * Maximum chi-square statistic of term and category over all categories.
+		 */
+		CHI_SQUARE,
+		/**
+		 * Information gain of knowing whether the term occurs in an article, over all categories.
+		 */
+		INFORMATION_GAIN,
+		/**
+		 * Maximum pointwise mutual information of term and category over all categories.
+		 */
+		MUTUAL_INFORMATION,
+		/**
+		 * Number of articles the term occurs in.
+		 */
+		DOCUMENT_FREQUENCY
+	}
+	
+	/**
+	 * Ids of the numFeatures terms with the highest score, terms that do not occur in 
+	 * the corpus are never selected.
+	 */
+	public static BitSet select(PackedCorpus corpus, Criterion criterion, int numFeatures, int numThreads) {
+		long start = SELECT_TIMER.start();
+		double[] scores = score(corpus, criterion, numThreads);
+		BitSet features = new BitSet(scores.length);
+		if (numFeatures > 0) {
+			TopKHeap heap = new TopKHeap(numFeatures);
+			for(int term = 0; term < scores.length; term++) {
+				if (scores[term] != Double.NEGATIVE_INFINITY) {
+					heap.offer(term, scores[term]);
+				}
+			}
+			int[] terms = new int[heap.size()];
+			int numSelected = heap.drainDescending(terms, new double[terms.length]);
+			for(int i = 0; i < numSelected; i++) {
+				features.set(terms[i]);
+			}
+		}
+		SELECT_TIMER.stop(start);
+		return features;
+	}
+	
+	/**
+	 * Score of every term id of the dictionary, the higher the more useful the term is to tell 
+	 * the categories apart. Terms that do not occur in the corpus score negative infinity.
+	 */
+	public static double[] score(PackedCorpus corpus, Criterion criterion, int numThreads) {
+		int numCategories = corpus.getNumCategories();
+		int numTerms = TermDictionary.getInstance().size();
+		// articles per category and term, at category * numTerms + term
+		int[] categoryDocumentFrequency;
+		DocumentFrequencyTask task = new DocumentFrequencyTask(corpus, numTerms, 0, corpus.getNumArticles(), 
+				Math.max(MIN_ARTICLES_PER_TASK, corpus.getNumArticles() / Math.max(1, numThreads)));
+		if (numThreads <= 1) {
+			categoryDocumentFrequency = task.compute();
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(numThreads);
+			try {
+				categoryDocumentFrequency = pool.invoke(task);
+			} finally {
+				pool.shutdown();
+			}
+		}
+		
+		double numArticles = corpus.getNumArticles();
+		double[] categoryArticles = new double[numCategories];
+		for(int category = 0; category < numCategories; category++) {
+			categoryArticles[category] = corpus.getNumArticlesPerCategory(corpus.getCategory(category));
+		}
+		double[] scores = new double[numTerms];
+		for(int term = 0; term < numTerms; term++) {
+			int documentFrequency = 0;
+			for(int category = 0; category < numCategories; category++) {
+				documentFrequency += categoryDocumentFrequency[category * numTerms + term];
+			}
+			if (documentFrequency == 0) {
+				scores[term] = Double.NEGATIVE_INFINITY;
+				continue;
+			}
+			
+			if (criterion == Criterion.DOCUMENT_FREQUENCY) {
+				scores[term] = documentFrequency;
+				continue;
+			}
+			double score = criterion == Criterion.INFORMATION_GAIN ? 0.0 : Double.NEGATIVE_INFINITY;
+			for(int category = 0; category < numCategories; category++) {
+				// a: with term and category, b: with term but other category, 
+				// c: category without term, d: neither
+				double a = categoryDocumentFrequency[category * numTerms + term];
+				double b = documentFrequency - a;
+				double c = categoryArticles[category] - a;
+				double d = numArticles - documentFrequency - c;
+				switch (criterion) {
+				case CHI_SQUARE:
+					double denominator = (a + c) * (b + d) * (a + b) * (c + d);
+					double chiSquare = denominator == 0 ? 0.0 : numArticles * (a * d - c * b) * (a * d - c * b) / denominator;
+					score = Math.max(score, chiSquare);
+					break;
+				case MUTUAL_INFORMATION:
+					if (a > 0) {
+						score = Math.max(score, Math.log(a * numArticles / ((a + b) * (a + c))));
+					}
+					break;
+				default:
+					// sum of P(t, c) log P(c | t) + P(!t, c) log P(c | !t), the entropy of the 
+					// categories is the same for all terms and left out
+					if (a > 0) {
+						score += a / numArticles * Math.log(a / (a + b));
+					}
+					if (c > 0) {
+						score += c / numArticles * Math.log(c / (c + d));
+					}
+				}
+			}
+			scores[term] = score;
+		}
+		return scores;
+	}
+	
+	private static class DocumentFrequencyTask extends RecursiveTask<int[]> {
+		private static final long serialVersionUID = 1L;
+		private final PackedCorpus corpus;
+		private final int numTerms;
+		private final int from;
+		private final int to;
+		private final int articlesPerTask;
+		
+		DocumentFrequencyTask(PackedCorpus corpus, int numTerms, int from, int to, int articlesPerTask) {
+			this.corpus = corpus;
+			this.numTerms = numTerms;
+			this.from = from;
+			this.to = to;
+			this.articlesPerTask = articlesPerTask;
+		}
+		
+		@Override
+		protected int[] compute() {
+			if (to - from <= articlesPerTask) {
+				return count();
+			}
+			int middle = (from + to) >>> 1;
+			DocumentFrequencyTask left = new DocumentFrequencyTask(corpus, numTerms, from, middle, articlesPerTask);
+			left.fork();
+			int[] counts = new DocumentFrequencyTask(corpus, numTerms, middle, to, articlesPerTask).compute();
+			int[] leftCounts = left.join();
+			for(int i = 0; i < counts.length; i++) {
+				counts[i] += leftCounts[i];
+			}
+			return counts;
+		}
+		
+		private int[] count() {
+			int[] counts = new int[corpus.getNumCategories() * numTerms];
+			// the last article each term was counted for, so it is counted once per article
+			int[] lastArticle = new int[numTerms];
+			Arrays.fill(lastArticle, -1);
+			int[] termIds = corpus.getTermIds();
+			int[] sentenceOffsets = corpus.getSentenceOffsets();
+			int[] articleOffsets = corpus.getArticleOffsets();
+			int[] articleCategories = corpus.getArticleCategories();
+			for(int article = from; article < to; article++) {
+				int base = articleCategories[article] * numTerms;
+				for(int i = sentenceOffsets[articleOffsets[article]]; i < sentenceOffsets[articleOffsets[article + 1]]; i++) {
+					int term = termIds[i];
+					if (lastArticle[term] != article) {
+						lastArticle[term] = article;
+						counts[base + term]++;
+					}
+				}
+			}
+			return counts;
+		}
+	}
+}
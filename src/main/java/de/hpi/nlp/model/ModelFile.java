@@ -0,0 +1,253 @@
+package de.hpi.nlp.model;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary file format of the compiled models, so a server does not have to parse and train on 
+ * the corpus at every start. The tables are memory mapped and scored in place, loading a model 
+ * only reads the header, the category names and the vocabulary.
+ * 
+ * Layout, little endian:
+ * - header: magic, format version, model type, number of categories, number of terms
+ * - category names and terms as length prefixed UTF-8, the terms in the order of the term rows
+ * - zero padding to a multiple of 8 bytes
+ * - the tables of the model, each prefixed by its length in elements and padded to 8 bytes
+ * A single file is limited to 2GB by FileChannel.map.
+ */
+public class ModelFile {
+	private static final int MAGIC = 0x4E42434D; // "MCBN"
+	public static final int VERSION = 1;
+	
+	public static final int NAIVE_BAYES = 1;
+	public static final int BIGRAM_BAYES = 2;
+	
+	public static void write(CompiledNaiveBayesModel model, File file) throws IOException {
+		try (Writer out = new Writer(file)) {
+			out.writeHeader(NAIVE_BAYES, categoriesOf(model), model.getVocabulary());
+			out.writeDoubles(model.getLogLikelihoods());
+			out.writeDoubles(DoubleBuffer.wrap(model.getUnknownLogLikelihoods()));
+			out.writeDoubles(DoubleBuffer.wrap(model.getLogPriors()));
+		}
+	}
+	
+	public static void write(CompiledBayesModel model, File file) throws IOException {
+		try (Writer out = new Writer(file)) {
+			out.writeHeader(BIGRAM_BAYES, categoriesOf(model), model.getVocabulary());
+			out.writeDoubles(DoubleBuffer.wrap(model.getLogPriors()));
+			out.writeDoubles(model.getFirstLogProbabilities());
+			out.writeDoubles(model.getUnseenLogProbabilities());
+			out.writeLongs(model.getBigramKeys());
+			out.writeInts(model.getBigramRows());
+			out.writeInts(model.getRowOffsets());
+			out.writeInts(model.getRowCategories());
+			out.writeDoubles(model.getRowLogProbabilities());
+		}
+	}
+	
+	/**
+	 * Loads a model written by one of the write methods, either a CompiledNaiveBayesModel 
+	 * or a CompiledBayesModel.
+	 */
+	public static CategoryScorer read(File file) throws IOException {
+		MappedByteBuffer mapped;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); 
+				FileChannel channel = raf.getChannel()) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Model file " + file + " is larger than 2GB");
+			}
+			// the mapping stays valid after the channel is closed
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		ByteBuffer in = mapped.order(ByteOrder.LITTLE_ENDIAN);
+		
+		if (in.remaining() < 20 || in.getInt() != MAGIC) {
+			throw new IOException(file + " is not a model file");
+		}
+		int version = in.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported model file version " + version + " in " + file);
+		}
+		int type = in.getInt();
+		String[] categories = new String[in.getInt()];
+		String[] terms = new String[in.getInt()];
+		for(int i = 0; i < categories.length; i++) {
+			categories[i] = readString(in);
+		}
+		for(int i = 0; i < terms.length; i++) {
+			terms[i] = readString(in);
+		}
+		align(in);
+		ModelVocabulary vocabulary = ModelVocabulary.ofTerms(terms);
+		
+		switch(type) {
+		case NAIVE_BAYES:
+			DoubleBuffer logLikelihoods = readDoubles(in);
+			double[] unknownLogLikelihoods = toArray(readDoubles(in));
+			double[] logPriors = toArray(readDoubles(in));
+			return new CompiledNaiveBayesModel(categories, vocabulary, logLikelihoods, unknownLogLikelihoods, logPriors);
+		case BIGRAM_BAYES:
+			return new CompiledBayesModel(categories, toArray(readDoubles(in)), vocabulary, 
+					readDoubles(in), readDoubles(in), readLongs(in), readInts(in), readInts(in), readInts(in), readDoubles(in));
+		default:
+			throw new IOException("Unknown model type " + type + " in " + file);
+		}
+	}
+	
+	private static String[] categoriesOf(CategoryScorer model) {
+		String[] categories = new String[model.getNumCategories()];
+		for(int i = 0; i < categories.length; i++) {
+			categories[i] = model.getCategory(i);
+		}
+		return categories;
+	}
+	
+	private static String readString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	private static void align(ByteBuffer in) {
+		in.position((in.position() + 7) & ~7);
+	}
+	
+	/**
+	 * Slices the next section out of the buffer and skips it.
+	 */
+	private static ByteBuffer section(ByteBuffer in, int elementSize) {
+		int length = (int) in.getLong();
+		ByteBuffer section = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+		section.limit(length * elementSize);
+		in.position(in.position() + length * elementSize);
+		align(in);
+		return section;
+	}
+	
+	private static DoubleBuffer readDoubles(ByteBuffer in) {
+		return section(in, 8).asDoubleBuffer();
+	}
+	
+	private static LongBuffer readLongs(ByteBuffer in) {
+		return section(in, 8).asLongBuffer();
+	}
+	
+	private static IntBuffer readInts(ByteBuffer in) {
+		return section(in, 4).asIntBuffer();
+	}
+	
+	private static double[] toArray(DoubleBuffer buffer) {
+		double[] values = new double[buffer.remaining()];
+		buffer.get(values);
+		return values;
+	}
+	
+	/**
+	 * Little endian output, which keeps track of the position for the alignment.
+	 */
+	private static class Writer implements AutoCloseable {
+		private final OutputStream out;
+		private final ByteBuffer scratch = ByteBuffer.allocate(8192).order(ByteOrder.LITTLE_ENDIAN);
+		private long position = 0;
+		
+		Writer(File file) throws IOException {
+			this.out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		}
+		
+		void writeHeader(int type, String[] categories, ModelVocabulary vocabulary) throws IOException {
+			putInt(MAGIC);
+			putInt(VERSION);
+			putInt(type);
+			putInt(categories.length);
+			putInt(vocabulary.size());
+			for(String category : categories) {
+				putString(category);
+			}
+			for(int row = 0; row < vocabulary.size(); row++) {
+				putString(vocabulary.getTerm(row));
+			}
+			pad();
+		}
+		
+		void writeDoubles(DoubleBuffer values) throws IOException {
+			putLong(values.remaining());
+			while (values.hasRemaining()) {
+				ensure(8);
+				scratch.putDouble(values.get());
+			}
+			pad();
+		}
+		
+		void writeLongs(LongBuffer values) throws IOException {
+			putLong(values.remaining());
+			while (values.hasRemaining()) {
+				putLong(values.get());
+			}
+			pad();
+		}
+		
+		void writeInts(IntBuffer values) throws IOException {
+			putLong(values.remaining());
+			while (values.hasRemaining()) {
+				putInt(values.get());
+			}
+			pad();
+		}
+		
+		private void putInt(int value) throws IOException {
+			ensure(4);
+			scratch.putInt(value);
+		}
+		
+		private void putLong(long value) throws IOException {
+			ensure(8);
+			scratch.putLong(value);
+		}
+		
+		private void putString(String value) throws IOException {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			putInt(bytes.length);
+			for(byte b : bytes) {
+				ensure(1);
+				scratch.put(b);
+			}
+		}
+		
+		private void pad() throws IOException {
+			while (((position + scratch.position()) & 7) != 0) {
+				ensure(1);
+				scratch.put((byte) 0);
+			}
+		}
+		
+		private void ensure(int bytes) throws IOException {
+			if (scratch.remaining() < bytes) {
+				flush();
+			}
+		}
+		
+		private void flush() throws IOException {
+			out.write(scratch.array(), 0, scratch.position());
+			position += scratch.position();
+			scratch.clear();
+		}
+		
+		@Override
+		public void close() throws IOException {
+			flush();
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package de.hpi.nlp.model;
+
+import java.util.Arrays;
+
+/**
+ * Maps the ids of the TermDictionary to the rows of a compiled model. A model compiled in 
+ * this JVM uses the term ids as rows. A model loaded from a file has rows in the order of its 
+ * stored vocabulary, which is interned into the dictionary on loading; the rows only have to 
+ * be looked up if the ids turned out differently.
+ */
+class ModelVocabulary {
+	private final int numTerms;
+	// term id -> row, null if every term id is its own row
+	private final int[] rows;
+	// stored vocabulary, null if the terms are taken from the dictionary
+	private final String[] terms;
+	
+	private ModelVocabulary(int numTerms, int[] rows, String[] terms) {
+		this.numTerms = numTerms;
+		this.rows = rows;
+		this.terms = terms;
+	}
+	
+	/**
+	 * The first numTerms ids of the dictionary.
+	 */
+	static ModelVocabulary ofDictionary(int numTerms) {
+		return new ModelVocabulary(numTerms, null, null);
+	}
+	
+	/**
+	 * Interns the terms of a stored model, term i becomes row i.
+	 */
+	static ModelVocabulary ofTerms(String[] terms) {
+		TermDictionary dictionary = TermDictionary.getInstance();
+		int[] ids = new int[terms.length];
+		boolean identity = true;
+		for (int row = 0; row < terms.length; row++) {
+			ids[row] = dictionary.intern(terms[row]);
+			identity &= ids[row] == row;
+		}
+		if (identity) {
+			return new ModelVocabulary(terms.length, null, terms);
+		}
+		
+		int[] rows = new int[dictionary.size()];
+		Arrays.fill(rows, -1);
+		for (int row = 0; row < terms.length; row++) {
+			rows[ids[row]] = row;
+		}
+		return new ModelVocabulary(terms.length, rows, terms);
+	}
+	
+	/**
+	 * A subset of the dictionary, term ids[i] becomes row i.
+	 */
+	static ModelVocabulary ofTermIds(int[] ids) {
+		TermDictionary dictionary = TermDictionary.getInstance();
+		String[] terms = new String[ids.length];
+		int[] rows = new int[dictionary.size()];
+		Arrays.fill(rows, -1);
+		for (int row = 0; row < ids.length; row++) {
+			terms[row] = dictionary.getTerm(ids[row]);
+			rows[ids[row]] = row;
+		}
+		return new ModelVocabulary(ids.length, rows, terms);
+	}
+	
+	/**
+	 * Row of the term id, -1 if the model does not know the term.
+	 */
+	int row(int termId) {
+		if (rows == null) {
+			return termId >= 0 && termId < numTerms ? termId : -1;
+		}
+		return termId >= 0 && termId < rows.length ? rows[termId] : -1;
+	}
+	
+	int size() {
+		return numTerms;
+	}
+	
+	String getTerm(int row) {
+		return terms == null ? TermDictionary.getInstance().getTerm(row) : terms[row];
+	}
+}
@@ -0,0 +1,122 @@
+package de.hpi.nlp.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import de.hpi.nlp.util.TopKHeap;
+
+/**
+ * Assigns more than one category to an article: the k best categories or all categories 
+ * whose posterior probability is above a threshold. Posteriors are the exponentiated log scores 
+ * normalized with log-sum-exp, so they do not underflow even for long articles.
+ */
+public class MultiLabelClassifier {
+	
+	/**
+	 * The k best categories of the article, best first, with posteriors over all categories.
+	 * k has to be at least 1, less than k categories are returned if the model has less.
+	 */
+	public static List<RankedCategory> topK(CategoryScorer scorer, OhsumedArticle article, int k) {
+		checkK(k);
+		double[] scores = new double[scorer.getNumCategories()];
+		scorer.score(article, scores);
+		double logNormalizer = logSumExp(scores, scores.length);
+		
+		if (scores.length == 0) {
+			return new ArrayList<>();
+		}
+		TopKHeap heap = new TopKHeap(Math.min(k, scores.length));
+		for(int category = 0; category < scores.length; category++) {
+			heap.offer(category, scores[category]);
+		}
+		int[] topCategories = new int[heap.size()];
+		double[] topScores = new double[heap.size()];
+		int numTop = heap.drainDescending(topCategories, topScores);
+		return toRanking(scorer, topCategories, topScores, numTop, logNormalizer);
+	}
+	
+	/**
+	 * All categories with a posterior of at least minPosterior, best first.
+	 */
+	public static List<RankedCategory> aboveThreshold(CategoryScorer scorer, OhsumedArticle article, double minPosterior) {
+		double[] scores = new double[scorer.getNumCategories()];
+		scorer.score(article, scores);
+		double logNormalizer = logSumExp(scores, scores.length);
+		double minLogScore = Math.log(minPosterior) + logNormalizer;
+		
+		List<RankedCategory> ranking = new ArrayList<>();
+		for(int category = 0; category < scores.length; category++) {
+			if (scores[category] >= minLogScore) {
+				ranking.add(new RankedCategory(scorer.getCategory(category), scores[category], 
+						Math.exp(scores[category] - logNormalizer)));
+			}
+		}
+		sortDescending(ranking);
+		return ranking;
+	}
+	
+	/**
+	 * The k best categories like topK(), but categories that cannot make it into the top k are 
+	 * not scored to the end (see CompiledNaiveBayesModel.topCategories). Their scores are unknown, 
+	 * and so is the normalizer: the categories are ranked by their log scores only, without 
+	 * posteriors (getPosterior() is NaN).
+	 */
+	public static List<RankedCategory> topKPruned(CompiledNaiveBayesModel model, OhsumedArticle article, int k) {
+		checkK(k);
+		int size = Math.min(k, model.getNumCategories());
+		int[] topCategories = new int[size];
+		double[] topScores = new double[size];
+		int numTop = model.topCategories(article, k, topCategories, topScores);
+		List<RankedCategory> ranking = new ArrayList<>(numTop);
+		for(int i = 0; i < numTop; i++) {
+			ranking.add(new RankedCategory(model.getCategory(topCategories[i]), topScores[i]));
+		}
+		return ranking;
+	}
+	
+	private static void checkK(int k) {
+		if (k < 1) {
+			throw new IllegalArgumentException("k has to be at least 1: " + k);
+		}
+	}
+	
+	/**
+	 * log(sum(exp(logScores[i]))) of the first n scores, shifted by the maximum so that 
+	 * exp does not underflow.
+	 */
+	public static double logSumExp(double[] logScores, int n) {
+		double max = Double.NEGATIVE_INFINITY;
+		for(int i = 0; i < n; i++) {
+			max = Math.max(max, logScores[i]);
+		}
+		if (max == Double.NEGATIVE_INFINITY) {
+			return max;
+		}
+		double sum = 0.0;
+		for(int i = 0; i < n; i++) {
+			sum += Math.exp(logScores[i] - max);
+		}
+		return max + Math.log(sum);
+	}
+	
+	private static List<RankedCategory> toRanking(CategoryScorer scorer, int[] categories, double[] scores, 
+			int n, double logNormalizer) {
+		List<RankedCategory> ranking = new ArrayList<>(n);
+		for(int i = 0; i < n; i++) {
+			ranking.add(new RankedCategory(scorer.getCategory(categories[i]), scores[i], 
+					Math.exp(scores[i] - logNormalizer)));
+		}
+		return ranking;
+	}
+	
+	private static void sortDescending(List<RankedCategory> ranking) {
+		Collections.sort(ranking, new Comparator<RankedCategory>() {
+			@Override
+			public int compare(RankedCategory a, RankedCategory b) {
+				return Double.compare(b.getLogScore(), a.getLogScore());
+			}
+		});
+	}
+}
@@ -0,0 +1,430 @@
+package de.hpi.nlp.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.hpi.nlp.metrics.Gauge;
+import de.hpi.nlp.metrics.Metrics;
+import de.hpi.nlp.metrics.Timer;
+
+/**
+ * Category language models of any order n, e.g. trigrams for n = 3. The n-grams of all categories
+ * are kept in one trie of sorted arrays, so a context is stored once no matter in how many categories
+ * it occurs. Level l of the trie holds the (l + 1)-grams, the children of a node are a contiguous
+ * range of the next level sorted by term, and every node has a sparse list of the categories it
+ * has been seen in (sorted by category) with their counts. Nodes on the last level have no children,
+ * so there is one node per n-gram and category instead, with the node as its only slot, which saves
+ * the offsets of the mostly singleton n-grams of the highest order. Sentences start with n - 1 times
+ * BayesModel.BEGINNING_OF_SENTENCE, which is a context only and never counted as a term.
+ *
+ * P(term | context) backs off to shorter contexts with Witten-Bell smoothing:
+ * P(w | h) = (count(h w) + types(h) * P(w | h')) / (count(h) + types(h)), where h' is h without
+ * its first term and types(h) is the number of distinct terms seen after h, down to the add
+ * one smoothed unigram model (count(w) + 1) / (tokens + vocabulary) of the category.
+ * A context that has not been seen in a category is skipped.
+ *
+ * Immutable and safe to use from several threads, scoring does not allocate.
+ */
+public class NGramModel implements CategoryScorer {
+	private static final Timer COUNT_TIMER = Metrics.timer("train.ngram.count");
+	private static final Timer SCORE_TIMER = Metrics.timer("score.ngram");
+	private static final Gauge MODEL_BYTES = Metrics.gauge("model.ngram.bytes");
+	private static final Gauge NUM_NODES = Metrics.gauge("model.ngram.nodes");
+	// while counting an n-gram occurrence is packed into a long,
+	// parent node << 32 | term << CATEGORY_BITS + 1 | category << 1 | counted
+	private static final int CATEGORY_BITS = 8;
+	private static final int TERM_BITS = 31 - CATEGORY_BITS - 1;
+	private static final int CATEGORY_MASK = (1 << CATEGORY_BITS) - 1;
+	private static final int MAX_COUNT = (1 << 32 - CATEGORY_BITS) - 1;
+	
+	private final int order;
+	private final String[] categories;
+	private final Map<String, Integer> categoryIndex;
+	private final double[] logPriors;
+	private final long[] tokensPerCategory;
+	private final int[] vocabularySizes;
+	
+	// per level: the last term of each node, its children [childOffsets[node], childOffsets[node + 1])
+	// on the next level, and its categories [slotOffsets[node], slotOffsets[node + 1]) (not on the last level)
+	private final int[][] nodeTerms;
+	private final int[][] childOffsets;
+	private final int[][] slotOffsets;
+	// how often the n-gram has been seen in the category, count << CATEGORY_BITS | category
+	private final int[][] slots;
+	// how often the n-gram has been seen as context in the category, and of how many distinct terms
+	private final int[][] contextCounts;
+	private final int[][] contextTypes;
+	
+	// the context and n-gram node of every level for the current token
+	private final ThreadLocal<int[]> nodes = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[2 * order];
+		}
+	};
+	
+	public NGramModel(OhsumedCorpus corpus, int order) {
+		this(PackedCorpus.of(corpus), order);
+	}
+	
+	public NGramModel(PackedCorpus corpus, int order) {
+		if (order < 1) {
+			throw new IllegalArgumentException("Order has to be at least 1: " + order);
+		}
+		if (corpus.getNumCategories() > 1 << CATEGORY_BITS || TermDictionary.getInstance().size() > 1 << TERM_BITS) {
+			throw new IllegalArgumentException("Too many categories or terms for an n-gram model");
+		}
+		long start = COUNT_TIMER.start();
+		this.order = order;
+		int numCategories = corpus.getNumCategories();
+		this.categories = new String[numCategories];
+		this.categoryIndex = new HashMap<>();
+		this.logPriors = new double[numCategories];
+		for(int category = 0; category < numCategories; category++) {
+			categories[category] = corpus.getCategory(category);
+			categoryIndex.put(categories[category], category);
+			logPriors[category] = Math.log((double) corpus.getNumArticlesPerCategory(categories[category]) / corpus.getNumArticles());
+		}
+		
+		// every sentence padded with order - 1 beginnings, depth is the position in the padded sentence
+		int[] termIds = corpus.getTermIds();
+		int[] sentenceOffsets = corpus.getSentenceOffsets();
+		int[] articleOffsets = corpus.getArticleOffsets();
+		int[] articleCategories = corpus.getArticleCategories();
+		int numSentences = sentenceOffsets.length - 1;
+		int numPositions = termIds.length + numSentences * (order - 1);
+		int[] paddedTerms = new int[numPositions];
+		int[] depths = new int[numPositions];
+		int[] positionCategories = new int[numPositions];
+		int position = 0;
+		for(int article = 0; article < corpus.getNumArticles(); article++) {
+			for(int sentence = articleOffsets[article]; sentence < articleOffsets[article + 1]; sentence++) {
+				int depth = 0;
+				for(; depth < order - 1; depth++) {
+					paddedTerms[position] = BayesModel.BEGINNING_OF_SENTENCE_ID;
+					depths[position] = depth;
+					positionCategories[position++] = articleCategories[article];
+				}
+				for(int i = sentenceOffsets[sentence]; i < sentenceOffsets[sentence + 1]; i++) {
+					paddedTerms[position] = termIds[i];
+					depths[position] = depth++;
+					positionCategories[position++] = articleCategories[article];
+				}
+			}
+		}
+		
+		this.nodeTerms = new int[order][];
+		this.childOffsets = new int[order][];
+		this.slotOffsets = new int[order][];
+		this.slots = new int[order][];
+		this.contextCounts = new int[order][];
+		this.contextTypes = new int[order][];
+		// node of the n-gram of the current level that ends at each position
+		int[] nodeAt = new int[numPositions];
+		for(int level = 0; level < order; level++) {
+			countLevel(level, paddedTerms, depths, positionCategories, nodeAt);
+		}
+		
+		this.tokensPerCategory = new long[numCategories];
+		this.vocabularySizes = new int[numCategories];
+		for(int slot = 0; slot < slots[0].length; slot++) {
+			if (count(0, slot) > 0) {
+				tokensPerCategory[category(0, slot)] += count(0, slot);
+				vocabularySizes[category(0, slot)]++;
+			}
+		}
+		COUNT_TIMER.stop(start);
+		updateGauges();
+	}
+	
+	/**
+	 * Builds the nodes of one level from all its n-gram occurrences, sorted as packed longs,
+	 * so nodes end up sorted by parent and term and their slots by category.
+	 * The nodes of the last level are split by category as well.
+	 */
+	private void countLevel(int level, int[] paddedTerms, int[] depths, int[] positionCategories, int[] nodeAt) {
+		int numOccurrences = 0;
+		for(int position = 0; position < paddedTerms.length; position++) {
+			if (depths[position] >= level) {
+				numOccurrences++;
+			}
+		}
+		long[] occurrences = new long[numOccurrences];
+		int next = 0;
+		for(int position = 0; position < paddedTerms.length; position++) {
+			if (depths[position] >= level) {
+				// only terms are counted, the padding is context
+				long parent = level == 0 ? 0 : nodeAt[position - 1];
+				long counted = depths[position] >= order - 1 ? 1 : 0;
+				occurrences[next++] = parent << 32 | (long) paddedTerms[position] << CATEGORY_BITS + 1
+						| positionCategories[position] << 1 | counted;
+			}
+		}
+		Arrays.sort(occurrences);
+		
+		boolean last = level == order - 1;
+		int nodeShift = last ? 1 : CATEGORY_BITS + 1;
+		int numNodes = 0;
+		int numSlots = 0;
+		for(int i = 0; i < numOccurrences; i++) {
+			if (i == 0 || occurrences[i] >>> nodeShift != occurrences[i - 1] >>> nodeShift) {
+				numNodes++;
+			}
+			if (i == 0 || occurrences[i] >>> 1 != occurrences[i - 1] >>> 1) {
+				numSlots++;
+			}
+		}
+		int[] terms = new int[numNodes];
+		int[] parents = new int[numNodes];
+		int[] offsets = new int[numNodes + 1];
+		int[] levelSlots = new int[numSlots];
+		int node = -1;
+		int slot = -1;
+		for(int i = 0; i < numOccurrences; i++) {
+			long occurrence = occurrences[i];
+			if (i == 0 || occurrence >>> nodeShift != occurrences[i - 1] >>> nodeShift) {
+				node++;
+				terms[node] = (int) (occurrence >>> CATEGORY_BITS + 1) & (1 << TERM_BITS) - 1;
+				parents[node] = (int) (occurrence >>> 32);
+				offsets[node] = slot + 1;
+			}
+			if (i == 0 || occurrence >>> 1 != occurrences[i - 1] >>> 1) {
+				slot++;
+				levelSlots[slot] = (int) (occurrence >>> 1) & CATEGORY_MASK;
+			}
+			if ((occurrence & 1) != 0) {
+				if (levelSlots[slot] >>> CATEGORY_BITS == MAX_COUNT) {
+					throw new IllegalArgumentException("N-gram seen too often for an n-gram model");
+				}
+				levelSlots[slot] += 1 << CATEGORY_BITS;
+			}
+		}
+		offsets[numNodes] = numSlots;
+		nodeTerms[level] = terms;
+		slotOffsets[level] = last ? null : offsets;
+		slots[level] = levelSlots;
+		
+		if (level > 0) {
+			// the nodes of the previous level are contexts of this one
+			int[] parentOffsets = new int[nodeTerms[level - 1].length + 1];
+			int[] parentCounts = new int[slots[level - 1].length];
+			int[] parentTypes = new int[slots[level - 1].length];
+			for(node = 0; node < numNodes; node++) {
+				int parent = parents[node];
+				parentOffsets[parent + 1] = node + 1;
+				for(slot = offsets[node]; slot < offsets[node + 1]; slot++) {
+					if (count(level, slot) > 0) {
+						// the parents are not on the last level, their context is not needed
+						int parentSlot = findSlot(level - 1, -1, parent, category(level, slot));
+						parentCounts[parentSlot] += count(level, slot);
+						parentTypes[parentSlot]++;
+					}
+				}
+			}
+			// parents without children get empty ranges
+			for(int parent = 1; parent < parentOffsets.length; parent++) {
+				parentOffsets[parent] = Math.max(parentOffsets[parent], parentOffsets[parent - 1]);
+			}
+			childOffsets[level - 1] = parentOffsets;
+			contextCounts[level - 1] = parentCounts;
+			contextTypes[level - 1] = parentTypes;
+		}
+		
+		// backwards, as the node of the previous position is still the one of the previous level,
+		// the nodes of the last level are not contexts
+		for(int position = paddedTerms.length - 1; position >= 0 && !last; position--) {
+			if (depths[position] >= level) {
+				nodeAt[position] = findChild(level, level == 0 ? 0 : nodeAt[position - 1], paddedTerms[position]);
+			}
+		}
+	}
+	
+	/**
+	 * The node of the term below parent on the given level (for level 0 the parent is ignored), -1 if there is none.
+	 * On the last level the first node of the term, i.e. the one of its first category.
+	 */
+	private int findChild(int level, int parent, int term) {
+		int from = level == 0 ? 0 : childOffsets[level - 1][parent];
+		int to = level == 0 ? nodeTerms[0].length : childOffsets[level - 1][parent + 1];
+		int[] terms = nodeTerms[level];
+		int node = Arrays.binarySearch(terms, from, to, term);
+		if (node < 0) {
+			return -1;
+		}
+		while (slotOffsets[level] == null && node > from && terms[node - 1] == term) {
+			node--;
+		}
+		return node;
+	}
+	
+	/**
+	 * The slot of the category in the node, -1 if the node has not been seen in the category.
+	 * The context is the parent of the node, it is only needed on the last level.
+	 */
+	private int findSlot(int level, int context, int node, int category) {
+		if (slotOffsets[level] == null) {
+			// the following nodes of the same term, up to the last child of the context,
+			// the ones after it have the same term but another context
+			int[] terms = nodeTerms[level];
+			int to = level == 0 ? terms.length : childOffsets[level - 1][context + 1];
+			for(int slot = node; slot < to && terms[slot] == terms[node]; slot++) {
+				int slotCategory = category(level, slot);
+				if (slotCategory == category) {
+					return slot;
+				} else if (slotCategory > category) {
+					break;
+				}
+			}
+			return -1;
+		}
+		for(int slot = slotOffsets[level][node]; slot < slotOffsets[level][node + 1]; slot++) {
+			int slotCategory = category(level, slot);
+			if (slotCategory == category) {
+				return slot;
+			} else if (slotCategory > category) {
+				break;
+			}
+		}
+		return -1;
+	}
+	
+	private int category(int level, int slot) {
+		return slots[level][slot] & CATEGORY_MASK;
+	}
+	
+	private int count(int level, int slot) {
+		return slots[level][slot] >>> CATEGORY_BITS;
+	}
+	
+	/**
+	 * Writes log P(category) + log P(article | category) of every category into scores,
+	 * which has to have getNumCategories() entries.
+	 */
+	public void score(OhsumedArticle article, double[] scores) {
+		long start = SCORE_TIMER.start();
+		int numCategories = categories.length;
+		System.arraycopy(logPriors, 0, scores, 0, numCategories);
+		int[] tokenNodes = nodes.get();
+		
+		for(Sentence s : article) {
+			int[] termIds = s.getTermIds();
+			for(int i = 0; i < s.getNumTokens(); i++) {
+				int term = termIds[i];
+				// the context of length level and its n-gram with the term, for every level,
+				// unknown terms (-1) are found nowhere
+				tokenNodes[0] = term < 0 ? -1 : findChild(0, 0, term);
+				for(int level = 1; level < order; level++) {
+					int context = -1;
+					for(int length = level; length > 0; length--) {
+						int contextTerm = i - length >= 0 ? termIds[i - length] : BayesModel.BEGINNING_OF_SENTENCE_ID;
+						context = contextTerm < 0 ? -1 : findChild(level - length, context, contextTerm);
+						if (context < 0) {
+							break;
+						}
+					}
+					tokenNodes[2 * level] = context;
+					tokenNodes[2 * level + 1] = context < 0 || term < 0 ? -1 : findChild(level, context, term);
+				}
+				
+				for(int category = 0; category < numCategories; category++) {
+					int unigramSlot = tokenNodes[0] < 0 ? -1 : findSlot(0, -1, tokenNodes[0], category);
+					double probability = ((unigramSlot < 0 ? 0 : count(0, unigramSlot)) + 1.0)
+							/ (tokensPerCategory[category] + vocabularySizes[category]);
+					for(int level = 1; level < order; level++) {
+						int context = tokenNodes[2 * level];
+						int contextSlot = context < 0 ? -1 : findSlot(level - 1, -1, context, category);
+						if (contextSlot < 0 || contextCounts[level - 1][contextSlot] == 0) {
+							continue;
+						}
+						int node = tokenNodes[2 * level + 1];
+						int slot = node < 0 ? -1 : findSlot(level, context, node, category);
+						int types = contextTypes[level - 1][contextSlot];
+						probability = ((slot < 0 ? 0 : count(level, slot)) + types * probability)
+								/ (contextCounts[level - 1][contextSlot] + types);
+					}
+					scores[category] += Math.log(probability);
+				}
+			}
+		}
+		SCORE_TIMER.stop(start);
+	}
+	
+	/**
+	 * argmax { log(prior) + log P(article | category) }, returns the index of the best category.
+	 */
+	public int bestCategory(OhsumedArticle article) {
+		double[] scores = new double[categories.length];
+		score(article, scores);
+		
+		int bestCategory = -1;
+		double maxProbability = Double.NEGATIVE_INFINITY;
+		for(int category = 0; category < scores.length; category++) {
+			if (scores[category] > maxProbability) {
+				maxProbability = scores[category];
+				bestCategory = category;
+			}
+		}
+		return bestCategory;
+	}
+	
+	public String classify(OhsumedArticle article) {
+		int category = bestCategory(article);
+		return category < 0 ? null : categories[category];
+	}
+	
+	private void updateGauges() {
+		if (Metrics.ENABLED) {
+			MODEL_BYTES.set(sizeInBytes());
+			long numNodes = 0;
+			for(int level = 0; level < order; level++) {
+				numNodes += nodeTerms[level].length;
+			}
+			NUM_NODES.set(numNodes);
+		}
+	}
+	
+	/**
+	 * Approximate heap size of the trie.
+	 */
+	public long sizeInBytes() {
+		long bytes = 0;
+		for(int level = 0; level < order; level++) {
+			bytes += 4L * (nodeTerms[level].length + slots[level].length);
+			if (level < order - 1) {
+				bytes += 4L * (slotOffsets[level].length + childOffsets[level].length 
+						+ contextCounts[level].length + contextTypes[level].length);
+			}
+		}
+		return bytes;
+	}
+	
+	public int getOrder() {
+		return order;
+	}
+	
+	public int getNumCategories() {
+		return categories.length;
+	}
+	
+	public String getCategory(int category) {
+		return categories[category];
+	}
+	
+	/**
+	 * Index of the category, -1 if the model does not know it.
+	 */
+	public int getCategoryIndex(String categoryName) {
+		Integer category = categoryIndex.get(categoryName);
+		return category == null ? -1 : category;
+	}
+	
+	/**
+	 * Number of nodes of the n-grams of the given length (1 to getOrder()) in the trie, including 
+	 * contexts that consist of beginnings of sentences only. The n-grams of length getOrder() have 
+	 * a node per category they have been seen in.
+	 */
+	public int getNumNodes(int length) {
+		return nodeTerms[length - 1].length;
+	}
+}
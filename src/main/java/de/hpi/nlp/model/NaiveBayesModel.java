@@ -1,93 +1,427 @@
 package de.hpi.nlp.model;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import de.hpi.nlp.metrics.Gauge;
+import de.hpi.nlp.metrics.Metrics;
+import de.hpi.nlp.metrics.Timer;
+import de.hpi.nlp.util.IntIntHashMap;
+
+/**
+ * Unigram counts per category. Articles can be added and removed after the model has been 
+ * built (see addArticles and removeArticles). Updates are copy-on-write: the counts are never 
+ * changed in place but replaced by a new snapshot, so readers are never blocked and a reader 
+ * that needs several values from the same state takes a snapshot() first.
+ * A model can be restricted to a set of features (see FeatureSelector), all other terms are 
+ * ignored then, both for counting and by the CompiledNaiveBayesModel.
+ */
 public class NaiveBayesModel {
-	// each category (or class) is a unigram language model
-	private final Map<String, Map<String, Integer>> categoryUnigrams;
-	public Map<String, Map<String, Integer>> getCategoryUnigrams() {
-		return categoryUnigrams;
-	}
-	private final Map<String, Integer> tokensPerCategory;
-	private final Map<String, Set<String>> overallTermOccurrences; // which term appears in which documents
-	public Map<String, Set<String>> getOverallTermOccurrences() {
-		return overallTermOccurrences;
+	private static final Timer COUNT_TIMER = Metrics.timer("train.naiveBayes.count");
+	private static final Timer UPDATE_TIMER = Metrics.timer("train.naiveBayes.update");
+	private static final Timer MERGE_TIMER = Metrics.timer("train.naiveBayes.merge");
+	private static final Gauge MODEL_BYTES = Metrics.gauge("model.naiveBayes.bytes");
+	private static final Gauge VOCABULARY_SIZE = Metrics.gauge("model.naiveBayes.vocabulary");
+	
+	private volatile Counts counts;
+	// term ids the model is restricted to, null if it uses all terms
+	private final BitSet features;
+	
+	/**
+	 * Immutable state of the model, shared between snapshots. Only the maps of categories 
+	 * that are affected by an update are copied.
+	 */
+	private static class Counts {
+		// each category (or class) is a unigram language model,
+		// the occurrence counts are keyed by term id (see TermDictionary)
+		private final Map<String, IntIntHashMap> categoryUnigrams;
+		private final Map<String, Integer> tokensPerCategory;
+		private final int[] documentFrequency; // in how many articles each term id occurs
+		private final Map<String, Long> numArticlesPerCategory;
+		private final long numArticles;
+		private final long version;
+		
+		Counts(Map<String, IntIntHashMap> categoryUnigrams, Map<String, Integer> tokensPerCategory, 
+				int[] documentFrequency, Map<String, Long> numArticlesPerCategory, long numArticles, long version) {
+			this.categoryUnigrams = Collections.unmodifiableMap(categoryUnigrams);
+			this.tokensPerCategory = Collections.unmodifiableMap(tokensPerCategory);
+			this.documentFrequency = documentFrequency;
+			this.numArticlesPerCategory = Collections.unmodifiableMap(numArticlesPerCategory);
+			this.numArticles = numArticles;
+			this.version = version;
+		}
 	}
-	private final Map<String, Long> numArticlesPerCategory;
-	private final long numArticles;
 	
 	public NaiveBayesModel(OhsumedCorpus corpus) {
-		Set<String> categories = corpus.getCategories();
-		this.categoryUnigrams = new HashMap<>();
-		this.numArticles = corpus.getNumArticles();
-		this.numArticlesPerCategory = new HashMap<>();
-		this.overallTermOccurrences = new HashMap<>();
-		this.tokensPerCategory = corpus.getTokensPerCategory();
+		this(PackedCorpus.of(corpus));
+	}
+	
+	public NaiveBayesModel(PackedCorpus corpus) {
+		this(corpus, null);
+	}
+	
+	/**
+	 * Counts only the given term ids (see FeatureSelector.select), null for all terms.
+	 */
+	public NaiveBayesModel(PackedCorpus corpus, BitSet features) {
+		this(corpus, features, 0, corpus.getNumArticles());
+		updateGauges();
+	}
+	
+	/**
+	 * Counts the articles from fromArticle to toArticle (exclusive) only, a shard of the 
+	 * corpus (see ParallelTrainer). Categories without an article in the range are left out.
+	 */
+	NaiveBayesModel(PackedCorpus corpus, BitSet features, int fromArticle, int toArticle) {
+		this.features = features;
+		long start = COUNT_TIMER.start();
+		int numCategories = corpus.getNumCategories();
+		Map<String, IntIntHashMap> categoryUnigrams = new HashMap<>();
+		IntIntHashMap[] unigrams = new IntIntHashMap[numCategories];
+		int[] tokens = new int[numCategories];
+		long[] articles = new long[numCategories];
+		// every term of the corpus has already been given an id while parsing
+		int dictionarySize = TermDictionary.getInstance().size();
+		int[] documentFrequency = new int[dictionarySize];
+		// number of the last article each term was counted for, so it is counted once per article
+		int[] lastArticle = new int[dictionarySize];
+		Arrays.fill(lastArticle, -1);
 		
-		Iterator<String> it = categories.iterator();
-		while (it.hasNext()) {
-			String categoryName = it.next();
-			numArticlesPerCategory.put(categoryName, corpus.getNumArticlesPerCategory(categoryName)); 
+		// every class has its own unigrams
+		for(int category = 0; category < numCategories; category++) {
+			unigrams[category] = new IntIntHashMap();
 		}
 		
 		// build bayes model for each category/class there is, so that it can later be used
-		// do determine how much a new unseen article matches the classes (and which one matches best)
-		Set<String> categoryNames = corpus.getCategories();
-		it = categoryNames.iterator();
-		while (it.hasNext()) {
-			String categoryName = it.next();
+		// do determine how much a new unseen article matches the classes (and which one matches best),
+		// all articles are counted in a single scan over the term ids
+		int[] termIds = corpus.getTermIds();
+		int[] sentenceOffsets = corpus.getSentenceOffsets();
+		int[] articleOffsets = corpus.getArticleOffsets();
+		int[] articleCategories = corpus.getArticleCategories();
+		for(int article = fromArticle; article < toArticle; article++) {
+			int category = articleCategories[article];
+			IntIntHashMap categoryLocalUnigrams = unigrams[category];
+			int from = sentenceOffsets[articleOffsets[article]];
+			int to = sentenceOffsets[articleOffsets[article + 1]];
+			articles[category]++;
 			
-			// every class has its own unigrams
-			if (!categoryUnigrams.containsKey(categoryName)) {
-				categoryUnigrams.put(categoryName, new HashMap<String, Integer>());
+			for(int i = from; i < to; i++) {
+				int word = termIds[i];
+				// feature selection: use only a subset of words (features)
+				if (features != null && !features.get(word)) {
+					continue;
+				}
+				tokens[category]++;
+				
+				// count in how many documents a term occurred
+				// will later be used for calculation of inverse document frequency
+				if (lastArticle[word] != article) {
+					lastArticle[word] = article;
+					documentFrequency[word]++;
+				}
+				
+				// increase occurrence count of the token
+				categoryLocalUnigrams.addTo(word, 1);
+			}
+		}
+		
+		Map<String, Integer> tokensPerCategory = new HashMap<>();
+		Map<String, Long> numArticlesPerCategory = new HashMap<>();
+		for(int category = 0; category < numCategories; category++) {
+			if (articles[category] > 0) {
+				categoryUnigrams.put(corpus.getCategory(category), unigrams[category]);
+				tokensPerCategory.put(corpus.getCategory(category), tokens[category]);
+				numArticlesPerCategory.put(corpus.getCategory(category), articles[category]);
+			}
+		}
+		this.counts = new Counts(categoryUnigrams, tokensPerCategory, documentFrequency, 
+				numArticlesPerCategory, toArticle - fromArticle, 0);
+		COUNT_TIMER.stop(start);
+	}
+	
+	private NaiveBayesModel(Counts counts, BitSet features) {
+		this.counts = counts;
+		this.features = features;
+	}
+	
+	/**
+	 * Used by CountsFile to restore stored counts.
+	 */
+	static NaiveBayesModel of(Map<String, IntIntHashMap> categoryUnigrams, Map<String, Integer> tokensPerCategory, 
+			int[] documentFrequency, Map<String, Long> numArticlesPerCategory, long numArticles, BitSet features) {
+		return new NaiveBayesModel(new Counts(categoryUnigrams, tokensPerCategory, documentFrequency, 
+				numArticlesPerCategory, numArticles, 0), features);
+	}
+	
+	/**
+	 * Adds up the counts of several models, e.g. trained on shards of a corpus on different 
+	 * threads or machines (see ParallelTrainer and CountsFile). The models have to be restricted 
+	 * to the same features, and are not changed.
+	 */
+	public static NaiveBayesModel merge(List<NaiveBayesModel> models) {
+		return combine(models, 1);
+	}
+	
+	/**
+	 * The counts of total without the counts of part, i.e. the model of all articles of total 
+	 * that are not part of part, without counting them again. All articles of part have to be 
+	 * counted in total as well. Categories without any article left are dropped. CrossValidation 
+	 * scores its folds without building this model, the tests check it against this one.
+	 */
+	static NaiveBayesModel subtract(NaiveBayesModel total, NaiveBayesModel part) {
+		return combine(Arrays.asList(total, part), -1);
+	}
+	
+	/**
+	 * The first model plus factor times every other model.
+	 */
+	private static NaiveBayesModel combine(List<NaiveBayesModel> models, int factor) {
+		long start = MERGE_TIMER.start();
+		BitSet features = models.get(0).features;
+		Map<String, IntIntHashMap> categoryUnigrams = new HashMap<>();
+		Map<String, Integer> tokensPerCategory = new HashMap<>();
+		Map<String, Long> numArticlesPerCategory = new HashMap<>();
+		int[] documentFrequency = new int[0];
+		long numArticles = 0;
+		for(int i = 0; i < models.size(); i++) {
+			NaiveBayesModel model = models.get(i);
+			int modelFactor = i == 0 ? 1 : factor;
+			if (features == null ? model.features != null : !features.equals(model.features)) {
+				throw new IllegalArgumentException("Models with different features cannot be combined");
+			}
+			Counts counts = model.counts;
+			for(Map.Entry<String, IntIntHashMap> entry : counts.categoryUnigrams.entrySet()) {
+				String categoryName = entry.getKey();
+				IntIntHashMap unigrams = categoryUnigrams.get(categoryName);
+				if (unigrams == null) {
+					if (modelFactor < 0) {
+						throw new IllegalArgumentException("Category " + categoryName + " is not part of the model");
+					}
+					categoryUnigrams.put(categoryName, new IntIntHashMap(entry.getValue()));
+					tokensPerCategory.put(categoryName, counts.tokensPerCategory.get(categoryName));
+					numArticlesPerCategory.put(categoryName, counts.numArticlesPerCategory.get(categoryName));
+				} else {
+					unigrams.addAll(entry.getValue(), modelFactor);
+					tokensPerCategory.put(categoryName, tokensPerCategory.get(categoryName) 
+							+ modelFactor * counts.tokensPerCategory.get(categoryName));
+					numArticlesPerCategory.put(categoryName, numArticlesPerCategory.get(categoryName) 
+							+ modelFactor * counts.numArticlesPerCategory.get(categoryName));
+				}
+			}
+			if (counts.documentFrequency.length > documentFrequency.length) {
+				documentFrequency = Arrays.copyOf(documentFrequency, counts.documentFrequency.length);
+			}
+			for(int term = 0; term < counts.documentFrequency.length; term++) {
+				documentFrequency[term] += modelFactor * counts.documentFrequency[term];
+			}
+			numArticles += modelFactor * counts.numArticles;
+		}
+		
+		for(String categoryName : new ArrayList<>(numArticlesPerCategory.keySet())) {
+			long categoryArticles = numArticlesPerCategory.get(categoryName);
+			if (categoryArticles < 0) {
+				throw new IllegalArgumentException("Category " + categoryName + " has less articles than subtracted");
+			} else if (categoryArticles == 0) {
+				categoryUnigrams.remove(categoryName);
+				tokensPerCategory.remove(categoryName);
+				numArticlesPerCategory.remove(categoryName);
+			}
+		}
+		NaiveBayesModel combined = new NaiveBayesModel(new Counts(categoryUnigrams, tokensPerCategory, 
+				documentFrequency, numArticlesPerCategory, numArticles, 0), features);
+		MERGE_TIMER.stop(start);
+		combined.updateGauges();
+		return combined;
+	}
+	
+	/**
+	 * The current state of the model. The snapshot does not see later updates of this model, 
+	 * so all values read from it are consistent with each other.
+	 */
+	public NaiveBayesModel snapshot() {
+		return new NaiveBayesModel(counts, features);
+	}
+	
+	/**
+	 * Number of updates since the model has been built from the corpus.
+	 */
+	public long getVersion() {
+		return counts.version;
+	}
+	
+	public void addArticle(OhsumedArticle article) {
+		addArticles(Collections.singletonList(article));
+	}
+	
+	/**
+	 * Counts the labeled articles into the model. The articles have to be parsed with 
+	 * OhsumedParser.parse, so that all their terms have ids. Readers see either none or 
+	 * all of the articles.
+	 */
+	public void addArticles(Iterable<OhsumedArticle> articles) {
+		update(articles, 1);
+	}
+	
+	public void removeArticle(OhsumedArticle article) {
+		removeArticles(Collections.singletonList(article));
+	}
+	
+	/**
+	 * Takes articles out of the model again, which have been part of the training corpus
+	 * or been added before. Categories without any article left are dropped.
+	 */
+	public void removeArticles(Iterable<OhsumedArticle> articles) {
+		update(articles, -1);
+	}
+	
+	private synchronized void update(Iterable<OhsumedArticle> articles, int delta) {
+		long start = UPDATE_TIMER.start();
+		Counts current = counts;
+		Map<String, IntIntHashMap> categoryUnigrams = new HashMap<>(current.categoryUnigrams);
+		Map<String, Integer> tokensPerCategory = new HashMap<>(current.tokensPerCategory);
+		Map<String, Long> numArticlesPerCategory = new HashMap<>(current.numArticlesPerCategory);
+		long numArticles = current.numArticles;
+		// new articles may contain terms that have been added to the dictionary after the last update
+		int dictionarySize = Math.max(current.documentFrequency.length, TermDictionary.getInstance().size());
+		int[] documentFrequency = Arrays.copyOf(current.documentFrequency, dictionarySize);
+		int[] lastArticle = new int[dictionarySize];
+		Arrays.fill(lastArticle, -1);
+		int articleNumber = 0;
+		// categories whose unigrams have already been copied for this update
+		Set<String> copied = new HashSet<>();
+		
+		for(OhsumedArticle article : articles) {
+			String categoryName = article.getCategory();
+			Long categoryArticles = numArticlesPerCategory.get(categoryName);
+			if (categoryArticles == null) {
+				if (delta < 0) {
+					throw new IllegalArgumentException("Category " + categoryName + " is not part of the model");
+				}
+				categoryArticles = 0L;
+				categoryUnigrams.put(categoryName, new IntIntHashMap());
+				tokensPerCategory.put(categoryName, 0);
+				copied.add(categoryName);
+			} else if (copied.add(categoryName)) {
+				categoryUnigrams.put(categoryName, new IntIntHashMap(categoryUnigrams.get(categoryName)));
 			}
-			Map<String, Integer> categoryLocalUnigrams = categoryUnigrams.get(categoryName);
+			IntIntHashMap categoryLocalUnigrams = categoryUnigrams.get(categoryName);
 			
-			// iterate over all articles of one category/class
-			Iterator<OhsumedArticle> iter = corpus.getArticlesOfCategory(categoryName);
-			while (iter.hasNext()) {
-				OhsumedArticle article = iter.next();
-				for(Sentence sentence : article) {
-					for(Token token : sentence) {	
-						// feature selection: use only a subset of words (features)
-						
-						String word = token.getText();
-						
-						// remember in which document (title as id) a term occurred
-						// will later be used for calculation of inverse document frequency
-						if (!overallTermOccurrences.containsKey(word)) {
-							overallTermOccurrences.put(word, new HashSet<String>());
-						}
-						Set<String> documentsContainingWord = overallTermOccurrences.get(word);
-						documentsContainingWord.add(article.getTitle());
-						
-						// increase occurrence count of the token
-						if (!categoryLocalUnigrams.containsKey(word)) {
-							categoryLocalUnigrams.put(word, 1);
-						} else {
-							categoryLocalUnigrams.put(word, categoryLocalUnigrams.get(word) + 1);
-						}	
+			int numTokens = 0;
+			for(Sentence sentence : article) {
+				int[] termIds = sentence.getTermIds();
+				for(int i = 0; i < sentence.getNumTokens(); i++) {
+					int word = termIds[i];
+					if (word < 0) {
+						throw new IllegalArgumentException("Term without id in article " + article.getTitle());
 					}
+					if (features != null && !features.get(word)) {
+						continue;
+					}
+					if (delta < 0 && categoryLocalUnigrams.get(word) == 0) {
+						throw new IllegalArgumentException("Article " + article.getTitle() + " is not part of the model");
+					}
+					if (lastArticle[word] != articleNumber) {
+						lastArticle[word] = articleNumber;
+						documentFrequency[word] += delta;
+					}
+					categoryLocalUnigrams.addTo(word, delta);
+					numTokens++;
 				}
 			}
+			articleNumber++;
+			
+			tokensPerCategory.put(categoryName, tokensPerCategory.get(categoryName) + delta * numTokens);
+			numArticlesPerCategory.put(categoryName, categoryArticles + delta);
+			numArticles += delta;
+		}
+		
+		for(String categoryName : copied) {
+			if (numArticlesPerCategory.get(categoryName) == 0) {
+				categoryUnigrams.remove(categoryName);
+				tokensPerCategory.remove(categoryName);
+				numArticlesPerCategory.remove(categoryName);
+			}
+		}
+		
+		// nothing has been changed in place, readers of the previous counts are not affected
+		counts = new Counts(categoryUnigrams, tokensPerCategory, documentFrequency, 
+				numArticlesPerCategory, numArticles, current.version + 1);
+		UPDATE_TIMER.stop(start);
+		updateGauges();
+	}
+	
+	private void updateGauges() {
+		if (Metrics.ENABLED) {
+			Counts current = counts;
+			long bytes = 4L * current.documentFrequency.length;
+			for(IntIntHashMap unigrams : current.categoryUnigrams.values()) {
+				bytes += unigrams.sizeInBytes();
+			}
+			int vocabularySize = 0;
+			for(int documentFrequency : current.documentFrequency) {
+				if (documentFrequency > 0) {
+					vocabularySize++;
+				}
+			}
+			MODEL_BYTES.set(bytes);
+			VOCABULARY_SIZE.set(vocabularySize);
 		}
-
+	}
+	
+	/**
+	 * Term ids the model is restricted to, null if it uses all terms. Must not be modified.
+	 */
+	public BitSet getFeatures() {
+		return features;
+	}
+	
+	/**
+	 * Occurrence counts per category, the maps must not be modified.
+	 */
+	public Map<String, IntIntHashMap> getCategoryUnigrams() {
+		return counts.categoryUnigrams;
 	}
 
 	public Map<String, Integer> getTokensPerCategory() {
-		return tokensPerCategory;
+		return counts.tokensPerCategory;
+	}
+	
+	/**
+	 * Number of distinct terms that occur in the given category.
+	 */
+	public int getVocabularySize(String categoryName) {
+		return counts.categoryUnigrams.get(categoryName).size();
+	}
+	
+	/**
+	 * How often the term occurs in the given category, 0 for terms that are unknown to the model.
+	 */
+	public int getOccurrenceCount(String categoryName, int termId) {
+		return counts.categoryUnigrams.get(categoryName).get(termId);
+	}
+	
+	/**
+	 * Number of training articles the term occurs in, 0 for terms that are unknown to the model.
+	 */
+	public int getDocumentFrequency(int termId) {
+		int[] documentFrequency = counts.documentFrequency;
+		return termId >= 0 && termId < documentFrequency.length ? documentFrequency[termId] : 0;
 	}
 
 	public long getNumArticles() {
-		return numArticles;
+		return counts.numArticles;
 	}
 
 	public Long getNumArticlesPerCategory(String categoryName) {
-		return numArticlesPerCategory.get(categoryName);
+		return counts.numArticlesPerCategory.get(categoryName);
 	}
 	
 }
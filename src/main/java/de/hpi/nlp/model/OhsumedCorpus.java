@@ -1,8 +1,8 @@
 package de.hpi.nlp.model;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -16,7 +16,7 @@ public class OhsumedCorpus implements Iterable<OhsumedArticle> {
 		return tokensPerCategory;
 	}
 
-	private final Set<String> vocabulary;
+	private final BitSet vocabulary; // term ids that occur in the corpus
 	private long numArticles = 0;
 	private long numSentences = 0;
 	private long numTokens = 0;
@@ -24,18 +24,12 @@ public class OhsumedCorpus implements Iterable<OhsumedArticle> {
 	public OhsumedCorpus() {
 		articlesPerCategory = new HashMap<>();
 		tokensPerCategory = new HashMap<>();
-		vocabulary =  new HashSet<String>();
+		vocabulary =  new BitSet();
 	}
 	
 	public void addArticle(OhsumedArticle a) {
 		String categoryName = a.getCategory();
 		
-		// count number of tokens appearing in this article
-		if (!tokensPerCategory.containsKey(categoryName)) {
-			tokensPerCategory.put(categoryName, 0);
-		}
-		Integer numTokens = tokensPerCategory.get(categoryName);
-		
 		// get respective class/category to add articles to
 		if (!articlesPerCategory.containsKey(categoryName)) {
 			articlesPerCategory.put(categoryName, new ArrayList<OhsumedArticle>());
@@ -44,16 +38,46 @@ public class OhsumedCorpus implements Iterable<OhsumedArticle> {
 		
 		// add articles to the selected class
 		articles.add(a);
+		int articleTokens = 0;
 		for(Sentence s : a) {
 			numSentences++;
-			for(Token token : s) {
-				vocabulary.add(token.getText());
-				numTokens++;
+			int[] termIds = s.getTermIds();
+			for(int i = 0; i < s.getNumTokens(); i++) {
+				vocabulary.set(termIds[i]);
 			}
+			articleTokens += s.getNumTokens();
 		}
+		
+		// count number of tokens appearing in this article
+		Integer tokensInCategory = tokensPerCategory.get(categoryName);
+		tokensPerCategory.put(categoryName, (tokensInCategory == null ? 0 : tokensInCategory) + articleTokens);
+		numTokens += articleTokens;
 		numArticles++;
 	}
 	
+	/**
+	 * Appends all articles of another corpus, keeping their order. Used to combine
+	 * partial corpora that were parsed independently, e.g. by several threads.
+	 * Neither corpus may be modified concurrently while merging.
+	 */
+	public void addAll(OhsumedCorpus other) {
+		for(Map.Entry<String, ArrayList<OhsumedArticle>> entry : other.articlesPerCategory.entrySet()) {
+			String categoryName = entry.getKey();
+			if (!articlesPerCategory.containsKey(categoryName)) {
+				articlesPerCategory.put(categoryName, new ArrayList<OhsumedArticle>());
+			}
+			articlesPerCategory.get(categoryName).addAll(entry.getValue());
+			
+			Integer tokensInCategory = tokensPerCategory.get(categoryName);
+			tokensPerCategory.put(categoryName, (tokensInCategory == null ? 0 : tokensInCategory) 
+					+ other.tokensPerCategory.get(categoryName));
+		}
+		vocabulary.or(other.vocabulary);
+		numArticles += other.numArticles;
+		numSentences += other.numSentences;
+		numTokens += other.numTokens;
+	}
+	
 	public long getNumTokens() {
 		return numTokens;
 	}
@@ -71,7 +95,7 @@ public class OhsumedCorpus implements Iterable<OhsumedArticle> {
 	}
 	
 	public int getVocabularySize() {
-		return vocabulary.size();
+		return vocabulary.cardinality();
 	}
 	
 	public int getNumCategories() {
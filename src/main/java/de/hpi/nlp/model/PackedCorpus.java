@@ -0,0 +1,266 @@
+package de.hpi.nlp.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable corpus in a columnar layout: the term ids of all tokens in one int array, 
+ * sentences and articles as offsets into it and the category of each article as index.
+ * Per token this is 4 bytes instead of the Sentence, OhsumedArticle and ArrayList objects 
+ * of an OhsumedCorpus, and a pass over the corpus is a sequential scan of the arrays.
+ * Iterating creates OhsumedArticle views on the fly, so everything that reads an 
+ * OhsumedCorpus can read a PackedCorpus as well.
+ */
+public class PackedCorpus implements Iterable<OhsumedArticle> {
+	private final String[] categories;
+	private final int[] articleCategories;
+	// sentences of article a are articleOffsets[a] ... articleOffsets[a + 1] - 1
+	private final int[] articleOffsets;
+	// term ids of sentence s are termIds[sentenceOffsets[s]] ... termIds[sentenceOffsets[s + 1] - 1]
+	private final int[] sentenceOffsets;
+	private final int[] termIds;
+	private final String[] titles;
+	
+	public PackedCorpus(String[] categories, int[] articleCategories, int[] articleOffsets, 
+			int[] sentenceOffsets, int[] termIds, String[] titles) {
+		this.categories = categories;
+		this.articleCategories = articleCategories;
+		this.articleOffsets = articleOffsets;
+		this.sentenceOffsets = sentenceOffsets;
+		this.termIds = termIds;
+		this.titles = titles;
+	}
+	
+	/**
+	 * Packs the articles of the corpus, grouped by category in the order of corpus.getCategories().
+	 */
+	public static PackedCorpus of(OhsumedCorpus corpus) {
+		Builder builder = new Builder();
+		for(String categoryName : corpus.getCategories()) {
+			builder.categoryIndex(categoryName);
+			Iterator<OhsumedArticle> it = corpus.getArticlesOfCategory(categoryName);
+			while (it.hasNext()) {
+				builder.addArticle(it.next());
+			}
+		}
+		return builder.build();
+	}
+	
+	/**
+	 * Appends the corpora in the given order. Categories are numbered in order of their first appearance.
+	 */
+	public static PackedCorpus concat(List<PackedCorpus> parts) {
+		Builder builder = new Builder();
+		for(PackedCorpus part : parts) {
+			int[] categoryMapping = new int[part.categories.length];
+			for(int category = 0; category < categoryMapping.length; category++) {
+				categoryMapping[category] = builder.categoryIndex(part.categories[category]);
+			}
+			for(int article = 0; article < part.getNumArticles(); article++) {
+				builder.beginArticle(categoryMapping[part.articleCategories[article]], part.titles[article]);
+				for(int sentence = part.articleOffsets[article]; sentence < part.articleOffsets[article + 1]; sentence++) {
+					int from = part.sentenceOffsets[sentence];
+					builder.addSentence(part.termIds, from, part.sentenceOffsets[sentence + 1] - from);
+				}
+			}
+		}
+		return builder.build();
+	}
+	
+	public int getNumArticles() {
+		return articleCategories.length;
+	}
+	
+	public int getNumSentences() {
+		return sentenceOffsets.length - 1;
+	}
+	
+	public long getNumTokens() {
+		return termIds.length;
+	}
+	
+	public int getNumCategories() {
+		return categories.length;
+	}
+	
+	public String getCategory(int category) {
+		return categories[category];
+	}
+	
+	/**
+	 * Category names, index i is category i.
+	 */
+	public List<String> getCategories() {
+		return Collections.unmodifiableList(Arrays.asList(categories));
+	}
+	
+	public long getNumArticlesPerCategory(String categoryName) {
+		int category = Arrays.asList(categories).indexOf(categoryName);
+		long numArticles = 0;
+		for(int articleCategory : articleCategories) {
+			if (articleCategory == category) {
+				numArticles++;
+			}
+		}
+		return numArticles;
+	}
+	
+	public Map<String, Integer> getTokensPerCategory() {
+		int[] tokens = new int[categories.length];
+		for(int article = 0; article < articleCategories.length; article++) {
+			tokens[articleCategories[article]] += 
+					sentenceOffsets[articleOffsets[article + 1]] - sentenceOffsets[articleOffsets[article]];
+		}
+		Map<String, Integer> tokensPerCategory = new HashMap<>();
+		for(int category = 0; category < categories.length; category++) {
+			tokensPerCategory.put(categories[category], tokens[category]);
+		}
+		return tokensPerCategory;
+	}
+	
+	/**
+	 * The columns, which must not be modified, see the field comments for the layout.
+	 */
+	public int[] getArticleCategories() {
+		return articleCategories;
+	}
+	
+	public int[] getArticleOffsets() {
+		return articleOffsets;
+	}
+	
+	public int[] getSentenceOffsets() {
+		return sentenceOffsets;
+	}
+	
+	public int[] getTermIds() {
+		return termIds;
+	}
+	
+	public String getTitle(int article) {
+		return titles[article];
+	}
+	
+	/**
+	 * Creates an OhsumedArticle with copies of the sentences of the article.
+	 */
+	public OhsumedArticle getArticle(int article) {
+		OhsumedArticle view = new OhsumedArticle(categories[articleCategories[article]]);
+		view.setTitle(titles[article]);
+		for(int sentence = articleOffsets[article]; sentence < articleOffsets[article + 1]; sentence++) {
+			view.addSentence(new Sentence(Arrays.copyOfRange(termIds, sentenceOffsets[sentence], sentenceOffsets[sentence + 1])));
+		}
+		return view;
+	}
+	
+	/**
+	 * Articles in corpus order.
+	 */
+	@Override
+	public Iterator<OhsumedArticle> iterator() {
+		return new Iterator<OhsumedArticle>() {
+			private int article = 0;
+			
+			@Override
+			public boolean hasNext() {
+				return article < articleCategories.length;
+			}
+			
+			@Override
+			public OhsumedArticle next() {
+				if (article >= articleCategories.length) {
+					throw new NoSuchElementException();
+				}
+				return getArticle(article++);
+			}
+			
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	/**
+	 * Approximate heap size of the columns in bytes, titles not included.
+	 */
+	public long sizeInBytes() {
+		return 4L * (articleCategories.length + articleOffsets.length + sentenceOffsets.length + termIds.length);
+	}
+	
+	/**
+	 * Appends articles one after another, e.g. while parsing.
+	 */
+	public static class Builder {
+		private final List<String> categories = new ArrayList<>();
+		private final Map<String, Integer> categoryIndex = new HashMap<>();
+		private int[] articleCategories = new int[64];
+		private int[] articleOffsets = new int[65];
+		private int[] sentenceOffsets = new int[256];
+		private int[] termIds = new int[4096];
+		private String[] titles = new String[64];
+		private int numArticles = 0;
+		private int numSentences = 0;
+		private int numTokens = 0;
+		
+		/**
+		 * Index of the category, which is added if it is new.
+		 */
+		int categoryIndex(String categoryName) {
+			Integer category = categoryIndex.get(categoryName);
+			if (category == null) {
+				category = categories.size();
+				categories.add(categoryName);
+				categoryIndex.put(categoryName, category);
+			}
+			return category;
+		}
+		
+		public Builder addArticle(OhsumedArticle article) {
+			beginArticle(categoryIndex(article.getCategory()), article.getTitle());
+			for(Sentence sentence : article) {
+				addSentence(sentence.getTermIds(), 0, sentence.getNumTokens());
+			}
+			return this;
+		}
+		
+		private void beginArticle(int category, String title) {
+			if (numArticles == articleCategories.length) {
+				articleCategories = Arrays.copyOf(articleCategories, numArticles * 2);
+				articleOffsets = Arrays.copyOf(articleOffsets, numArticles * 2 + 1);
+				titles = Arrays.copyOf(titles, numArticles * 2);
+			}
+			articleCategories[numArticles] = category;
+			titles[numArticles] = title;
+			numArticles++;
+			articleOffsets[numArticles] = numSentences;
+		}
+		
+		private void addSentence(int[] sentenceTermIds, int from, int length) {
+			if (numSentences + 1 == sentenceOffsets.length) {
+				sentenceOffsets = Arrays.copyOf(sentenceOffsets, sentenceOffsets.length * 2);
+			}
+			if (numTokens + length > termIds.length) {
+				termIds = Arrays.copyOf(termIds, Math.max(numTokens + length, termIds.length * 2));
+			}
+			System.arraycopy(sentenceTermIds, from, termIds, numTokens, length);
+			numTokens += length;
+			numSentences++;
+			sentenceOffsets[numSentences] = numTokens;
+			articleOffsets[numArticles] = numSentences;
+		}
+		
+		public PackedCorpus build() {
+			return new PackedCorpus(categories.toArray(new String[categories.size()]), 
+					Arrays.copyOf(articleCategories, numArticles), Arrays.copyOf(articleOffsets, numArticles + 1), 
+					Arrays.copyOf(sentenceOffsets, numSentences + 1), Arrays.copyOf(termIds, numTokens), 
+					Arrays.copyOf(titles, numArticles));
+		}
+	}
+}
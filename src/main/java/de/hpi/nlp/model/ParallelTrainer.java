@@ -0,0 +1,111 @@
+package de.hpi.nlp.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Trains the models on several threads. The corpus is split into shards of consecutive articles, 
+ * every worker counts its shard into tables of its own without any locking, and the partial 
+ * models are merged pairwise on the way back up the fork/join tree.
+ * 
+ * The same merge combines models trained on different machines, whose counts have been 
+ * written with CountsFile (see ModelTool).
+ */
+public class ParallelTrainer {
+	/**
+	 * Number of articles a worker counts on its own before the work is not split any further.
+	 */
+	private static final int MIN_ARTICLES_PER_TASK = 1024;
+	
+	/**
+	 * The same model as new NaiveBayesModel(corpus, features), counted with the given number of threads.
+	 */
+	public static NaiveBayesModel trainNaiveBayes(PackedCorpus corpus, BitSet features, int numThreads) {
+		NaiveBayesTask task = new NaiveBayesTask(corpus, features, 0, corpus.getNumArticles(), 
+				articlesPerTask(corpus, numThreads));
+		return invoke(task, numThreads);
+	}
+	
+	/**
+	 * The same model as new BayesModel(corpus), counted with the given number of threads.
+	 */
+	public static BayesModel trainBayes(PackedCorpus corpus, int numThreads) {
+		BayesTask task = new BayesTask(corpus, 0, corpus.getNumArticles(), articlesPerTask(corpus, numThreads));
+		return invoke(task, numThreads);
+	}
+	
+	private static int articlesPerTask(PackedCorpus corpus, int numThreads) {
+		return Math.max(MIN_ARTICLES_PER_TASK, corpus.getNumArticles() / Math.max(1, numThreads));
+	}
+	
+	private static <T> T invoke(RecursiveTask<T> task, int numThreads) {
+		if (numThreads <= 1) {
+			return task.invoke();
+		}
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try {
+			return pool.invoke(task);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	private static class NaiveBayesTask extends RecursiveTask<NaiveBayesModel> {
+		private static final long serialVersionUID = 1L;
+		private final PackedCorpus corpus;
+		private final BitSet features;
+		private final int from;
+		private final int to;
+		private final int articlesPerTask;
+		
+		NaiveBayesTask(PackedCorpus corpus, BitSet features, int from, int to, int articlesPerTask) {
+			this.corpus = corpus;
+			this.features = features;
+			this.from = from;
+			this.to = to;
+			this.articlesPerTask = articlesPerTask;
+		}
+		
+		@Override
+		protected NaiveBayesModel compute() {
+			if (to - from <= articlesPerTask) {
+				return new NaiveBayesModel(corpus, features, from, to);
+			}
+			int middle = (from + to) >>> 1;
+			NaiveBayesTask left = new NaiveBayesTask(corpus, features, from, middle, articlesPerTask);
+			left.fork();
+			NaiveBayesModel right = new NaiveBayesTask(corpus, features, middle, to, articlesPerTask).compute();
+			return NaiveBayesModel.merge(Arrays.asList(left.join(), right));
+		}
+	}
+	
+	private static class BayesTask extends RecursiveTask<BayesModel> {
+		private static final long serialVersionUID = 1L;
+		private final PackedCorpus corpus;
+		private final int from;
+		private final int to;
+		private final int articlesPerTask;
+		
+		BayesTask(PackedCorpus corpus, int from, int to, int articlesPerTask) {
+			this.corpus = corpus;
+			this.from = from;
+			this.to = to;
+			this.articlesPerTask = articlesPerTask;
+		}
+		
+		@Override
+		protected BayesModel compute() {
+			if (to - from <= articlesPerTask) {
+				return new BayesModel(corpus, from, to);
+			}
+			int middle = (from + to) >>> 1;
+			BayesTask left = new BayesTask(corpus, from, middle, articlesPerTask);
+			left.fork();
+			BayesModel right = new BayesTask(corpus, middle, to, articlesPerTask).compute();
+			return BayesModel.merge(Arrays.asList(left.join(), right));
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package de.hpi.nlp.model;
+
+import java.util.Locale;
+
+/**
+ * One category of a multi label classification, with its log score and its posterior probability, 
+ * if that is known.
+ */
+public class RankedCategory {
+	private final String category;
+	private final double logScore;
+	private final double posterior;
+	
+	public RankedCategory(String category, double logScore, double posterior) {
+		this.category = category;
+		this.logScore = logScore;
+		this.posterior = posterior;
+	}
+	
+	/**
+	 * A category ranked by its log score only, without a posterior.
+	 */
+	public RankedCategory(String category, double logScore) {
+		this(category, logScore, Double.NaN);
+	}
+	
+	public String getCategory() {
+		return category;
+	}
+	
+	public double getLogScore() {
+		return logScore;
+	}
+	
+	/**
+	 * P(category | article), NaN if the ranking has no posteriors (see MultiLabelClassifier.topKPruned).
+	 */
+	public double getPosterior() {
+		return posterior;
+	}
+	
+	@Override
+	public String toString() {
+		if (Double.isNaN(posterior)) {
+			return String.format(Locale.ROOT, "%s (%.4f)", category, logScore);
+		}
+		return String.format(Locale.ROOT, "%s=%.4f (%.4f)", category, posterior, logScore);
+	}
+}
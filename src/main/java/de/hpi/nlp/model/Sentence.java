@@ -1,23 +1,76 @@
 package de.hpi.nlp.model;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
+/**
+ * A sentence is stored as the term ids of its tokens (see TermDictionary).
+ */
 public class Sentence implements Iterable<Token>{
-	private final ArrayList<Token> tokens;
+	private int[] termIds;
 	private int numTokens = 0;
 	
 	public Sentence() {
-		tokens = new ArrayList<Token>();
+		termIds = new int[8];
+	}
+	
+	public Sentence(int[] termIds) {
+		this.termIds = termIds;
+		this.numTokens = termIds.length;
 	}
 	
 	public void addToken(Token token) {
-		tokens.add(token);
-		numTokens++;
+		addTermId(token.getTermId());
+	}
+	
+	public void addTermId(int termId) {
+		if (numTokens == termIds.length) {
+			termIds = Arrays.copyOf(termIds, Math.max(8, numTokens * 2));
+		}
+		termIds[numTokens++] = termId;
+	}
+	
+	public int getTermId(int index) {
+		if (index >= numTokens) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + numTokens);
+		}
+		return termIds[index];
+	}
+	
+	/**
+	 * Returns the backing array, which may be longer than the sentence. 
+	 * Only the first getNumTokens() entries are valid. Must not be modified.
+	 */
+	public int[] getTermIds() {
+		return termIds;
 	}
 
+	/**
+	 * Creates a Token for every term id on the fly, hot loops should use getTermIds() instead.
+	 */
 	public Iterator<Token> iterator() {
-		return tokens.iterator();
+		return new Iterator<Token>() {
+			private int index = 0;
+			
+			@Override
+			public boolean hasNext() {
+				return index < numTokens;
+			}
+
+			@Override
+			public Token next() {
+				if (index >= numTokens) {
+					throw new NoSuchElementException();
+				}
+				return new Token(termIds[index++]);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
 	}
 	
 	public int getNumTokens() {
@@ -27,7 +80,7 @@ public class Sentence implements Iterable<Token>{
 	// mainly for test purposes
 	public String toString() {
 		String string = "";
-		for(Token t : tokens) {
+		for(Token t : this) {
 			string += t.getText() + " ";
 		}
 		return string;
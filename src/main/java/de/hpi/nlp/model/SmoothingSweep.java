@@ -0,0 +1,396 @@
+package de.hpi.nlp.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import de.hpi.nlp.util.IntIntHashMap;
+import de.hpi.nlp.util.LongIntHashMap;
+
+/**
+ * Evaluates a whole grid of smoothing parameters against an annotated test corpus in one 
+ * parallel pass, without compiling or retraining a model per value. The counts of the model 
+ * are the sufficient statistics: per category the number of tokens, the vocabulary size and 
+ * the counts of the terms and bigrams of an article. They are looked up once per article, 
+ * term (or bigram) and category, the scores of all parameter values are then updated in one 
+ * inner loop over the grid. The same parameter as for the compiled models (alpha 1, add one 
+ * smoothing) gives the same classification, up to rounding.
+ */
+public class SmoothingSweep {
+	/**
+	 * Number of articles a worker classifies on its own before the work is not split any further.
+	 */
+	private static final int MIN_ARTICLES_PER_TASK = 64;
+	// log(count + parameter) is looked up in a table for counts below this
+	private static final int LOG_TABLE_COUNTS = 64;
+	// stands in for unknown terms (id -1) in the count tables of an article, which take non-negative keys only
+	private static final int UNKNOWN_TERM = Integer.MAX_VALUE;
+	
+	/**
+	 * Naive bayes with Lidstone smoothing, P(term | category) = (count + alpha) / (tokens + alpha * vocabulary),
+	 * one EvaluationResult per alpha, which all have to be positive.
+	 */
+	public static EvaluationResult[] lidstoneNaiveBayes(NaiveBayesModel model, Iterable<OhsumedArticle> test, 
+			double[] alphas, int numThreads) {
+		checkParameters(alphas, false);
+		return sweep(new NaiveBayesStatistics(model.snapshot(), alphas), test, numThreads);
+	}
+	
+	/**
+	 * Bigram bayes with Lidstone smoothing, P(term | previous) = (bigram count + alpha) / 
+	 * (count of previous + alpha * vocabulary), one EvaluationResult per alpha, which all have to be positive.
+	 */
+	public static EvaluationResult[] lidstoneBayes(BayesModel model, Iterable<OhsumedArticle> test, 
+			double[] alphas, int numThreads) {
+		checkParameters(alphas, false);
+		return sweep(new BayesStatistics(model, alphas, false), test, numThreads);
+	}
+	
+	/**
+	 * Bigram bayes interpolated with the add one smoothed unigram model of the category, 
+	 * P(term | previous) = lambda * bigram count / count of previous + (1 - lambda) * P(term), 
+	 * one EvaluationResult per lambda, which all have to be at least 0 and less than 1.
+	 */
+	public static EvaluationResult[] interpolatedBayes(BayesModel model, Iterable<OhsumedArticle> test, 
+			double[] lambdas, int numThreads) {
+		checkParameters(lambdas, true);
+		return sweep(new BayesStatistics(model, lambdas, true), test, numThreads);
+	}
+	
+	private static void checkParameters(double[] parameters, boolean interpolation) {
+		for(double parameter : parameters) {
+			if (interpolation ? parameter < 0 || parameter >= 1 : parameter <= 0) {
+				throw new IllegalArgumentException("Smoothing parameter out of range: " + parameter);
+			}
+		}
+	}
+	
+	/**
+	 * The counts of a model, which score an article for all parameter values at once.
+	 */
+	private static abstract class Statistics {
+		final String[] categories;
+		final double[] parameters;
+		final double[] logPriors;
+		
+		Statistics(String[] categories, double[] parameters, double[] logPriors) {
+			this.categories = categories;
+			this.parameters = parameters;
+			this.logPriors = logPriors;
+		}
+		
+		/**
+		 * Writes the score of every category for every parameter into scores, at category * parameters.length + parameter.
+		 */
+		abstract void score(OhsumedArticle article, double[] scores);
+		
+		/**
+		 * log(count + parameters[k]) for all k, from the table for small counts.
+		 */
+		static double[] logTable(double[] parameters) {
+			double[] table = new double[LOG_TABLE_COUNTS * parameters.length];
+			for(int count = 0; count < LOG_TABLE_COUNTS; count++) {
+				for(int k = 0; k < parameters.length; k++) {
+					table[count * parameters.length + k] = Math.log(count + parameters[k]);
+				}
+			}
+			return table;
+		}
+	}
+	
+	private static class NaiveBayesStatistics extends Statistics {
+		private final IntIntHashMap[] unigrams;
+		private final BitSet features;
+		// log(tokens + alpha * vocabulary) per category and alpha
+		private final double[] logDenominators;
+		private final double[] logCountPlusAlpha;
+		
+		NaiveBayesStatistics(NaiveBayesModel model, double[] alphas) {
+			super(model.getCategoryUnigrams().keySet().toArray(new String[0]), alphas, 
+					new double[model.getCategoryUnigrams().size()]);
+			int numCategories = categories.length;
+			this.unigrams = new IntIntHashMap[numCategories];
+			this.features = model.getFeatures();
+			this.logDenominators = new double[numCategories * alphas.length];
+			for(int category = 0; category < numCategories; category++) {
+				String categoryName = categories[category];
+				unigrams[category] = model.getCategoryUnigrams().get(categoryName);
+				int numWordsInClass = model.getTokensPerCategory().get(categoryName);
+				int vocabSize = unigrams[category].size();
+				for(int k = 0; k < alphas.length; k++) {
+					logDenominators[category * alphas.length + k] = Math.log(numWordsInClass + alphas[k] * vocabSize);
+				}
+				logPriors[category] = Math.log((double) model.getNumArticlesPerCategory(categoryName) / model.getNumArticles());
+			}
+			this.logCountPlusAlpha = logTable(alphas);
+		}
+		
+		@Override
+		void score(OhsumedArticle article, double[] scores) {
+			// term frequencies of the article, counted once for all categories and alphas
+			IntIntHashMap termFrequency = new IntIntHashMap();
+			int numTokens = 0;
+			for(Sentence s : article) {
+				int[] termIds = s.getTermIds();
+				for(int i = 0; i < s.getNumTokens(); i++) {
+					// terms that are not features do not count at all
+					if (features != null && (termIds[i] < 0 || !features.get(termIds[i]))) {
+						continue;
+					}
+					termFrequency.addTo(termIdOf(termIds[i]), 1);
+					numTokens++;
+				}
+			}
+			
+			int numParameters = parameters.length;
+			for(int category = 0; category < categories.length; category++) {
+				int base = category * numParameters;
+				for(int k = 0; k < numParameters; k++) {
+					scores[base + k] = logPriors[category] - numTokens * logDenominators[base + k];
+				}
+				for(int slot = 0; slot < termFrequency.capacity(); slot++) {
+					if (!termFrequency.isOccupied(slot)) {
+						continue;
+					}
+					int tf = termFrequency.valueAt(slot);
+					int count = unigrams[category].get(termFrequency.keyAt(slot));
+					if (count < LOG_TABLE_COUNTS) {
+						int row = count * numParameters;
+						for(int k = 0; k < numParameters; k++) {
+							scores[base + k] += tf * logCountPlusAlpha[row + k];
+						}
+					} else {
+						for(int k = 0; k < numParameters; k++) {
+							scores[base + k] += tf * Math.log(count + parameters[k]);
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	private static class BayesStatistics extends Statistics {
+		private final boolean interpolation;
+		private final LongIntHashMap[] bigrams;
+		private final IntIntHashMap[] termFrequencies;
+		private final int[] vocabularySizes;
+		// sum of all term frequencies per category, for the unigram model of the interpolation
+		private final long[] totalTermFrequencies;
+		private final double[] logCountPlusAlpha;
+		
+		BayesStatistics(BayesModel model, double[] parameters, boolean interpolation) {
+			super(model.getCategoryBigrams().keySet().toArray(new String[0]), parameters, 
+					new double[model.getCategoryBigrams().size()]);
+			this.interpolation = interpolation;
+			int numCategories = categories.length;
+			this.bigrams = new LongIntHashMap[numCategories];
+			this.termFrequencies = new IntIntHashMap[numCategories];
+			this.vocabularySizes = new int[numCategories];
+			this.totalTermFrequencies = new long[numCategories];
+			for(int category = 0; category < numCategories; category++) {
+				String categoryName = categories[category];
+				bigrams[category] = model.getCategoryBigrams().get(categoryName);
+				termFrequencies[category] = model.getCategoryTermFrequency().get(categoryName);
+				vocabularySizes[category] = termFrequencies[category].size();
+				for(int slot = 0; slot < termFrequencies[category].capacity(); slot++) {
+					if (termFrequencies[category].isOccupied(slot)) {
+						totalTermFrequencies[category] += termFrequencies[category].valueAt(slot);
+					}
+				}
+				logPriors[category] = Math.log((double) model.getNumArticlesPerCategory(categoryName) / model.getNumArticles());
+			}
+			this.logCountPlusAlpha = interpolation ? null : logTable(parameters);
+		}
+		
+		@Override
+		void score(OhsumedArticle article, double[] scores) {
+			// the first terms of the sentences and the bigrams of the article with their multiplicity
+			IntIntHashMap firstTerms = new IntIntHashMap();
+			LongIntHashMap articleBigrams = new LongIntHashMap();
+			for(Sentence s : article) {
+				int[] termIds = s.getTermIds();
+				for(int i = 0; i < s.getNumTokens(); i++) {
+					int currToken = termIdOf(termIds[i]);
+					if (i == 0) {
+						firstTerms.addTo(currToken, 1);
+					} else {
+						articleBigrams.addTo(LongIntHashMap.key(termIdOf(termIds[i - 1]), currToken), 1);
+					}
+				}
+			}
+			
+			int numParameters = parameters.length;
+			double[] logDenominators = new double[numParameters];
+			for(int category = 0; category < categories.length; category++) {
+				int base = category * numParameters;
+				IntIntHashMap termFrequency = termFrequencies[category];
+				int vocabSize = vocabularySizes[category];
+				for(int k = 0; k < numParameters; k++) {
+					scores[base + k] = logPriors[category];
+				}
+				
+				// first tokens: P(term | <s>), add one smoothed for the interpolation
+				int beginnings = termFrequency.get(BayesModel.BEGINNING_OF_SENTENCE_ID);
+				for(int k = 0; k < numParameters; k++) {
+					logDenominators[k] = Math.log(beginnings + alpha(k) * vocabSize);
+				}
+				for(int slot = 0; slot < firstTerms.capacity(); slot++) {
+					if (firstTerms.isOccupied(slot)) {
+						int multiplicity = firstTerms.valueAt(slot);
+						int count = termFrequency.get(firstTerms.keyAt(slot));
+						for(int k = 0; k < numParameters; k++) {
+							scores[base + k] += multiplicity * (logCountPlusAlpha(count, k) - logDenominators[k]);
+						}
+					}
+				}
+				
+				for(int slot = 0; slot < articleBigrams.capacity(); slot++) {
+					if (!articleBigrams.isOccupied(slot)) {
+						continue;
+					}
+					long key = articleBigrams.keyAt(slot);
+					int multiplicity = articleBigrams.valueAt(slot);
+					int prevToken = (int) (key >>> 32);
+					int currToken = (int) key;
+					int prevCount = termFrequency.get(prevToken);
+					int bigramCount = prevCount == 0 ? 0 : bigrams[category].get(key);
+					if (interpolation) {
+						double bigramProbability = prevCount == 0 ? 0.0 : (double) bigramCount / prevCount;
+						double unigramProbability = (termFrequency.get(currToken) + 1.0) / (totalTermFrequencies[category] + vocabSize);
+						for(int k = 0; k < numParameters; k++) {
+							double lambda = parameters[k];
+							scores[base + k] += multiplicity * Math.log(lambda * bigramProbability + (1 - lambda) * unigramProbability);
+						}
+					} else {
+						for(int k = 0; k < numParameters; k++) {
+							scores[base + k] += multiplicity * (logCountPlusAlpha(bigramCount, k) 
+									- Math.log(prevCount + parameters[k] * vocabSize));
+						}
+					}
+				}
+			}
+		}
+		
+		/**
+		 * The alpha of the first tokens, which are add one smoothed for the interpolation.
+		 */
+		private double alpha(int k) {
+			return interpolation ? 1.0 : parameters[k];
+		}
+		
+		private double logCountPlusAlpha(int count, int k) {
+			if (interpolation) {
+				return Math.log(count + 1.0);
+			}
+			return count < LOG_TABLE_COUNTS ? logCountPlusAlpha[count * parameters.length + k] : Math.log(count + parameters[k]);
+		}
+	}
+	
+	/**
+	 * Unknown terms have no counts in the model, the same as any term the model has not seen.
+	 */
+	private static int termIdOf(int termId) {
+		return termId < 0 ? UNKNOWN_TERM : termId;
+	}
+	
+	private static EvaluationResult[] sweep(Statistics statistics, Iterable<OhsumedArticle> test, int numThreads) {
+		List<OhsumedArticle> articles = new ArrayList<>();
+		TreeSet<String> unknownCategories = new TreeSet<>();
+		List<String> modelCategories = Arrays.asList(statistics.categories);
+		for(OhsumedArticle article : test) {
+			articles.add(article);
+			if (!modelCategories.contains(article.getCategory())) {
+				unknownCategories.add(article.getCategory());
+			}
+		}
+		// the categories of the model keep their index, unknown ones are appended
+		List<String> categoryList = new ArrayList<>(modelCategories);
+		categoryList.addAll(unknownCategories);
+		String[] categories = categoryList.toArray(new String[categoryList.size()]);
+		
+		SweepTask task = new SweepTask(statistics, articles, categories, 0, articles.size());
+		long[][][] confusionMatrices;
+		if (numThreads <= 1) {
+			confusionMatrices = task.compute();
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(numThreads);
+			try {
+				confusionMatrices = pool.invoke(task);
+			} finally {
+				pool.shutdown();
+			}
+		}
+		EvaluationResult[] results = new EvaluationResult[statistics.parameters.length];
+		for(int k = 0; k < results.length; k++) {
+			results[k] = new EvaluationResult(categories, confusionMatrices[k]);
+		}
+		return results;
+	}
+	
+	private static class SweepTask extends RecursiveTask<long[][][]> {
+		private static final long serialVersionUID = 1L;
+		private final Statistics statistics;
+		private final List<OhsumedArticle> articles;
+		private final String[] categories;
+		private final int from;
+		private final int to;
+		
+		SweepTask(Statistics statistics, List<OhsumedArticle> articles, String[] categories, int from, int to) {
+			this.statistics = statistics;
+			this.articles = articles;
+			this.categories = categories;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected long[][][] compute() {
+			if (to - from <= MIN_ARTICLES_PER_TASK) {
+				return classify();
+			}
+			int middle = (from + to) >>> 1;
+			SweepTask left = new SweepTask(statistics, articles, categories, from, middle);
+			left.fork();
+			long[][][] matrices = new SweepTask(statistics, articles, categories, middle, to).compute();
+			long[][][] leftMatrices = left.join();
+			for(int k = 0; k < matrices.length; k++) {
+				for(int correct = 0; correct < categories.length; correct++) {
+					for(int determined = 0; determined < categories.length; determined++) {
+						matrices[k][correct][determined] += leftMatrices[k][correct][determined];
+					}
+				}
+			}
+			return matrices;
+		}
+		
+		private long[][][] classify() {
+			int numParameters = statistics.parameters.length;
+			int numModelCategories = statistics.categories.length;
+			long[][][] matrices = new long[numParameters][categories.length][categories.length];
+			double[] scores = new double[numModelCategories * numParameters];
+			for(int i = from; i < to; i++) {
+				OhsumedArticle article = articles.get(i);
+				int correct = Arrays.asList(categories).indexOf(article.getCategory());
+				statistics.score(article, scores);
+				for(int k = 0; k < numParameters; k++) {
+					int bestCategory = -1;
+					double maxProbability = Double.NEGATIVE_INFINITY;
+					for(int category = 0; category < numModelCategories; category++) {
+						if (scores[category * numParameters + k] > maxProbability) {
+							maxProbability = scores[category * numParameters + k];
+							bestCategory = category;
+						}
+					}
+					if (bestCategory >= 0) {
+						matrices[k][correct][bestCategory]++;
+					}
+				}
+			}
+			return matrices;
+		}
+	}
+}
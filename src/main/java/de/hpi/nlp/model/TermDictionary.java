@@ -0,0 +1,80 @@
+package de.hpi.nlp.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps every (stemmed) term to a dense int id, starting at 0. Sentences store these ids 
+ * instead of strings, so each distinct term text is kept in memory only once and the models 
+ * can use the ids as array indices. Lookups and interning are thread-safe, ids never change.
+ */
+public class TermDictionary {
+	public static final int UNKNOWN_TERM = -1;
+	
+	private static final TermDictionary INSTANCE = new TermDictionary();
+	
+	private final ConcurrentHashMap<String, Integer> ids;
+	// reverse mapping id -> term, replaced when it has to grow
+	private volatile String[] terms;
+	private volatile int size = 0;
+	
+	public TermDictionary() {
+		this.ids = new ConcurrentHashMap<>();
+		this.terms = new String[1024];
+	}
+	
+	/**
+	 * The dictionary shared by the parser, the models and the classifiers.
+	 */
+	public static TermDictionary getInstance() {
+		return INSTANCE;
+	}
+	
+	/**
+	 * Returns the id of the term, assigning the next free id if it has not been seen yet.
+	 */
+	public int intern(String term) {
+		Integer id = ids.get(term);
+		if (id != null) {
+			return id;
+		}
+		synchronized (this) {
+			id = ids.get(term);
+			if (id == null) {
+				id = size;
+				String[] currentTerms = terms;
+				if (id == currentTerms.length) {
+					currentTerms = Arrays.copyOf(currentTerms, currentTerms.length * 2);
+				}
+				// publish the term before its id, so getTerm works for every id handed out
+				currentTerms[id] = term;
+				terms = currentTerms;
+				size = id + 1;
+				ids.put(term, id);
+			}
+			return id;
+		}
+	}
+	
+	/**
+	 * Returns the id of the term or UNKNOWN_TERM, without adding it.
+	 */
+	public int getId(String term) {
+		Integer id = ids.get(term);
+		return id == null ? UNKNOWN_TERM : id;
+	}
+	
+	public String getTerm(int id) {
+		if (id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("Unknown term id: " + id);
+		}
+		return terms[id];
+	}
+	
+	/**
+	 * Number of terms, all ids are smaller than this.
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -1,18 +1,26 @@
 package de.hpi.nlp.model;
 
 public class Token {
-	private String text;
+	private int termId; // see TermDictionary
 	
 	public Token(String text) {
-		this.text = text;
+		this.termId = TermDictionary.getInstance().intern(text);
+	}
+	
+	public Token(int termId) {
+		this.termId = termId;
 	}
 
 	public String getText() {
-		return text;
+		return TermDictionary.getInstance().getTerm(termId);
 	}
 
 	public void setText(String text) {
-		this.text = text;
+		this.termId = TermDictionary.getInstance().intern(text);
+	}
+	
+	public int getTermId() {
+		return termId;
 	}
 
 }
@@ -0,0 +1,232 @@
+package de.hpi.nlp.preparation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.TreeSet;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import de.hpi.nlp.model.PackedCorpus;
+import de.hpi.nlp.model.TermDictionary;
+
+/**
+ * Binary file of a preprocessed corpus, so later runs do not have to tokenize, filter and stem 
+ * the source files again (see OhsumedParser.parseCached). Every file carries the fingerprint of 
+ * its sources: the path, size and modification time of every source file, the stop word list 
+ * and the version of the preprocessing. A file with another fingerprint is stale and ignored.
+ * 
+ * Layout, little endian:
+ * - header: magic, format version, fingerprint, number of terms, categories and articles
+ * - the terms, i.e. the dictionary up to the largest term id of the corpus, the categories and 
+ *   the titles as length prefixed UTF-8 (length -1 for a missing title)
+ * - zero padding to a multiple of 8 bytes
+ * - the int columns of the PackedCorpus, each prefixed by its length
+ * The file is memory mapped; the columns are copied into the int arrays of the corpus with 
+ * one bulk get each, and only remapped if the term ids of this JVM turned out differently.
+ */
+public class CorpusCache {
+	private static final int MAGIC = 0x4350434F; // "OCPC"
+	public static final int VERSION = 1;
+	// has to be increased whenever tokenizing, stop word removal or stemming produce other terms
+	private static final int PREPROCESSING_VERSION = 1;
+	
+	/**
+	 * Fingerprint of the source files below root and of the preprocessing.
+	 */
+	public static String fingerprint(File root, List<File> files) {
+		Hasher hasher = Hashing.sha1().newHasher();
+		hasher.putInt(PREPROCESSING_VERSION);
+		for(String stopWord : new TreeSet<>(StopWordParser.getInstance().getStopWords())) {
+			hasher.putString(stopWord, StandardCharsets.UTF_8).putByte((byte) 0);
+		}
+		String rootPath = root.getAbsolutePath();
+		for(File file : files) {
+			String path = file.getAbsolutePath();
+			if (path.startsWith(rootPath)) {
+				path = path.substring(rootPath.length());
+			}
+			hasher.putString(path, StandardCharsets.UTF_8).putByte((byte) 0)
+					.putLong(file.length()).putLong(file.lastModified());
+		}
+		return hasher.hash().toString();
+	}
+	
+	/**
+	 * Loads the corpus, null if the file does not exist or has been written for other sources.
+	 */
+	public static PackedCorpus read(File cacheFile, String fingerprint) throws IOException {
+		if (!cacheFile.isFile()) {
+			return null;
+		}
+		MappedByteBuffer mapped;
+		try (RandomAccessFile raf = new RandomAccessFile(cacheFile, "r"); 
+				FileChannel channel = raf.getChannel()) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Corpus cache " + cacheFile + " is larger than 2GB");
+			}
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		ByteBuffer in = mapped.order(ByteOrder.LITTLE_ENDIAN);
+		
+		if (in.remaining() < 12 || in.getInt() != MAGIC || in.getInt() != VERSION) {
+			return null;
+		}
+		if (!fingerprint.equals(readString(in))) {
+			return null;
+		}
+		String[] terms = new String[in.getInt()];
+		String[] categories = new String[in.getInt()];
+		String[] titles = new String[in.getInt()];
+		for(int i = 0; i < terms.length; i++) {
+			terms[i] = readString(in);
+		}
+		for(int i = 0; i < categories.length; i++) {
+			categories[i] = readString(in);
+		}
+		for(int i = 0; i < titles.length; i++) {
+			titles[i] = readString(in);
+		}
+		align(in);
+		
+		int[] articleCategories = readInts(in);
+		int[] articleOffsets = readInts(in);
+		int[] sentenceOffsets = readInts(in);
+		int[] termIds = readInts(in);
+		
+		// the stored ids are those of the writing JVM, usually they are the same here
+		TermDictionary dictionary = TermDictionary.getInstance();
+		int[] ids = new int[terms.length];
+		boolean identity = true;
+		for(int term = 0; term < terms.length; term++) {
+			ids[term] = dictionary.intern(terms[term]);
+			identity &= ids[term] == term;
+		}
+		if (!identity) {
+			for(int i = 0; i < termIds.length; i++) {
+				termIds[i] = ids[termIds[i]];
+			}
+		}
+		return new PackedCorpus(categories, articleCategories, articleOffsets, sentenceOffsets, termIds, titles);
+	}
+	
+	/**
+	 * Writes to a temporary file first, which then replaces the cache file, so readers 
+	 * never see a partially written file.
+	 */
+	public static void write(PackedCorpus corpus, File cacheFile, String fingerprint) throws IOException {
+		int[] termIds = corpus.getTermIds();
+		int numTerms = 0;
+		for(int termId : termIds) {
+			numTerms = Math.max(numTerms, termId + 1);
+		}
+		TermDictionary dictionary = TermDictionary.getInstance();
+		
+		File tempFile = new File(cacheFile.getPath() + ".tmp");
+		try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw"); 
+				FileChannel channel = raf.getChannel()) {
+			raf.setLength(0);
+			ByteBuffer out = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			out.putInt(MAGIC).putInt(VERSION);
+			putString(channel, out, fingerprint);
+			out.putInt(numTerms).putInt(corpus.getNumCategories()).putInt(corpus.getNumArticles());
+			for(int term = 0; term < numTerms; term++) {
+				putString(channel, out, dictionary.getTerm(term));
+			}
+			for(int category = 0; category < corpus.getNumCategories(); category++) {
+				putString(channel, out, corpus.getCategory(category));
+			}
+			for(int article = 0; article < corpus.getNumArticles(); article++) {
+				putString(channel, out, corpus.getTitle(article));
+			}
+			putInts(channel, out, corpus.getArticleCategories());
+			putInts(channel, out, corpus.getArticleOffsets());
+			putInts(channel, out, corpus.getSentenceOffsets());
+			putInts(channel, out, termIds);
+			flush(channel, out);
+		}
+		Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	private static String readString(ByteBuffer in) {
+		int length = in.getInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	private static void align(ByteBuffer in) {
+		in.position((in.position() + 7) & ~7);
+	}
+	
+	private static int[] readInts(ByteBuffer in) {
+		int[] values = new int[(int) in.getLong()];
+		IntBuffer section = in.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		section.get(values);
+		in.position(in.position() + 4 * values.length);
+		align(in);
+		return values;
+	}
+	
+	/**
+	 * Writes out the buffer if fewer than the given number of bytes are left.
+	 */
+	private static void ensure(FileChannel channel, ByteBuffer out, int bytes) throws IOException {
+		if (out.remaining() < bytes) {
+			flush(channel, out);
+		}
+	}
+	
+	private static void flush(FileChannel channel, ByteBuffer out) throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		out.clear();
+	}
+	
+	private static void putString(FileChannel channel, ByteBuffer out, String value) throws IOException {
+		if (value == null) {
+			ensure(channel, out, 4);
+			out.putInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		ensure(channel, out, 4 + bytes.length);
+		if (out.remaining() < 4 + bytes.length) {
+			// larger than the whole buffer, written on its own
+			ByteBuffer large = ByteBuffer.allocate(4 + bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+			large.putInt(bytes.length).put(bytes);
+			flush(channel, large);
+			return;
+		}
+		out.putInt(bytes.length).put(bytes);
+	}
+	
+	private static void putInts(FileChannel channel, ByteBuffer out, int[] values) throws IOException {
+		// the columns start at multiples of 8 bytes
+		long position = channel.position() + out.position();
+		ensure(channel, out, 16);
+		for(long i = position; (i & 7) != 0; i++) {
+			out.put((byte) 0);
+		}
+		out.putLong(values.length);
+		for(int value : values) {
+			ensure(channel, out, 4);
+			out.putInt(value);
+		}
+	}
+}
@@ -1,89 +1,324 @@
 package de.hpi.nlp.preparation;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
-import org.tartarus.martin.Stemmer;
-
+import de.hpi.nlp.metrics.Counter;
+import de.hpi.nlp.metrics.Gauge;
+import de.hpi.nlp.metrics.Metrics;
+import de.hpi.nlp.metrics.Timer;
 import de.hpi.nlp.model.OhsumedArticle;
 import de.hpi.nlp.model.OhsumedCorpus;
+import de.hpi.nlp.model.PackedCorpus;
 import de.hpi.nlp.model.Sentence;
-import de.hpi.nlp.model.Token;
+import de.hpi.nlp.model.TermDictionary;
 
 public class OhsumedParser {
+	// tokenizers keep per thread state, so every parsing thread has its own
+	private static final ThreadLocal<Tokenizer> TOKENIZER = new ThreadLocal<Tokenizer>() {
+		@Override
+		protected Tokenizer initialValue() {
+			return new Tokenizer();
+		}
+	};
+	
+	/**
+	 * Minimum number of files a worker parses on its own before the work is not split any further.
+	 */
+	private static final int MIN_FILES_PER_TASK = 16;
+	
+	private static final Timer READ_TIMER = Metrics.timer("parse.read");
+	// tokenizing includes stemming, parse.stem (see StemCache) is the part of it spent on cache misses
+	private static final Timer TOKENIZE_AND_STEM_TIMER = Metrics.timer("parse.tokenizeAndStem");
+	private static final Counter ARTICLES = Metrics.counter("parse.articles");
+	private static final Counter SENTENCES = Metrics.counter("parse.sentences");
+	private static final Counter TOKENS = Metrics.counter("parse.tokens");
+	private static final Gauge DICTIONARY_SIZE = Metrics.gauge("dictionary.terms");
+	
 	public static OhsumedCorpus parse(File uri) throws IOException, URISyntaxException {
-		OhsumedCorpus corpus = new OhsumedCorpus();
+		return parse(uri, 1);
+	}
+	
+	/**
+	 * Parses the corpus using the given number of worker threads. Every worker builds a partial 
+	 * corpus of its own, these are merged in file order afterwards, so the result is the same 
+	 * no matter how many threads are used.
+	 */
+	public static OhsumedCorpus parse(File uri, int numThreads) throws IOException, URISyntaxException {
+		List<File> files = listFiles(uri);
+		if (numThreads <= 1 || files.size() <= MIN_FILES_PER_TASK) {
+			return parseFiles(files, 0, files.size());
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try {
+			return pool.invoke(new ParseTask(files, 0, files.size()));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+			DICTIONARY_SIZE.set(TermDictionary.getInstance().size());
+		}
+	}
+	
+	/**
+	 * Parses the corpus straight into the columnar layout, without keeping an OhsumedArticle 
+	 * per article. The articles are in file order, the result is the same no matter how many 
+	 * threads are used.
+	 */
+	public static PackedCorpus parsePacked(File uri, int numThreads) throws IOException, URISyntaxException {
+		return parsePacked(listFiles(uri), numThreads);
+	}
+	
+	/**
+	 * Like parsePacked, but the preprocessed corpus is kept in a cache file next to the corpus 
+	 * directory (e.g. training.corpus for training/). Later runs load it instead of parsing, 
+	 * as long as neither the source files nor the stop word list have changed.
+	 */
+	public static PackedCorpus parseCached(File uri, int numThreads) throws IOException, URISyntaxException {
+		return parseCached(uri, numThreads, new File(uri.getAbsoluteFile().getParentFile(), uri.getName() + ".corpus"));
+	}
+	
+	public static PackedCorpus parseCached(File uri, int numThreads, File cacheFile) throws IOException, URISyntaxException {
+		List<File> files = listFiles(uri);
+		String fingerprint = CorpusCache.fingerprint(uri, files);
+		PackedCorpus corpus = CorpusCache.read(cacheFile, fingerprint);
+		if (corpus == null) {
+			corpus = parsePacked(files, numThreads);
+			try {
+				CorpusCache.write(corpus, cacheFile, fingerprint);
+			} catch (IOException e) {
+				// e.g. a read-only location, the corpus is parsed again next time
+				System.err.println("Could not write corpus cache " + cacheFile + ": " + e.getMessage());
+			}
+		}
+		return corpus;
+	}
+	
+	private static PackedCorpus parsePacked(List<File> files, int numThreads) throws IOException {
+		if (numThreads <= 1 || files.size() <= MIN_FILES_PER_TASK) {
+			return parsePackedFiles(files, 0, files.size());
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try {
+			return PackedCorpus.concat(pool.invoke(new PackTask(files, 0, files.size())));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * All files of the class folders below uri, sorted by class and file name.
+	 */
+	private static List<File> listFiles(File uri) {
+		List<File> files = new ArrayList<>();
 		
 		if (uri.isDirectory()) {
 			// several subdirectories are expected, thus multiple classes/categories 
 			File[] subfolders = uri.listFiles();
+			Arrays.sort(subfolders);
 			
 			// then each subfolder forms a separate class
 			for(File classFolder : subfolders) {
-				String className = classFolder.getName(); // e.g. C01, C02, ...
+				if (!classFolder.isDirectory()) {
+					continue;
+				}
+				File[] classFiles = classFolder.listFiles();
+				Arrays.sort(classFiles);
 				
-				for (File file : classFolder.listFiles()) {
+				for (File file : classFiles) {
 					if (file.isFile()) {
-						InputStream in = new FileInputStream(file);
-						BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
-						corpus.addArticle(parseArticle(reader, className));
+						files.add(file);
 					}
 				}
 			}
 		} else {
 			// the training files lie in this directory, there is only one class
 		}
-		
+		return files;
+	}
+	
+	/**
+	 * Parses the files in [from, to) into a new corpus. The class name of every
+	 * file is the name of the folder it lies in, e.g. C01, C02, ...
+	 */
+	private static OhsumedCorpus parseFiles(List<File> files, int from, int to) throws IOException {
+		OhsumedCorpus corpus = new OhsumedCorpus();
+		for (int i = from; i < to; i++) {
+			corpus.addArticle(parseFile(files.get(i)));
+		}
+		DICTIONARY_SIZE.set(TermDictionary.getInstance().size());
 		return corpus;
 	}
+	
+	private static PackedCorpus parsePackedFiles(List<File> files, int from, int to) throws IOException {
+		PackedCorpus.Builder builder = new PackedCorpus.Builder();
+		for (int i = from; i < to; i++) {
+			builder.addArticle(parseFile(files.get(i)));
+		}
+		DICTIONARY_SIZE.set(TermDictionary.getInstance().size());
+		return builder.build();
+	}
+	
+	private static OhsumedArticle parseFile(File file) throws IOException {
+		String className = file.getParentFile().getName();
+		try (Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8")) {
+			long start = READ_TIMER.start();
+			char[] chars = readFully(reader, file.length());
+			READ_TIMER.stop(start);
+			return parseArticle(chars, chars.length, className, true);
+		}
+	}
+
+	/**
+	 * Splits the file list in halves until the chunks are small enough, then parses
+	 * each chunk into a partial corpus and merges the partial corpora back in order.
+	 */
+	private static class ParseTask extends RecursiveTask<OhsumedCorpus> {
+		private static final long serialVersionUID = 1L;
+		private final List<File> files;
+		private final int from;
+		private final int to;
+		
+		ParseTask(List<File> files, int from, int to) {
+			this.files = files;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected OhsumedCorpus compute() {
+			if (to - from <= MIN_FILES_PER_TASK) {
+				try {
+					return parseFiles(files, from, to);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			int middle = (from + to) >>> 1;
+			ParseTask left = new ParseTask(files, from, middle);
+			ParseTask right = new ParseTask(files, middle, to);
+			right.fork();
+			OhsumedCorpus corpus = left.compute();
+			corpus.addAll(right.join());
+			return corpus;
+		}
+	}
+	
+	/**
+	 * The same as ParseTask, the partial corpora are collected in order and concatenated once at the end.
+	 */
+	private static class PackTask extends RecursiveTask<List<PackedCorpus>> {
+		private static final long serialVersionUID = 1L;
+		private final List<File> files;
+		private final int from;
+		private final int to;
+		
+		PackTask(List<File> files, int from, int to) {
+			this.files = files;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected List<PackedCorpus> compute() {
+			if (to - from <= MIN_FILES_PER_TASK) {
+				List<PackedCorpus> parts = new ArrayList<>();
+				try {
+					parts.add(parsePackedFiles(files, from, to));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return parts;
+			}
+			int middle = (from + to) >>> 1;
+			PackTask left = new PackTask(files, from, middle);
+			PackTask right = new PackTask(files, middle, to);
+			right.fork();
+			List<PackedCorpus> parts = left.compute();
+			parts.addAll(right.join());
+			return parts;
+		}
+	}
+
+	/**
+	 * Parses a raw document (one sentence per line) with the same preprocessing as the corpus.
+	 * Terms that are not in the dictionary yet are given TermDictionary.UNKNOWN_TERM instead
+	 * of a new id, so classifying arbitrary input does not make the dictionary grow.
+	 */
+	public static OhsumedArticle parseText(String text) {
+		char[] chars = text.toCharArray();
+		return parseArticle(chars, chars.length, null, false);
+	}
+	
+	/**
+	 * Reads the whole file, a UTF-8 file has at most as many chars as bytes.
+	 */
+	private static char[] readFully(Reader reader, long sizeHint) throws IOException {
+		char[] chars = new char[(int) Math.min(Integer.MAX_VALUE - 8, sizeHint) + 1];
+		int length = 0;
+		int read;
+		while ((read = reader.read(chars, length, chars.length - length)) >= 0) {
+			length += read;
+			if (length == chars.length) {
+				chars = Arrays.copyOf(chars, chars.length * 2);
+			}
+		}
+		return Arrays.copyOf(chars, length);
+	}
 
-	private static OhsumedArticle parseArticle(BufferedReader reader, String className) throws IOException, URISyntaxException {
-		String line = null;
+	/**
+	 * Every line of chars[0, length) is a sentence, the first line is the title as well. 
+	 * Lines end at \n, \r or \r\n like with BufferedReader.readLine.
+	 */
+	private static OhsumedArticle parseArticle(char[] chars, int length, String className, boolean addTerms) {
+		long startTime = TOKENIZE_AND_STEM_TIMER.start();
+		Tokenizer tokenizer = TOKENIZER.get();
 		boolean firstLine = true;
 		OhsumedArticle article = new OhsumedArticle(className);
+		int numSentences = 0;
+		int numTokens = 0;
 		
-		while ((line = reader.readLine()) != null) {
+		int start = 0;
+		while (start < length) {
+			int end = start;
+			while (end < length && chars[end] != '\n' && chars[end] != '\r') {
+				end++;
+			}
 			if (firstLine) {
-				article.setTitle(line);
+				article.setTitle(new String(chars, start, end - start));
 				firstLine = false;
 			}
 			
-			Sentence sentence = new Sentence();
+			// tokenize and remove words with length < 2 and stop words, the sentence only keeps 
+			// the id of each stemmed term
+			int[] termIds = tokenizer.tokenize(chars, start, end, addTerms);
+			article.addSentence(new Sentence(termIds));
+			numSentences++;
+			numTokens += termIds.length;
 			
-			// tokenize and remove words with length < 2 and stop words
-			ArrayList<String> parsedTokens = preProcess(line);
-			
-		
-			for(String token : parsedTokens) {
-				token = stemToken(token);
-				Token tok = new Token(token);
-				sentence.addToken(tok);
+			if (end + 1 < length && chars[end] == '\r' && chars[end + 1] == '\n') {
+				end++;
 			}
-			//System.out.println("line: " + line);
-			//System.out.println("sentence: " + sentence);
-			article.addSentence(sentence);
+			start = end + 1;
 		}
+		TOKENIZE_AND_STEM_TIMER.stop(startTime);
+		ARTICLES.increment();
+		SENTENCES.add(numSentences);
+		TOKENS.add(numTokens);
 		return article;
 	}
-	
-	private static String stemToken(String token) {
-		Stemmer stemmer = new Stemmer();
-		stemmer.add(token.toCharArray(), token.length());
-		stemmer.stem();
-		return stemmer.toString();
-	}
-	
-	/**
-	 * Do some text processing to remove stop words and stem words for instance.
-	 */
-	private static ArrayList<String> preProcess(String line) throws IOException, URISyntaxException {
-		StopWordParser stopParser = new StopWordParser();
-		return stopParser.parseLine(line);
-	}
 }
@@ -0,0 +1,94 @@
+package de.hpi.nlp.preparation;
+
+import org.tartarus.martin.Stemmer;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import de.hpi.nlp.metrics.Metrics;
+import de.hpi.nlp.metrics.Timer;
+
+/**
+ * Size bounded cache from lowercased tokens to their Porter stem, shared by all parsing threads.
+ * Text repeats the same surface forms all the time, so most tokens are stemmed only once.
+ * Least recently used entries are evicted once maximumSize is reached, so memory stays bounded 
+ * on open-ended input. The size of the shared instance can be set with the system property 
+ * de.hpi.nlp.stemCacheSize, the hit and miss counts help to tune it.
+ */
+public class StemCache {
+	public static final int DEFAULT_MAXIMUM_SIZE = 100000;
+	// only cache misses are timed, the time is part of parse.tokenizeAndStem (see OhsumedParser)
+	private static final Timer STEM_TIMER = Metrics.timer("parse.stem");
+	
+	private final Cache<String, String> cache;
+	// Stemmers are not thread-safe but can be reused, every thread keeps one
+	private final ThreadLocal<Stemmer> stemmers = new ThreadLocal<Stemmer>() {
+		@Override
+		protected Stemmer initialValue() {
+			return new Stemmer();
+		}
+	};
+	
+	private static class Holder {
+		static final StemCache INSTANCE = new StemCache(Integer.getInteger("de.hpi.nlp.stemCacheSize", DEFAULT_MAXIMUM_SIZE));
+	}
+	
+	public static StemCache getInstance() {
+		return Holder.INSTANCE;
+	}
+	
+	public StemCache(long maximumSize) {
+		this.cache = CacheBuilder.newBuilder()
+				.maximumSize(maximumSize)
+				.concurrencyLevel(Runtime.getRuntime().availableProcessors())
+				.recordStats()
+				.build();
+	}
+	
+	/**
+	 * Porter stem of the lowercased token.
+	 */
+	public String stem(String token) {
+		String stem = cache.getIfPresent(token);
+		if (stem == null) {
+			long start = STEM_TIMER.start();
+			Stemmer stemmer = stemmers.get();
+			stemmer.add(token.toCharArray(), token.length());
+			stemmer.stem();
+			stem = stemmer.toString();
+			STEM_TIMER.stop(start);
+			// two threads may stem the same token at once, both get the same result
+			cache.put(token, stem);
+		}
+		return stem;
+	}
+	
+	public long getHitCount() {
+		return cache.stats().hitCount();
+	}
+	
+	public long getMissCount() {
+		return cache.stats().missCount();
+	}
+	
+	public double getHitRate() {
+		return cache.stats().hitRate();
+	}
+	
+	public long size() {
+		return cache.size();
+	}
+	
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+	
+	@Override
+	public String toString() {
+		CacheStats stats = cache.stats();
+		return "stem cache: " + cache.size() + " entries, " + stats.hitCount() + " hits, " 
+				+ stats.missCount() + " misses, hit rate " + String.format("%.3f", stats.hitRate())
+				+ ", " + stats.evictionCount() + " evictions";
+	}
+}
@@ -1,34 +1,75 @@
 package de.hpi.nlp.preparation;
 
 import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Set;
 
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Removes stop words and too short tokens from a line of text. The stop word list is 
+ * read once per JVM from the classpath and shared by all instances, it is immutable 
+ * and can therefore be used from several threads at once.
+ */
 public class StopWordParser {
+	public static final String STOP_WORD_RESOURCE = "/common-english-words-with-contractions.txt";
+	
 	private final Set<String> stopWords;
 	
-	public StopWordParser() throws IOException, URISyntaxException {
-		this.stopWords = new HashSet<String>();
-		
-		File file = new File(StopWordParser.class.getResource("/common-english-words-with-contractions.txt").toURI());
-		InputStream in = new FileInputStream(file);
-		BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+	/**
+	 * The holder is initialized on first use only, class initialization guarantees
+	 * that the list is loaded exactly once even with concurrent callers.
+	 */
+	private static class Holder {
+		static final StopWordParser INSTANCE = new StopWordParser(loadStopWords());
+	}
+	
+	/**
+	 * Returns the shared parser, prefer this over creating new instances.
+	 */
+	public static StopWordParser getInstance() {
+		return Holder.INSTANCE;
+	}
+	
+	public StopWordParser() {
+		this(Holder.INSTANCE.stopWords);
+	}
+	
+	private StopWordParser(Set<String> stopWords) {
+		this.stopWords = stopWords;
+	}
+	
+	private static Set<String> loadStopWords() {
+		// read from the stream instead of a file, so this also works when packaged as jar
+		InputStream in = StopWordParser.class.getResourceAsStream(STOP_WORD_RESOURCE);
+		if (in == null) {
+			throw new IllegalStateException("Stop word list not found on classpath: " + STOP_WORD_RESOURCE);
+		}
 		
-		String line = null;
-		while ((line = reader.readLine()) != null) {
-			String[] stop = line.split(",");
-			for(String word : stop) {
-				stopWords.add(word);
+		ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"))) {
+			String line = null;
+			while ((line = reader.readLine()) != null) {
+				String[] stop = line.split(",");
+				for(String word : stop) {
+					builder.add(word);
+				}
 			}
-		}	
-		reader.close();
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read stop word list " + STOP_WORD_RESOURCE, e);
+		}
+		return builder.build();
+	}
+	
+	public boolean isStopWord(String token) {
+		return stopWords.contains(token);
+	}
+	
+	public Set<String> getStopWords() {
+		return stopWords;
 	}
 	
 	public ArrayList<String> parseLine(String line) {
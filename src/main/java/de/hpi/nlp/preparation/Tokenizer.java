@@ -0,0 +1,252 @@
+package de.hpi.nlp.preparation;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import de.hpi.nlp.model.TermDictionary;
+
+/**
+ * Turns lines of text into term ids with the same preprocessing as StopWordParser.parseLine
+ * followed by Porter stemming: split at whitespace, drop tokens shorter than 2 characters, 
+ * lowercase, drop stop words, stem. The characters are scanned in place, and every distinct 
+ * lowercased token is looked up only once per tokenizer; after that a token is a hash probe 
+ * on the char buffer, without creating Strings, Stemmers or Tokens. Stems of tokens the tokenizer 
+ * has not seen yet come from the StemCache shared by all tokenizers.
+ * Not thread-safe, every thread uses its own instance (see OhsumedParser).
+ */
+public class Tokenizer {
+	private static final TermDictionary DICTIONARY = TermDictionary.getInstance();
+	// marks stop words in the cache
+	private static final int STOP_WORD = -2;
+	// the cache is cleared when it grows beyond this, so it stays bounded on open-ended input
+	private static final int MAX_CACHED_TOKENS = 1 << 20;
+	
+	// ASCII letters can only be lowercased in place if the default locale does not map them 
+	// to anything else, e.g. the Turkish dotless i
+	private static final boolean ASCII_LOWER_CASE = asciiLowerCaseIsDefault();
+	
+	private final Set<String> stopWords = StopWordParser.getInstance().getStopWords();
+	private final StemCache stemCache;
+	private final TokenCache cache = new TokenCache();
+	private char[] token = new char[64];
+	private int[] termIds = new int[64];
+	
+	public Tokenizer() {
+		this(StemCache.getInstance());
+	}
+	
+	public Tokenizer(StemCache stemCache) {
+		this.stemCache = stemCache;
+	}
+	
+	/**
+	 * Term ids of the tokens in chars[from, to), which must not contain line breaks.
+	 * If addTerms is false, unknown terms are TermDictionary.UNKNOWN_TERM instead of being added to the dictionary.
+	 */
+	public int[] tokenize(char[] chars, int from, int to, boolean addTerms) {
+		int numTerms = 0;
+		int start = from;
+		while (start < to) {
+			// the same whitespace as the \s of String.split
+			while (start < to && isWhitespace(chars[start])) {
+				start++;
+			}
+			int end = start;
+			while (end < to && !isWhitespace(chars[end])) {
+				end++;
+			}
+			
+			if (end - start > 1) { // remove tokens like "." or any other nonsense
+				int termId = termId(chars, start, end - start, addTerms);
+				if (termId != STOP_WORD) {
+					if (numTerms == termIds.length) {
+						termIds = Arrays.copyOf(termIds, numTerms * 2);
+					}
+					termIds[numTerms++] = termId;
+				}
+			}
+			start = end;
+		}
+		return Arrays.copyOf(termIds, numTerms);
+	}
+	
+	public int[] tokenize(String line, boolean addTerms) {
+		char[] chars = line.toCharArray();
+		return tokenize(chars, 0, chars.length, addTerms);
+	}
+	
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+	
+	private int termId(char[] chars, int offset, int length, boolean addTerms) {
+		int lowerLength = toLowerCase(chars, offset, length);
+		int cached = cache.get(token, lowerLength);
+		if (cached != TokenCache.ABSENT) {
+			return cached;
+		}
+		
+		String lower = new String(token, 0, lowerLength);
+		if (stopWords.contains(lower)) {
+			cache.put(token, lowerLength, STOP_WORD);
+			return STOP_WORD;
+		}
+		String term = stemCache.stem(lower);
+		int termId = addTerms ? DICTIONARY.intern(term) : DICTIONARY.getId(term);
+		
+		// ids never change once assigned, unknown terms may still be added to the dictionary later
+		if (termId != TermDictionary.UNKNOWN_TERM) {
+			if (cache.size() >= MAX_CACHED_TOKENS) {
+				cache.clear();
+			}
+			cache.put(token, lowerLength, termId);
+		}
+		return termId;
+	}
+	
+	/**
+	 * Lowercases chars[offset, offset + length) into the token buffer and returns the new length.
+	 * Everything that is not plain ASCII goes through String.toLowerCase, like before.
+	 */
+	private int toLowerCase(char[] chars, int offset, int length) {
+		if (token.length < length) {
+			token = new char[Math.max(length, token.length * 2)];
+		}
+		for (int i = 0; i < length; i++) {
+			char c = chars[offset + i];
+			if (c >= 128 || !ASCII_LOWER_CASE) {
+				String lower = new String(chars, offset, length).toLowerCase();
+				if (token.length < lower.length()) {
+					token = new char[lower.length()];
+				}
+				lower.getChars(0, lower.length(), token, 0);
+				return lower.length();
+			}
+			token[i] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+		}
+		return length;
+	}
+	
+	private static boolean asciiLowerCaseIsDefault() {
+		for (char c = 0; c < 128; c++) {
+			String lower = String.valueOf(c).toLowerCase();
+			char expected = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+			if (lower.length() != 1 || lower.charAt(0) != expected) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Open addressing map from lowercased tokens to their term id (or STOP_WORD). The characters 
+	 * of all keys are appended to one char array, so lookups compare chars instead of Strings.
+	 */
+	private static class TokenCache {
+		static final int ABSENT = Integer.MIN_VALUE;
+		
+		private int[] offsets;
+		private int[] lengths;
+		private int[] values;
+		private char[] keyChars;
+		private int keyCharsUsed;
+		private int size;
+		private int mask;
+		
+		TokenCache() {
+			clear();
+		}
+		
+		void clear() {
+			allocate(1024);
+			keyChars = new char[8192];
+			keyCharsUsed = 0;
+			size = 0;
+		}
+		
+		private void allocate(int capacity) {
+			offsets = new int[capacity];
+			lengths = new int[capacity];
+			values = new int[capacity];
+			Arrays.fill(lengths, -1);
+			mask = capacity - 1;
+		}
+		
+		int size() {
+			return size;
+		}
+		
+		private static int hash(char[] key, int length) {
+			int h = 0;
+			for (int i = 0; i < length; i++) {
+				h = 31 * h + key[i];
+			}
+			return h ^ (h >>> 16);
+		}
+		
+		private boolean matches(int slot, char[] key, int length) {
+			if (lengths[slot] != length) {
+				return false;
+			}
+			int offset = offsets[slot];
+			for (int i = 0; i < length; i++) {
+				if (keyChars[offset + i] != key[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		int get(char[] key, int length) {
+			int slot = hash(key, length) & mask;
+			while (lengths[slot] >= 0) {
+				if (matches(slot, key, length)) {
+					return values[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			return ABSENT;
+		}
+		
+		/**
+		 * Adds a key that is not in the cache yet.
+		 */
+		void put(char[] key, int length, int value) {
+			if (keyCharsUsed + length > keyChars.length) {
+				keyChars = Arrays.copyOf(keyChars, Math.max(keyCharsUsed + length, keyChars.length * 2));
+			}
+			System.arraycopy(key, 0, keyChars, keyCharsUsed, length);
+			insert(keyCharsUsed, length, value, hash(key, length));
+			keyCharsUsed += length;
+			if (++size > (mask + 1) / 2) {
+				rehash();
+			}
+		}
+		
+		private void insert(int offset, int length, int value, int hash) {
+			int slot = hash & mask;
+			while (lengths[slot] >= 0) {
+				slot = (slot + 1) & mask;
+			}
+			offsets[slot] = offset;
+			lengths[slot] = length;
+			values[slot] = value;
+		}
+		
+		private void rehash() {
+			int[] oldOffsets = offsets;
+			int[] oldLengths = lengths;
+			int[] oldValues = values;
+			allocate(oldOffsets.length * 2);
+			for (int slot = 0; slot < oldOffsets.length; slot++) {
+				if (oldLengths[slot] >= 0) {
+					int hash = 0;
+					for (int i = 0; i < oldLengths[slot]; i++) {
+						hash = 31 * hash + keyChars[oldOffsets[slot] + i];
+					}
+					insert(oldOffsets[slot], oldLengths[slot], oldValues[slot], hash ^ (hash >>> 16));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package de.hpi.nlp.sentiment;
+
+import java.util.Arrays;
+
+/**
+ * Scores texts with the SentimentLexicon in a single pass over the characters. Tokens are 
+ * separated by whitespace; a token is first looked up as it is, for emoticons, then without 
+ * surrounding punctuation (e.g. of hashtags) and lowercased. Idioms are matched before their 
+ * single words. A booster word strengthens or weakens the next word, a negation inverts and 
+ * halves the sentiment of the words within the next NEGATION_WINDOW tokens.
+ * Not thread-safe, every thread uses its own instance; the lexicon is shared.
+ */
+public class SentimentAnalyzer {
+	public static final int NEGATION_WINDOW = 3;
+	private static final int MAX_SENTIMENT = 5;
+	
+	private final SentimentLexicon lexicon;
+	private char[] token = new char[64];
+	// per token of the current text: the trie match and the sentiment
+	private int[] matches = new int[64];
+	private int[] sentiments = new int[64];
+	
+	public SentimentAnalyzer() {
+		this(SentimentLexicon.getInstance());
+	}
+	
+	public SentimentAnalyzer(SentimentLexicon lexicon) {
+		this.lexicon = lexicon;
+	}
+	
+	public SentimentScore score(String text) {
+		return score(text.toCharArray(), 0, text.length());
+	}
+	
+	public SentimentScore score(char[] text, int from, int to) {
+		int numTokens = tokenize(text, from, to);
+		
+		double positive = 1.0;
+		double negative = -1.0;
+		int negationLeft = 0;
+		int booster = 0;
+		int maxIdiomLength = lexicon.getMaxIdiomLength();
+		for(int i = 0; i < numTokens; i++) {
+			int match = matches[i];
+			int sentiment = sentiments[i];
+			int length = 1;
+			
+			// the longest idiom that starts here, it replaces the sentiment of its words
+			int state = 0;
+			for(int j = i; j < numTokens && j - i < maxIdiomLength && SentimentLexicon.isWord(matches[j]); j++) {
+				state = lexicon.nextIdiomState(state, SentimentLexicon.node(matches[j]));
+				if (state == 0) {
+					break;
+				}
+				int idiomSentiment = lexicon.getIdiomSentiment(state);
+				if (idiomSentiment != 0) {
+					sentiment = idiomSentiment;
+					length = j - i + 1;
+				}
+			}
+			
+			if (length == 1 && lexicon.isNegation(match)) {
+				negationLeft = NEGATION_WINDOW + 1;
+			} else if (length == 1 && lexicon.getBooster(match) != 0) {
+				booster += lexicon.getBooster(match);
+			} else {
+				if (sentiment != 0) {
+					double strength = Math.min(MAX_SENTIMENT, Math.max(1, Math.abs(sentiment) + booster));
+					double value = sentiment > 0 ? strength : -strength;
+					if (negationLeft > 0) {
+						value = -value / 2;
+					}
+					positive = Math.max(positive, value);
+					negative = Math.min(negative, value);
+				}
+				booster = 0;
+			}
+			negationLeft = Math.max(0, negationLeft - length);
+			i += length - 1;
+		}
+		return new SentimentScore(positive, negative, numTokens);
+	}
+	
+	/**
+	 * Looks up every whitespace separated token of the text, returns the number of tokens.
+	 */
+	private int tokenize(char[] text, int from, int to) {
+		int numTokens = 0;
+		int i = from;
+		while (i < to) {
+			while (i < to && Character.isWhitespace(text[i])) {
+				i++;
+			}
+			int start = i;
+			while (i < to && !Character.isWhitespace(text[i])) {
+				i++;
+			}
+			if (start == i) {
+				break;
+			}
+			
+			if (numTokens == matches.length) {
+				matches = Arrays.copyOf(matches, 2 * numTokens);
+				sentiments = Arrays.copyOf(sentiments, 2 * numTokens);
+			}
+			int emoticon = lexicon.getEmoticonSentiment(lexicon.match(text, start, i));
+			if (emoticon != 0) {
+				// no word, so it cannot be part of an idiom
+				matches[numTokens] = 0;
+				sentiments[numTokens] = emoticon;
+			} else {
+				int length = normalize(text, start, i);
+				int match = length == 0 ? 0 : lexicon.match(token, 0, length);
+				matches[numTokens] = match;
+				sentiments[numTokens] = length == 0 ? 0 : lexicon.getSentiment(match);
+			}
+			numTokens++;
+		}
+		return numTokens;
+	}
+	
+	/**
+	 * Copies the token without leading and trailing punctuation and lowercased into 
+	 * the token buffer, returns its length.
+	 */
+	private int normalize(char[] text, int start, int end) {
+		while (start < end && !isWordCharacter(text[start])) {
+			start++;
+		}
+		while (end > start && !isWordCharacter(text[end - 1])) {
+			end--;
+		}
+		if (end - start > token.length) {
+			token = new char[Math.max(end - start, 2 * token.length)];
+		}
+		for(int i = start; i < end; i++) {
+			char c = text[i];
+			token[i - start] = c < 128 ? (c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c) : Character.toLowerCase(c);
+		}
+		return end - start;
+	}
+	
+	private static boolean isWordCharacter(char c) {
+		return Character.isLetterOrDigit(c) || c == '\'';
+	}
+}
@@ -0,0 +1,356 @@
+package de.hpi.nlp.sentiment;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.hpi.nlp.util.LongIntHashMap;
+
+/**
+ * The sentiment word lists bundled as resources, compiled into one immutable character trie:
+ * the SentiStrength emotion, emoticon, booster, negation and idiom tables and the MPQA 
+ * subjectivity clues (subjectivity_clues.tff). Wildcard stems like "abandon*" are pushed 
+ * down to every node below the stem when the trie is built, so matching a token is a single 
+ * walk from the root, which also gives the sentiment of words that leave the trie below a stem. 
+ * The words of multi-word idioms are trie nodes as well, idioms are sequences of these nodes.
+ * The lexicon is loaded once per JVM and can be used from several threads at once.
+ */
+public class SentimentLexicon {
+	public static final String RESOURCE_DIRECTORY = "/SentiStrength/";
+	public static final String SUBJECTIVITY_CLUES_RESOURCE = "/subjectivity_clues.tff";
+	
+	// MPQA clues have no strength, weak and strong clues are mapped to the SentiStrength scale
+	private static final int WEAK_CLUE_SENTIMENT = 2;
+	private static final int STRONG_CLUE_SENTIMENT = 3;
+	
+	private static final byte NEGATION = 1;
+	private static final byte EMOTICON = 2;
+	
+	// children of node n are childLabels/childNodes[childStart[n] .. childStart[n + 1]), sorted by label
+	private final int[] childStart;
+	private final char[] childLabels;
+	private final int[] childNodes;
+	// sentiment of the word that ends at the node, its own or the one of the closest stem above it
+	private final byte[] wordSentiment;
+	// sentiment of words that leave the trie below the node, i.e. of the closest stem above it
+	private final byte[] stemSentiment;
+	private final byte[] emoticonSentiment;
+	private final byte[] booster;
+	private final byte[] flags;
+	
+	// idioms: state transitions keyed by LongIntHashMap.key(state, word node), state 0 is the start
+	private final LongIntHashMap idiomTransitions;
+	private final int[] idiomSentiment;
+	private final int maxIdiomLength;
+	
+	private static class Holder {
+		static final SentimentLexicon INSTANCE = load();
+	}
+	
+	/**
+	 * Returns the shared lexicon, which is loaded on first use.
+	 */
+	public static SentimentLexicon getInstance() {
+		return Holder.INSTANCE;
+	}
+	
+	private static SentimentLexicon load() {
+		Builder builder = new Builder();
+		// the MPQA clues first, so the graded SentiStrength entries win for words in both
+		for(String line : readLines(SUBJECTIVITY_CLUES_RESOURCE)) {
+			builder.addSubjectivityClue(line);
+		}
+		for(String line : readLines(RESOURCE_DIRECTORY + "EmotionLookupTable.txt")) {
+			String[] fields = line.split("\t");
+			builder.addWord(fields[0].trim().toLowerCase(), Integer.parseInt(fields[1].trim()));
+		}
+		for(String line : readLines(RESOURCE_DIRECTORY + "EmoticonLookupTable.txt")) {
+			String[] fields = line.split("\t");
+			builder.node(fields[0].trim()).emoticonSentiment = Integer.parseInt(fields[1].trim());
+		}
+		for(String line : readLines(RESOURCE_DIRECTORY + "BoosterWordList.txt")) {
+			String[] fields = line.split("\t");
+			builder.node(fields[0].trim().toLowerCase()).booster = Integer.parseInt(fields[1].trim());
+		}
+		for(String line : readLines(RESOURCE_DIRECTORY + "NegatingWordList.txt")) {
+			builder.node(line.trim().toLowerCase()).negation = true;
+		}
+		for(String line : readLines(RESOURCE_DIRECTORY + "IdiomLookupTable.txt")) {
+			String[] fields = line.split("\t");
+			builder.addIdiom(fields[0].trim().toLowerCase().split(" +"), Integer.parseInt(fields[1].trim()));
+		}
+		return builder.build();
+	}
+	
+	private static List<String> readLines(String resource) {
+		// read from the stream instead of a file, so this also works when packaged as jar
+		InputStream in = SentimentLexicon.class.getResourceAsStream(resource);
+		if (in == null) {
+			throw new IllegalStateException("Sentiment lexicon not found on classpath: " + resource);
+		}
+		List<String> lines = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.trim().isEmpty()) {
+					lines.add(line);
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read sentiment lexicon " + resource, e);
+		}
+		return lines;
+	}
+	
+	private SentimentLexicon(Builder builder) {
+		// number the nodes breadth first, so the children of a node are consecutive
+		List<Builder.Node> nodes = new ArrayList<>();
+		ArrayDeque<Builder.Node> queue = new ArrayDeque<>();
+		queue.add(builder.root);
+		while (!queue.isEmpty()) {
+			Builder.Node node = queue.poll();
+			node.id = nodes.size();
+			nodes.add(node);
+			queue.addAll(node.children.values());
+		}
+		
+		int numNodes = nodes.size();
+		this.childStart = new int[numNodes + 1];
+		this.childLabels = new char[numNodes - 1];
+		this.childNodes = new int[numNodes - 1];
+		this.wordSentiment = new byte[numNodes];
+		this.stemSentiment = new byte[numNodes];
+		this.emoticonSentiment = new byte[numNodes];
+		this.booster = new byte[numNodes];
+		this.flags = new byte[numNodes];
+		int child = 0;
+		for(Builder.Node node : nodes) {
+			childStart[node.id] = child;
+			for(Map.Entry<Character, Builder.Node> entry : node.children.entrySet()) {
+				childLabels[child] = entry.getKey();
+				childNodes[child] = entry.getValue().id;
+				// breadth first order: the parent is always done before its children
+				entry.getValue().inheritedStemSentiment = entry.getValue().stemSentiment != 0 
+						? entry.getValue().stemSentiment : node.inheritedStemSentiment;
+				child++;
+			}
+			int stem = node.stemSentiment != 0 ? node.stemSentiment : node.inheritedStemSentiment;
+			stemSentiment[node.id] = (byte) stem;
+			wordSentiment[node.id] = (byte) (node.wordSentiment != 0 ? node.wordSentiment : stem);
+			emoticonSentiment[node.id] = (byte) node.emoticonSentiment;
+			booster[node.id] = (byte) node.booster;
+			flags[node.id] = (byte) ((node.negation ? NEGATION : 0) | (node.emoticonSentiment != 0 ? EMOTICON : 0));
+		}
+		childStart[numNodes] = child;
+		
+		this.idiomTransitions = new LongIntHashMap();
+		int[] finalStates = new int[builder.idioms.size()];
+		int maxLength = 0;
+		for(int idiom = 0; idiom < builder.idioms.size(); idiom++) {
+			Builder.Node[] words = builder.idioms.get(idiom);
+			int state = 0;
+			for(Builder.Node word : words) {
+				long key = LongIntHashMap.key(state, word.id);
+				int next = idiomTransitions.get(key);
+				if (next == 0) {
+					next = idiomTransitions.size() + 1;
+					idiomTransitions.put(key, next);
+				}
+				state = next;
+			}
+			finalStates[idiom] = state;
+			maxLength = Math.max(maxLength, words.length);
+		}
+		this.idiomSentiment = new int[idiomTransitions.size() + 1];
+		for(int idiom = 0; idiom < finalStates.length; idiom++) {
+			idiomSentiment[finalStates[idiom]] = builder.idiomSentiment.get(idiom);
+		}
+		this.maxIdiomLength = maxLength;
+	}
+	
+	/**
+	 * Walks the trie along the characters and returns the node the word ends at, shifted left by 
+	 * one with the lowest bit set, or the last node reached, shifted left by one, if the word 
+	 * leaves the trie. Use isWord(match) and node(match) to take the result apart.
+	 */
+	public int match(char[] chars, int from, int to) {
+		int node = 0;
+		for(int i = from; i < to; i++) {
+			int next = child(node, chars[i]);
+			if (next < 0) {
+				return node << 1;
+			}
+			node = next;
+		}
+		return node << 1 | 1;
+	}
+	
+	private int child(int node, char label) {
+		int low = childStart[node];
+		int high = childStart[node + 1] - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			char c = childLabels[middle];
+			if (c < label) {
+				low = middle + 1;
+			} else if (c > label) {
+				high = middle - 1;
+			} else {
+				return childNodes[middle];
+			}
+		}
+		return -1;
+	}
+	
+	public static boolean isWord(int match) {
+		return (match & 1) != 0;
+	}
+	
+	public static int node(int match) {
+		return match >>> 1;
+	}
+	
+	/**
+	 * Sentiment of the matched token, from -5 to 5, 0 if it has none.
+	 */
+	public int getSentiment(int match) {
+		return isWord(match) ? wordSentiment[node(match)] : stemSentiment[node(match)];
+	}
+	
+	/**
+	 * Sentiment of the matched token as emoticon, 0 if it is none.
+	 */
+	public int getEmoticonSentiment(int match) {
+		return isWord(match) && (flags[node(match)] & EMOTICON) != 0 ? emoticonSentiment[node(match)] : 0;
+	}
+	
+	/**
+	 * How much the matched word strengthens (or weakens, if negative) the next sentiment word.
+	 */
+	public int getBooster(int match) {
+		return isWord(match) ? booster[node(match)] : 0;
+	}
+	
+	public boolean isNegation(int match) {
+		return isWord(match) && (flags[node(match)] & NEGATION) != 0;
+	}
+	
+	/**
+	 * The idiom state after the word node, 0 if no idiom continues with it.
+	 */
+	public int nextIdiomState(int state, int wordNode) {
+		return idiomTransitions.get(LongIntHashMap.key(state, wordNode));
+	}
+	
+	/**
+	 * Sentiment of the idiom that ends in the state, 0 if none does.
+	 */
+	public int getIdiomSentiment(int state) {
+		return idiomSentiment[state];
+	}
+	
+	public int getMaxIdiomLength() {
+		return maxIdiomLength;
+	}
+	
+	public int getNumNodes() {
+		return flags.length;
+	}
+	
+	/**
+	 * Mutable trie, only used while loading.
+	 */
+	private static class Builder {
+		private static class Node {
+			final TreeMap<Character, Node> children = new TreeMap<>();
+			int id;
+			int wordSentiment;
+			int stemSentiment;
+			int inheritedStemSentiment;
+			int emoticonSentiment;
+			int booster;
+			boolean negation;
+		}
+		
+		final Node root = new Node();
+		final List<Node[]> idioms = new ArrayList<>();
+		final List<Integer> idiomSentiment = new ArrayList<>();
+		
+		Node node(String word) {
+			Node node = root;
+			for(int i = 0; i < word.length(); i++) {
+				Node next = node.children.get(word.charAt(i));
+				if (next == null) {
+					next = new Node();
+					node.children.put(word.charAt(i), next);
+				}
+				node = next;
+			}
+			return node;
+		}
+		
+		/**
+		 * A word, or a stem if it ends with "*".
+		 */
+		void addWord(String word, int sentiment) {
+			if (word.endsWith("*")) {
+				node(word.substring(0, word.length() - 1)).stemSentiment = sentiment;
+			} else {
+				node(word).wordSentiment = sentiment;
+			}
+		}
+		
+		/**
+		 * A line like "type=strongsubj len=1 word1=abuse pos1=verb stemmed1=y priorpolarity=negative".
+		 */
+		void addSubjectivityClue(String line) {
+			String type = null;
+			String word = null;
+			boolean stemmed = false;
+			String polarity = null;
+			for(String field : line.trim().split(" +")) {
+				int separator = field.indexOf('=');
+				if (separator < 0) {
+					continue;
+				}
+				String key = field.substring(0, separator);
+				String value = field.substring(separator + 1);
+				if (key.equals("type")) {
+					type = value;
+				} else if (key.equals("word1")) {
+					word = value.toLowerCase();
+				} else if (key.equals("stemmed1")) {
+					stemmed = value.equals("y");
+				} else if (key.equals("priorpolarity")) {
+					polarity = value;
+				}
+			}
+			int sign = "positive".equals(polarity) ? 1 : "negative".equals(polarity) ? -1 : 0;
+			if (word == null || sign == 0) {
+				// neutral and both are no evidence either way
+				return;
+			}
+			int sentiment = sign * ("strongsubj".equals(type) ? STRONG_CLUE_SENTIMENT : WEAK_CLUE_SENTIMENT);
+			addWord(stemmed ? word + "*" : word, sentiment);
+		}
+		
+		void addIdiom(String[] words, int sentiment) {
+			Node[] nodes = new Node[words.length];
+			for(int i = 0; i < words.length; i++) {
+				nodes[i] = node(words[i]);
+			}
+			idioms.add(nodes);
+			idiomSentiment.add(sentiment);
+		}
+		
+		SentimentLexicon build() {
+			return new SentimentLexicon(this);
+		}
+	}
+}
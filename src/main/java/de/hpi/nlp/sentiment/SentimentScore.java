@@ -0,0 +1,48 @@
+package de.hpi.nlp.sentiment;
+
+import java.util.Locale;
+
+/**
+ * Sentiment of a text on the SentiStrength scales: the strength of the strongest positive 
+ * sentiment from 1 (none) to 5 and of the strongest negative one from -1 (none) to -5.
+ */
+public class SentimentScore {
+	public static final String POSITIVE = "positive";
+	public static final String NEGATIVE = "negative";
+	public static final String NEUTRAL = "neutral";
+	
+	private final double positive;
+	private final double negative;
+	private final int numTokens;
+	
+	public SentimentScore(double positive, double negative, int numTokens) {
+		this.positive = positive;
+		this.negative = negative;
+		this.numTokens = numTokens;
+	}
+	
+	public double getPositive() {
+		return positive;
+	}
+	
+	public double getNegative() {
+		return negative;
+	}
+	
+	public int getNumTokens() {
+		return numTokens;
+	}
+	
+	/**
+	 * "positive" or "negative" if that sentiment is stronger, "neutral" if both are equally strong.
+	 */
+	public String getPolarity() {
+		double balance = positive + negative;
+		return balance > 0 ? POSITIVE : balance < 0 ? NEGATIVE : NEUTRAL;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "%s (%.1f, %.1f)", getPolarity(), positive, negative);
+	}
+}
@@ -0,0 +1,214 @@
+package de.hpi.nlp.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import de.hpi.nlp.metrics.Metrics;
+import de.hpi.nlp.model.CategoryScorer;
+import de.hpi.nlp.model.CompiledNaiveBayesModel;
+import de.hpi.nlp.model.ModelFile;
+import de.hpi.nlp.model.NaiveBayesModel;
+import de.hpi.nlp.model.OhsumedCorpus;
+import de.hpi.nlp.preparation.OhsumedParser;
+
+/**
+ * Long running classification service for a naive bayes model trained on an OHSUMED directory
+ * or loaded from a model file written with --save-model (see ModelFile).
+ * Line protocol, on stdin/stdout or on every connection of a TCP port: each request line is one 
+ * document, each response line is the best category followed by the log score of every category,
+ * tab separated (e.g. "C04	C01=-123.45	C02=-130.01 ..."). Responses keep the order of the requests.
+ * A document that could not be classified is answered with "!error" and the reason, tab separated.
+ * At most --queue-size documents wait for a worker, and at most --queue-size responses per connection 
+ * wait to be written, reading requests pauses while either is full, e.g. for a client that reads its 
+ * responses slowly.
+ * The request line "!stats" is answered with throughput and latency statistics, "!metrics" with 
+ * the pipeline metrics (see Metrics), one per line, followed by an empty line.
+ * 
+ * Usage: ClassificationServer <training directory | model file> [--port <port>] [--threads <n>] 
+ *        [--batch-size <n>] [--max-delay-ms <ms>] [--queue-size <n>] [--save-model <file>]
+ */
+public class ClassificationServer {
+	private static final String STATS_COMMAND = "!stats";
+	private static final String METRICS_COMMAND = "!metrics";
+	private static final String ERROR_RESPONSE = "!error";
+	
+	private final MicroBatcher batcher;
+	private final CategoryScorer scorer;
+	private final int queueSize;
+	
+	public ClassificationServer(CategoryScorer scorer, int numThreads, int batchSize, long maxDelayMillis, int queueSize) {
+		this.scorer = scorer;
+		this.queueSize = queueSize;
+		this.batcher = new MicroBatcher(scorer, numThreads, batchSize, maxDelayMillis, TimeUnit.MILLISECONDS, queueSize);
+	}
+	
+	public static void main(String[] args) throws IOException, URISyntaxException, InterruptedException {
+		if (args.length < 1) {
+			System.err.println("Usage: ClassificationServer <training directory | model file> [--port <port>] [--threads <n>] "
+					+ "[--batch-size <n>] [--max-delay-ms <ms>] [--queue-size <n>] [--save-model <file>]");
+			return;
+		}
+		int port = -1;
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		int batchSize = 32;
+		long maxDelayMillis = 5;
+		int queueSize = 1024;
+		File saveModel = null;
+		for (int i = 1; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+			case "--port":
+				port = Integer.parseInt(args[i + 1]);
+				break;
+			case "--threads":
+				numThreads = Integer.parseInt(args[i + 1]);
+				break;
+			case "--batch-size":
+				batchSize = Integer.parseInt(args[i + 1]);
+				break;
+			case "--max-delay-ms":
+				maxDelayMillis = Long.parseLong(args[i + 1]);
+				break;
+			case "--queue-size":
+				queueSize = Integer.parseInt(args[i + 1]);
+				break;
+			case "--save-model":
+				saveModel = new File(args[i + 1]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		
+		File source = new File(args[0]);
+		CategoryScorer scorer;
+		if (source.isFile()) {
+			scorer = ModelFile.read(source);
+			System.err.println("Model loaded from " + source);
+		} else {
+			OhsumedCorpus training = OhsumedParser.parse(source, numThreads);
+			CompiledNaiveBayesModel model = new CompiledNaiveBayesModel(new NaiveBayesModel(training));
+			System.err.println("Model trained on " + training.getNumArticles() + " articles");
+			if (saveModel != null) {
+				ModelFile.write(model, saveModel);
+				System.err.println("Model saved to " + saveModel);
+			}
+			scorer = model;
+		}
+		ClassificationServer server = new ClassificationServer(scorer, numThreads, batchSize, maxDelayMillis, queueSize);
+		System.err.println("Serving " + (port < 0 ? "stdin" : "port " + port));
+		
+		if (port < 0) {
+			server.serve(System.in, System.out);
+			System.err.println(server.batcher.getStatistics());
+			server.batcher.shutdown();
+		} else {
+			server.listen(port);
+		}
+	}
+	
+	/**
+	 * Accepts connections forever, every connection is served by a thread of its own.
+	 */
+	public void listen(int port) throws IOException {
+		try (ServerSocket serverSocket = new ServerSocket(port)) {
+			while (true) {
+				final Socket socket = serverSocket.accept();
+				Thread connection = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try (Socket s = socket) {
+							serve(s.getInputStream(), s.getOutputStream());
+						} catch (IOException | InterruptedException e) {
+							System.err.println("Connection closed: " + e.getMessage());
+						}
+					}
+				}, "connection-" + socket.getRemoteSocketAddress());
+				connection.setDaemon(true);
+				connection.start();
+			}
+		}
+	}
+	
+	/**
+	 * Reads requests until the end of the input. Requests are submitted as soon as they have 
+	 * been read, a second thread writes the responses in order, so that one client can have 
+	 * many requests in flight and the batches fill up.
+	 */
+	public void serve(InputStream in, OutputStream out) throws IOException, InterruptedException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+		final PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, "UTF-8"));
+		// Boolean.FALSE marks the end of the input, the command strings ask for statistics or metrics,
+		// bounded so that a slow reader of the responses slows down the reading of its requests
+		final BlockingQueue<Object> pending = new ArrayBlockingQueue<>(queueSize);
+		
+		Thread responder = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Object next;
+					while ((next = pending.take()) != Boolean.FALSE) {
+						if (next instanceof MicroBatcher.Request) {
+							writer.println(formatResponse((MicroBatcher.Request) next));
+						} else if (next == METRICS_COMMAND) {
+							writer.println(Metrics.dump());
+						} else {
+							writer.println(batcher.getStatistics());
+						}
+						if (pending.isEmpty()) {
+							writer.flush();
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				writer.flush();
+			}
+		}, "responder");
+		responder.start();
+		
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.trim().equals(STATS_COMMAND)) {
+				pending.put(STATS_COMMAND);
+			} else if (line.trim().equals(METRICS_COMMAND)) {
+				pending.put(METRICS_COMMAND);
+			} else {
+				pending.put(batcher.submit(line));
+			}
+		}
+		pending.put(Boolean.FALSE);
+		responder.join();
+	}
+	
+	private String formatResponse(MicroBatcher.Request request) throws InterruptedException {
+		RuntimeException error = request.getError();
+		if (error != null) {
+			// one line per response, whatever the message looks like
+			return ERROR_RESPONSE + '\t' + String.valueOf(error).replaceAll("\\s+", " ");
+		}
+		StringBuilder response = new StringBuilder(String.valueOf(request.getCategory()));
+		double[] scores = request.getScores();
+		for (int category = 0; category < scores.length; category++) {
+			response.append('\t').append(scorer.getCategory(category)).append('=')
+					.append(String.format(Locale.ROOT, "%.4f", scores[category]));
+		}
+		return response.toString();
+	}
+	
+	public MicroBatcher getBatcher() {
+		return batcher;
+	}
+}
@@ -0,0 +1,276 @@
+package de.hpi.nlp.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.hpi.nlp.model.BatchNaiveBayesScorer;
+import de.hpi.nlp.model.CategoryScorer;
+import de.hpi.nlp.model.CompiledNaiveBayesModel;
+import de.hpi.nlp.model.OhsumedArticle;
+import de.hpi.nlp.preparation.OhsumedParser;
+import de.hpi.nlp.util.LatencyHistogram;
+
+/**
+ * Classifies raw documents submitted from any number of threads. Requests are queued and 
+ * every worker takes them off the queue in micro-batches: a batch is closed as soon as it 
+ * has maxBatchSize requests or its oldest request has waited maxDelay, whatever comes first.
+ * A batch is scored at once, naive bayes models as one product of the batch's article-term 
+ * matrix with the term major table of a BatchNaiveBayesScorer. The queue holds at most 
+ * queueCapacity requests, submit blocks while it is full, so an overloaded batcher slows 
+ * its clients down instead of queueing up ever longer delays.
+ * A request that cannot be parsed or scored fails on its own, the worker goes on with the next.
+ * Latency (from submit until the result is available) and throughput are recorded.
+ */
+public class MicroBatcher {
+	private final CategoryScorer scorer;
+	// the scorer in term major form if it is a naive bayes model, otherwise null
+	private final BatchNaiveBayesScorer batchScorer;
+	private final int maxBatchSize;
+	private final long maxDelayNanos;
+	private final BlockingQueue<Request> queue;
+	private final Thread[] workers;
+	private final LatencyHistogram latencies;
+	private final AtomicLong numBatches;
+	private final long startTime;
+	private volatile boolean running = true;
+	
+	/**
+	 * A submitted document, the result becomes available once it has been classified.
+	 */
+	public static class Request {
+		private final String text;
+		private final long submitTime;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private String category;
+		private double[] scores;
+		private RuntimeException error;
+		
+		Request(String text) {
+			this.text = text;
+			this.submitTime = System.nanoTime();
+		}
+		
+		/**
+		 * Waits until the document has been classified and returns the best category.
+		 */
+		public String getCategory() throws InterruptedException {
+			done.await();
+			return category;
+		}
+		
+		/**
+		 * Waits until the document has been classified and returns the log score
+		 * of every category, in the order of the scorer's categories.
+		 */
+		public double[] getScores() throws InterruptedException {
+			done.await();
+			return scores;
+		}
+		
+		/**
+		 * Waits until the document has been processed and returns why it could not be classified,
+		 * null if it has been classified. Category and scores of a failed request are null.
+		 */
+		public RuntimeException getError() throws InterruptedException {
+			done.await();
+			return error;
+		}
+	}
+	
+	public MicroBatcher(CategoryScorer scorer, int numWorkers, int maxBatchSize, long maxDelay, TimeUnit unit, 
+			int queueCapacity) {
+		if (numWorkers < 1 || maxBatchSize < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException("Workers, batch size and queue capacity have to be at least 1: " 
+					+ numWorkers + ", " + maxBatchSize + ", " + queueCapacity);
+		}
+		this.scorer = scorer;
+		if (scorer instanceof BatchNaiveBayesScorer) {
+			this.batchScorer = (BatchNaiveBayesScorer) scorer;
+		} else if (scorer instanceof CompiledNaiveBayesModel) {
+			this.batchScorer = new BatchNaiveBayesScorer((CompiledNaiveBayesModel) scorer);
+		} else {
+			this.batchScorer = null;
+		}
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayNanos = unit.toNanos(maxDelay);
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.latencies = new LatencyHistogram();
+		this.numBatches = new AtomicLong();
+		this.startTime = System.nanoTime();
+		
+		this.workers = new Thread[numWorkers];
+		for (int i = 0; i < numWorkers; i++) {
+			workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work();
+				}
+			}, "classifier-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+	
+	/**
+	 * Queues the document, waits while the queue is full.
+	 */
+	public Request submit(String text) throws InterruptedException {
+		if (!running) {
+			throw new IllegalStateException("Batcher has been shut down");
+		}
+		Request request = new Request(text);
+		queue.put(request);
+		return request;
+	}
+	
+	private void work() {
+		List<Request> batch = new ArrayList<>(maxBatchSize);
+		// reused for every batch: the parsed articles and their scores, article i at i * numCategories
+		List<OhsumedArticle> articles = new ArrayList<>(maxBatchSize);
+		List<Request> parsed = new ArrayList<>(maxBatchSize);
+		double[] scores = new double[maxBatchSize * scorer.getNumCategories()];
+		try {
+			while (running || !queue.isEmpty()) {
+				Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				
+				// fill the batch until it is full or the oldest request has waited long enough
+				long deadline = first.submitTime + maxDelayNanos;
+				while (batch.size() < maxBatchSize) {
+					if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+						continue;
+					}
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						break;
+					}
+					Request next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+				
+				process(batch, parsed, articles, scores);
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private void process(List<Request> batch, List<Request> parsed, List<OhsumedArticle> articles, double[] scores) {
+		int numCategories = scorer.getNumCategories();
+		try {
+			for (Request request : batch) {
+				try {
+					articles.add(OhsumedParser.parseText(request.text));
+					parsed.add(request);
+				} catch (RuntimeException e) {
+					request.error = e;
+				}
+			}
+			
+			try {
+				scoreBatch(articles, scores);
+				for (int i = 0; i < parsed.size(); i++) {
+					Request request = parsed.get(i);
+					int base = i * numCategories;
+					// the scores are handed to the client, the matrix is reused for the next batch
+					request.scores = Arrays.copyOfRange(scores, base, base + numCategories);
+					request.category = scorer.getCategory(argmax(scores, base));
+				}
+			} catch (RuntimeException e) {
+				// score one by one, so that only the requests which fail get an error
+				for (int i = 0; i < parsed.size(); i++) {
+					Request request = parsed.get(i);
+					try {
+						double[] articleScores = new double[numCategories];
+						scorer.score(articles.get(i), articleScores);
+						request.scores = articleScores;
+						request.category = scorer.getCategory(argmax(articleScores, 0));
+					} catch (RuntimeException articleError) {
+						request.error = articleError;
+					}
+				}
+			}
+		} finally {
+			// every request is answered, no matter what failed
+			for (Request request : batch) {
+				request.done.countDown();
+				latencies.record(System.nanoTime() - request.submitTime);
+			}
+			parsed.clear();
+			articles.clear();
+		}
+		numBatches.incrementAndGet();
+	}
+	
+	private int argmax(double[] scores, int base) {
+		int best = 0;
+		for (int category = 1; category < scorer.getNumCategories(); category++) {
+			if (scores[base + category] > scores[base + best]) {
+				best = category;
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * Writes the scores of all articles into scores, article i at i * numCategories.
+	 */
+	private void scoreBatch(List<OhsumedArticle> articles, double[] scores) {
+		if (batchScorer != null) {
+			batchScorer.score(articles, 0, articles.size(), scores);
+			return;
+		}
+		int numCategories = scorer.getNumCategories();
+		double[] articleScores = new double[numCategories];
+		for (int i = 0; i < articles.size(); i++) {
+			scorer.score(articles.get(i), articleScores);
+			System.arraycopy(articleScores, 0, scores, i * numCategories, numCategories);
+		}
+	}
+	
+	/**
+	 * Stops accepting requests, waits until all queued requests have been classified.
+	 */
+	public void shutdown() throws InterruptedException {
+		running = false;
+		for (Thread worker : workers) {
+			worker.join();
+		}
+	}
+	
+	public LatencyHistogram getLatencies() {
+		return latencies;
+	}
+	
+	/**
+	 * Classified documents per second since the batcher has been started.
+	 */
+	public double getThroughput() {
+		return latencies.getCount() / ((System.nanoTime() - startTime) / 1e9);
+	}
+	
+	public double getAverageBatchSize() {
+		long batches = numBatches.get();
+		return batches == 0 ? 0.0 : (double) latencies.getCount() / batches;
+	}
+	
+	public String getStatistics() {
+		return String.format("documents: %d, throughput: %.1f docs/s, avg batch: %.1f, "
+				+ "latency p50: %.3f ms, p99: %.3f ms, max: %.3f ms",
+				latencies.getCount(), getThroughput(), getAverageBatchSize(),
+				latencies.getPercentile(50) / 1e6, latencies.getPercentile(99) / 1e6, latencies.getMax() / 1e6);
+	}
+}
@@ -0,0 +1,48 @@
+package de.hpi.nlp.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.hpi.nlp.model.CompiledNaiveBayesModel;
+import de.hpi.nlp.model.CountsFile;
+import de.hpi.nlp.model.ModelFile;
+import de.hpi.nlp.model.NaiveBayesModel;
+import de.hpi.nlp.model.PackedCorpus;
+import de.hpi.nlp.model.ParallelTrainer;
+import de.hpi.nlp.preparation.OhsumedParser;
+
+/**
+ * Trains a naive bayes model on a part of the training data, e.g. on every machine of a cluster, 
+ * and merges the partial counts into one model file for the ClassificationServer afterwards.
+ * 
+ * Usage: ModelTool train <training directory> <counts file>
+ *        ModelTool merge <model file> <counts file>...
+ */
+public class ModelTool {
+	
+	public static void main(String[] args) throws IOException, URISyntaxException {
+		if (args.length < 3 || !(args[0].equals("train") || args[0].equals("merge"))) {
+			System.err.println("Usage: ModelTool train <training directory> <counts file>");
+			System.err.println("       ModelTool merge <model file> <counts file>...");
+			return;
+		}
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		if (args[0].equals("train")) {
+			PackedCorpus corpus = OhsumedParser.parsePacked(new File(args[1]), numThreads);
+			NaiveBayesModel model = ParallelTrainer.trainNaiveBayes(corpus, null, numThreads);
+			CountsFile.write(model, new File(args[2]));
+			System.err.println("Counts of " + model.getNumArticles() + " articles written to " + args[2]);
+		} else {
+			List<NaiveBayesModel> models = new ArrayList<>();
+			for(int i = 2; i < args.length; i++) {
+				models.add(CountsFile.readNaiveBayes(new File(args[i])));
+			}
+			NaiveBayesModel model = NaiveBayesModel.merge(models);
+			ModelFile.write(new CompiledNaiveBayesModel(model), new File(args[1]));
+			System.err.println("Model of " + model.getNumArticles() + " articles written to " + args[1]);
+		}
+	}
+}
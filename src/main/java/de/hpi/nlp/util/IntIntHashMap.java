@@ -0,0 +1,222 @@
+package de.hpi.nlp.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from non-negative int keys (e.g. term ids) to int values,
+ * used as count table. Keys and values are kept in two primitive arrays, so neither 
+ * lookups nor increments box or allocate. Absent keys have the value 0.
+ * Not thread-safe.
+ */
+public class IntIntHashMap {
+	private static final int EMPTY = -1;
+	private static final float LOAD_FACTOR = 0.5f;
+	
+	private int[] keys;
+	private int[] values;
+	private int size = 0;
+	private int mask;
+	private int resizeThreshold;
+	
+	public IntIntHashMap() {
+		this(16);
+	}
+	
+	public IntIntHashMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+		allocate(capacity);
+	}
+	
+	public IntIntHashMap(IntIntHashMap other) {
+		this.keys = other.keys.clone();
+		this.values = other.values.clone();
+		this.size = other.size;
+		this.mask = other.mask;
+		this.resizeThreshold = other.resizeThreshold;
+	}
+	
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		values = new int[capacity];
+		mask = capacity - 1;
+		resizeThreshold = (int) (capacity * LOAD_FACTOR);
+	}
+	
+	private static int slot(int key, int mask) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+	
+	private int find(int key) {
+		int slot = slot(key, mask);
+		while (true) {
+			int k = keys[slot];
+			if (k == key) {
+				return slot;
+			}
+			if (k == EMPTY) {
+				return -1;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+	
+	public int get(int key) {
+		if (key < 0) {
+			return 0;
+		}
+		int slot = find(key);
+		return slot < 0 ? 0 : values[slot];
+	}
+	
+	public boolean containsKey(int key) {
+		return key >= 0 && find(key) >= 0;
+	}
+	
+	public void put(int key, int value) {
+		checkKey(key);
+		int slot = slot(key, mask);
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) {
+				values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		insertAt(slot, key, value);
+	}
+	
+	/**
+	 * Adds delta to the value of key and returns the new value. A key whose value 
+	 * drops to 0 is removed, so size() is always the number of non-zero counts.
+	 */
+	public int addTo(int key, int delta) {
+		checkKey(key);
+		int slot = slot(key, mask);
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) {
+				int value = values[slot] + delta;
+				if (value == 0) {
+					removeAt(slot);
+				} else {
+					values[slot] = value;
+				}
+				return value;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (delta != 0) {
+			insertAt(slot, key, delta);
+		}
+		return delta;
+	}
+	
+	/**
+	 * Adds all counts of the other map times factor to this one, e.g. 1 to merge the counts 
+	 * of several shards or -1 to take the counts of a part out again.
+	 */
+	public void addAll(IntIntHashMap other, int factor) {
+		for (int slot = 0; slot < other.capacity(); slot++) {
+			if (other.isOccupied(slot)) {
+				addTo(other.keyAt(slot), factor * other.valueAt(slot));
+			}
+		}
+	}
+	
+	public int remove(int key) {
+		if (key < 0) {
+			return 0;
+		}
+		int slot = find(key);
+		if (slot < 0) {
+			return 0;
+		}
+		int value = values[slot];
+		removeAt(slot);
+		return value;
+	}
+	
+	private void checkKey(int key) {
+		if (key < 0) {
+			throw new IllegalArgumentException("Keys must not be negative: " + key);
+		}
+	}
+	
+	private void insertAt(int slot, int key, int value) {
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size > resizeThreshold) {
+			rehash(keys.length * 2);
+		}
+	}
+	
+	/**
+	 * Backward shift deletion, keeps every probe sequence intact without tombstones.
+	 */
+	private void removeAt(int slot) {
+		size--;
+		int gap = slot;
+		int next = (gap + 1) & mask;
+		while (keys[next] != EMPTY) {
+			int home = slot(keys[next], mask);
+			// move the entry into the gap, unless its home slot lies cyclically in (gap, next]
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[gap] = EMPTY;
+		values[gap] = 0;
+	}
+	
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			int key = oldKeys[i];
+			if (key != EMPTY) {
+				int slot = slot(key, mask);
+				while (keys[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Number of slots, iterate over all entries with
+	 * for (int slot = 0; slot < capacity(); slot++) if (isOccupied(slot)) ...
+	 */
+	public int capacity() {
+		return keys.length;
+	}
+	
+	public boolean isOccupied(int slot) {
+		return keys[slot] != EMPTY;
+	}
+	
+	public int keyAt(int slot) {
+		return keys[slot];
+	}
+	
+	public int valueAt(int slot) {
+		return values[slot];
+	}
+	
+	/**
+	 * Approximate heap footprint of the table arrays.
+	 */
+	public long sizeInBytes() {
+		return 8L * keys.length;
+	}
+}
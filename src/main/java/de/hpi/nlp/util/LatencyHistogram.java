@@ -0,0 +1,120 @@
+package de.hpi.nlp.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative values (e.g. latencies in nanoseconds) with log-linear buckets:
+ * values below 64 are counted exactly, above that every power of two is split into 32 buckets,
+ * so percentiles are accurate to about 3% while the histogram has a fixed size of a few KB.
+ * Recording is lock-free and can be done from several threads.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int EXACT_VALUES = 2 * SUB_BUCKETS;
+	private static final int NUM_BUCKETS = EXACT_VALUES + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong totalValue = new AtomicLong();
+	private final AtomicLong maxValue = new AtomicLong();
+	
+	private static int bucket(long value) {
+		if (value < EXACT_VALUES) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return EXACT_VALUES + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+	
+	/**
+	 * Smallest value that falls into the bucket.
+	 */
+	private static long lowerBound(int bucket) {
+		if (bucket < EXACT_VALUES) {
+			return bucket;
+		}
+		int shift = (bucket - EXACT_VALUES) / SUB_BUCKETS + 1;
+		long subBucket = (bucket - EXACT_VALUES) % SUB_BUCKETS + SUB_BUCKETS;
+		return subBucket << shift;
+	}
+	
+	private static long width(int bucket) {
+		return bucket < EXACT_VALUES ? 1 : 1L << ((bucket - EXACT_VALUES) / SUB_BUCKETS + 1);
+	}
+	
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(bucket(value));
+		totalCount.incrementAndGet();
+		totalValue.addAndGet(value);
+		long max = maxValue.get();
+		while (value > max && !maxValue.compareAndSet(max, value)) {
+			max = maxValue.get();
+		}
+	}
+	
+	public long getCount() {
+		return totalCount.get();
+	}
+	
+	public long getMax() {
+		return maxValue.get();
+	}
+	
+	public double getMean() {
+		long count = totalCount.get();
+		return count == 0 ? 0.0 : (double) totalValue.get() / count;
+	}
+	
+	/**
+	 * Value below which the given percentage (0 - 100) of all recorded values lies, 
+	 * reported as the middle of its bucket. 0 if nothing has been recorded.
+	 */
+	public long getPercentile(double percentile) {
+		long count = totalCount.get();
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+		long seen = 0;
+		for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+			seen += counts.get(bucket);
+			if (seen >= rank) {
+				return Math.min(lowerBound(bucket) + width(bucket) / 2, getMax());
+			}
+		}
+		return getMax();
+	}
+	
+	/**
+	 * Adds all values recorded by the other histogram.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+			long count = other.counts.get(bucket);
+			if (count != 0) {
+				counts.addAndGet(bucket, count);
+			}
+		}
+		totalCount.addAndGet(other.totalCount.get());
+		totalValue.addAndGet(other.totalValue.get());
+		long max = maxValue.get();
+		long otherMax = other.maxValue.get();
+		while (otherMax > max && !maxValue.compareAndSet(max, otherMax)) {
+			max = maxValue.get();
+		}
+	}
+	
+	public void reset() {
+		for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+			counts.set(bucket, 0);
+		}
+		totalCount.set(0);
+		totalValue.set(0);
+		maxValue.set(0);
+	}
+}
@@ -0,0 +1,255 @@
+package de.hpi.nlp.util;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from non-negative long keys to int values, used as count table
+ * for bigrams, which are encoded as one long (see key(int, int)). Keys and values are kept in two primitive arrays, so neither 
+ * lookups nor increments box or allocate. Absent keys have the value 0.
+ * Not thread-safe.
+ */
+public class LongIntHashMap {
+	private static final long EMPTY = -1L;
+	private static final float LOAD_FACTOR = 0.5f;
+	
+	private long[] keys;
+	private int[] values;
+	private int size = 0;
+	private int mask;
+	private int resizeThreshold;
+	
+	public LongIntHashMap() {
+		this(16);
+	}
+	
+	public LongIntHashMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+		allocate(capacity);
+	}
+	
+	public LongIntHashMap(LongIntHashMap other) {
+		this.keys = other.keys.clone();
+		this.values = other.values.clone();
+		this.size = other.size;
+		this.mask = other.mask;
+		this.resizeThreshold = other.resizeThreshold;
+	}
+	
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		values = new int[capacity];
+		mask = capacity - 1;
+		resizeThreshold = (int) (capacity * LOAD_FACTOR);
+	}
+	
+	/**
+	 * Encodes the pair of two non-negative ints (e.g. previous and current term id) as key.
+	 */
+	public static long key(int first, int second) {
+		return ((long) first << 32) | second;
+	}
+	
+	private static int slot(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+	
+	private int find(long key) {
+		int slot = slot(key, mask);
+		while (true) {
+			long k = keys[slot];
+			if (k == key) {
+				return slot;
+			}
+			if (k == EMPTY) {
+				return -1;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+	
+	/**
+	 * Looks up a key in a copy of the key slots (see keyAt(int)), e.g. one stored in a memory
+	 * mapped file, and returns its slot or -1. The copy must have capacity() entries.
+	 */
+	public static int findSlot(LongBuffer keys, long key) {
+		if (key < 0) {
+			return -1;
+		}
+		int mask = keys.limit() - 1;
+		int slot = slot(key, mask);
+		while (true) {
+			long k = keys.get(slot);
+			if (k == key) {
+				return slot;
+			}
+			if (k == EMPTY) {
+				return -1;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+	
+	public int get(long key) {
+		if (key < 0) {
+			return 0;
+		}
+		int slot = find(key);
+		return slot < 0 ? 0 : values[slot];
+	}
+	
+	public boolean containsKey(long key) {
+		return key >= 0 && find(key) >= 0;
+	}
+	
+	public void put(long key, int value) {
+		checkKey(key);
+		int slot = slot(key, mask);
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) {
+				values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		insertAt(slot, key, value);
+	}
+	
+	/**
+	 * Adds delta to the value of key and returns the new value. A key whose value 
+	 * drops to 0 is removed, so size() is always the number of non-zero counts.
+	 */
+	public int addTo(long key, int delta) {
+		checkKey(key);
+		int slot = slot(key, mask);
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) {
+				int value = values[slot] + delta;
+				if (value == 0) {
+					removeAt(slot);
+				} else {
+					values[slot] = value;
+				}
+				return value;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (delta != 0) {
+			insertAt(slot, key, delta);
+		}
+		return delta;
+	}
+	
+	/**
+	 * Adds all counts of the other map times factor to this one, e.g. 1 to merge the counts 
+	 * of several shards or -1 to take the counts of a part out again.
+	 */
+	public void addAll(LongIntHashMap other, int factor) {
+		for (int slot = 0; slot < other.capacity(); slot++) {
+			if (other.isOccupied(slot)) {
+				addTo(other.keyAt(slot), factor * other.valueAt(slot));
+			}
+		}
+	}
+	
+	public int remove(long key) {
+		if (key < 0) {
+			return 0;
+		}
+		int slot = find(key);
+		if (slot < 0) {
+			return 0;
+		}
+		int value = values[slot];
+		removeAt(slot);
+		return value;
+	}
+	
+	private void checkKey(long key) {
+		if (key < 0) {
+			throw new IllegalArgumentException("Keys must not be negative: " + key);
+		}
+	}
+	
+	private void insertAt(int slot, long key, int value) {
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size > resizeThreshold) {
+			rehash(keys.length * 2);
+		}
+	}
+	
+	/**
+	 * Backward shift deletion, keeps every probe sequence intact without tombstones.
+	 */
+	private void removeAt(int slot) {
+		size--;
+		int gap = slot;
+		int next = (gap + 1) & mask;
+		while (keys[next] != EMPTY) {
+			int home = slot(keys[next], mask);
+			// move the entry into the gap, unless its home slot lies cyclically in (gap, next]
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[gap] = EMPTY;
+		values[gap] = 0;
+	}
+	
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			long key = oldKeys[i];
+			if (key != EMPTY) {
+				int slot = slot(key, mask);
+				while (keys[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Number of slots, iterate over all entries with
+	 * for (int slot = 0; slot < capacity(); slot++) if (isOccupied(slot)) ...
+	 */
+	public int capacity() {
+		return keys.length;
+	}
+	
+	public boolean isOccupied(int slot) {
+		return keys[slot] != EMPTY;
+	}
+	
+	/**
+	 * Key in the slot, negative for empty slots.
+	 */
+	public long keyAt(int slot) {
+		return keys[slot];
+	}
+	
+	public int valueAt(int slot) {
+		return values[slot];
+	}
+	
+	/**
+	 * Approximate heap footprint of the table arrays.
+	 */
+	public long sizeInBytes() {
+		return 12L * keys.length;
+	}
+}
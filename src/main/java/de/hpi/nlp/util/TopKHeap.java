@@ -0,0 +1,101 @@
+package de.hpi.nlp.util;
+
+/**
+ * Keeps the k highest scoring ids out of any number offered, in a binary min-heap of 
+ * primitive arrays, so offering is O(log k) and nothing is boxed. Not thread-safe.
+ */
+public class TopKHeap {
+	private final int capacity;
+	private final int[] ids;
+	private final double[] scores;
+	private int size = 0;
+	
+	public TopKHeap(int k) {
+		if (k < 1) {
+			throw new IllegalArgumentException("k has to be at least 1: " + k);
+		}
+		this.capacity = k;
+		this.ids = new int[k];
+		this.scores = new double[k];
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isFull() {
+		return size == capacity;
+	}
+	
+	/**
+	 * The lowest score in the heap, a score has to be higher than this to get in once the heap is full.
+	 */
+	public double minScore() {
+		return size == 0 ? Double.NEGATIVE_INFINITY : scores[0];
+	}
+	
+	/**
+	 * Returns whether the id has been taken, i.e. the heap is not full yet or the score 
+	 * is higher than the lowest one, which is dropped then.
+	 */
+	public boolean offer(int id, double score) {
+		if (size < capacity) {
+			int i = size++;
+			// sift up
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (scores[parent] <= score) {
+					break;
+				}
+				ids[i] = ids[parent];
+				scores[i] = scores[parent];
+				i = parent;
+			}
+			ids[i] = id;
+			scores[i] = score;
+			return true;
+		}
+		if (score <= scores[0]) {
+			return false;
+		}
+		siftDown(id, score);
+		return true;
+	}
+	
+	private void siftDown(int id, double score) {
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && scores[child + 1] < scores[child]) {
+				child++;
+			}
+			if (score <= scores[child]) {
+				break;
+			}
+			ids[i] = ids[child];
+			scores[i] = scores[child];
+			i = child;
+		}
+		ids[i] = id;
+		scores[i] = score;
+	}
+	
+	/**
+	 * Empties the heap into the arrays, highest score first, and returns the number of entries.
+	 */
+	public int drainDescending(int[] idsOut, double[] scoresOut) {
+		int n = size;
+		for (int i = n - 1; i >= 0; i--) {
+			idsOut[i] = ids[0];
+			scoresOut[i] = scores[0];
+			size--;
+			if (size > 0) {
+				siftDown(ids[size], scores[size]);
+			}
+		}
+		return n;
+	}
+}
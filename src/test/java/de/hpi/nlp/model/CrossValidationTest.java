@@ -0,0 +1,139 @@
+package de.hpi.nlp.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.hpi.nlp.preparation.OhsumedParser;
+
+/**
+ * The scorer of every fold scores the articles of the fold exactly as the compiled model of 
+ * the counts of all other folds, including the first tokens of sentences, terms that are 
+ * unknown and terms that only occur in the fold.
+ */
+public class CrossValidationTest {
+	private static final int NUM_FOLDS = 3;
+	
+	private static final String[][] TRAINING = {
+		{"C01", "Bacterial infection of the lung treated with antibiotics.\nThe infection cleared within days."},
+		{"C01", "Viral infection in children, fever and cough.\nAntibiotics did not help against the virus."},
+		{"C01", "Fever and infection of the lung in elderly patients."},
+		{"C01", "Antibiotics against the bacterial infection, the fever went down."},
+		{"C04", "Malignant tumor of the breast.\nChemotherapy reduced the tumor size."},
+		{"C04", "Lung cancer in smokers, the tumor was removed by surgery."},
+		{"C04", "Chemotherapy of the malignant tumor in elderly patients."},
+		// the only article with this term, its fold leaves none of it
+		{"C04", "Breast cancer surgery, flibbertigibbet tumor removed."},
+		{"C14", "Myocardial infarction and heart failure in elderly patients."},
+		{"C14", "Blood pressure of patients with heart disease, treated with beta blockers."},
+		{"C14", "Heart failure after myocardial infarction.\nBlood pressure went down."},
+		{"C14", "Beta blockers against heart disease in patients."},
+	};
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private List<PackedCorpus> folds;
+	
+	@Before
+	public void setUp() throws IOException, URISyntaxException {
+		// one folder per category, one file per article, one sentence per line
+		File training = folder.newFolder("training");
+		for (int i = 0; i < TRAINING.length; i++) {
+			File classFolder = new File(training, TRAINING[i][0]);
+			classFolder.mkdir();
+			Files.write(new File(classFolder, String.format("%07d", i)).toPath(), 
+					TRAINING[i][1].getBytes(StandardCharsets.UTF_8));
+		}
+		folds = CrossValidation.split(OhsumedParser.parsePacked(training, 1), NUM_FOLDS);
+	}
+	
+	@Test
+	public void naiveBayesFoldsScoreLikeTheSubtractedModel() {
+		List<NaiveBayesModel> counts = new ArrayList<>();
+		for (PackedCorpus fold : folds) {
+			counts.add(new NaiveBayesModel(fold));
+		}
+		NaiveBayesModel total = NaiveBayesModel.merge(counts);
+		CrossValidation.NaiveBayesTotal denseTotal = new CrossValidation.NaiveBayesTotal(total);
+		
+		boolean termLeftVocabulary = false;
+		for (int fold = 0; fold < NUM_FOLDS; fold++) {
+			NaiveBayesModel rest = NaiveBayesModel.subtract(total, counts.get(fold));
+			for (String categoryName : rest.getCategoryUnigrams().keySet()) {
+				termLeftVocabulary |= rest.getVocabularySize(categoryName) < total.getVocabularySize(categoryName);
+			}
+			assertSameScores(new CompiledNaiveBayesModel(rest), 
+					new CrossValidation.NaiveBayesFoldScorer(denseTotal, counts.get(fold)), folds.get(fold));
+		}
+		assertTrue(termLeftVocabulary);
+	}
+	
+	@Test
+	public void bayesFoldsScoreLikeTheSubtractedModel() {
+		List<BayesModel> counts = new ArrayList<>();
+		for (PackedCorpus fold : folds) {
+			counts.add(new BayesModel(fold));
+		}
+		BayesModel total = BayesModel.merge(counts);
+		
+		boolean termLeftVocabulary = false;
+		for (int fold = 0; fold < NUM_FOLDS; fold++) {
+			BayesModel rest = BayesModel.subtract(total, counts.get(fold));
+			for (String categoryName : rest.getCategoryTermFrequency().keySet()) {
+				termLeftVocabulary |= rest.getCategoryTermFrequency().get(categoryName).size() 
+						< total.getCategoryTermFrequency().get(categoryName).size();
+			}
+			assertSameScores(new CompiledBayesModel(rest), 
+					new CrossValidation.BayesFoldScorer(total, counts.get(fold), folds.get(fold)), folds.get(fold));
+		}
+		assertTrue(termLeftVocabulary);
+	}
+	
+	private static void assertSameScores(CategoryScorer expected, CategoryScorer actual, PackedCorpus fold) {
+		assertEquals(expected.getNumCategories(), actual.getNumCategories());
+		double[] expectedScores = new double[expected.getNumCategories()];
+		double[] actualScores = new double[actual.getNumCategories()];
+		for (OhsumedArticle foldArticle : fold) {
+			for (OhsumedArticle article : new OhsumedArticle[] {foldArticle, withUnknownTerms(foldArticle)}) {
+				expected.score(article, expectedScores);
+				actual.score(article, actualScores);
+				for (int category = 0; category < expected.getNumCategories(); category++) {
+					int actualCategory = actual.getCategoryIndex(expected.getCategory(category));
+					assertEquals(expectedScores[category], actualScores[actualCategory], 0.0);
+				}
+				assertEquals(expected.getCategory(expected.bestCategory(article)), 
+						actual.getCategory(actual.bestCategory(article)));
+			}
+		}
+	}
+	
+	/**
+	 * The article with an unknown term at the beginning and the end of every sentence.
+	 */
+	private static OhsumedArticle withUnknownTerms(OhsumedArticle article) {
+		OhsumedArticle variant = new OhsumedArticle(article.getCategory());
+		for (Sentence s : article) {
+			Sentence sentence = new Sentence();
+			sentence.addTermId(TermDictionary.UNKNOWN_TERM);
+			for (int i = 0; i < s.getNumTokens(); i++) {
+				sentence.addTermId(s.getTermId(i));
+			}
+			sentence.addTermId(TermDictionary.UNKNOWN_TERM);
+			variant.addSentence(sentence);
+		}
+		return variant;
+	}
+}
@@ -0,0 +1,131 @@
+package de.hpi.nlp.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.hpi.nlp.preparation.OhsumedParser;
+
+/**
+ * A compiled model read back from its ModelFile scores every article exactly as the model
+ * it has been written from.
+ */
+public class ModelFileTest {
+	private static final String[][] TRAINING = {
+		{"C01", "Bacterial infection of the lung treated with antibiotics.\nThe infection cleared within days."},
+		{"C01", "Viral infection in children, fever and cough.\nAntibiotics did not help against the virus."},
+		{"C04", "Malignant tumor of the breast.\nChemotherapy reduced the tumor size."},
+		{"C04", "Lung cancer in smokers, the tumor was removed by surgery."},
+		{"C14", "Myocardial infarction and heart failure in elderly patients."},
+		{"C14", "Blood pressure of patients with heart disease, treated with beta blockers."},
+	};
+	
+	private static final String[] TEST = {
+		"Infection of the lung with fever.",
+		"Breast tumor removed by surgery.",
+		"Heart failure and blood pressure.",
+		// none of these terms are in the models
+		"Zyxwvut qwertzuiop flibbertigibbet.",
+		"Heart zyxwvut tumor qwertzuiop infection.",
+	};
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private OhsumedCorpus corpus;
+	private List<OhsumedArticle> articles;
+	
+	@Before
+	public void setUp() throws IOException, URISyntaxException {
+		// one folder per category, one file per article, one sentence per line
+		File training = folder.newFolder("training");
+		for (int i = 0; i < TRAINING.length; i++) {
+			File classFolder = new File(training, TRAINING[i][0]);
+			classFolder.mkdir();
+			Files.write(new File(classFolder, String.format("%07d", i)).toPath(), 
+					TRAINING[i][1].getBytes(StandardCharsets.UTF_8));
+		}
+		corpus = OhsumedParser.parse(training, 1);
+		articles = new ArrayList<>();
+		for (String text : TEST) {
+			articles.add(OhsumedParser.parseText(text));
+		}
+	}
+	
+	@Test
+	public void naiveBayesRoundTrip() throws IOException {
+		CompiledNaiveBayesModel model = new CompiledNaiveBayesModel(new NaiveBayesModel(corpus));
+		File file = folder.newFile("naive-bayes.model");
+		ModelFile.write(model, file);
+		CategoryScorer read = ModelFile.read(file);
+		
+		assertTrue(read instanceof CompiledNaiveBayesModel);
+		assertSameScores(model, read);
+	}
+	
+	/**
+	 * A model restricted to features has rows in the order of its features, which differ from 
+	 * the term ids, so the vocabulary read back has to map the ids of the dictionary to its rows, 
+	 * the same as for a file written by a process whose dictionary has other ids.
+	 */
+	@Test
+	public void remappedVocabularyRoundTrip() throws IOException {
+		// every term of the corpus but the one with the lowest id
+		BitSet features = new BitSet();
+		for (int term : PackedCorpus.of(corpus).getTermIds()) {
+			features.set(term);
+		}
+		features.clear(features.nextSetBit(0));
+		CompiledNaiveBayesModel model = new CompiledNaiveBayesModel(new NaiveBayesModel(PackedCorpus.of(corpus), features));
+		File file = folder.newFile("features.model");
+		ModelFile.write(model, file);
+		CompiledNaiveBayesModel read = (CompiledNaiveBayesModel) ModelFile.read(file);
+		
+		int term = features.nextSetBit(0);
+		assertNotEquals(term, read.getVocabulary().row(term));
+		assertSameScores(model, read);
+	}
+	
+	@Test
+	public void bayesRoundTrip() throws IOException {
+		CompiledBayesModel model = new CompiledBayesModel(new BayesModel(corpus));
+		File file = folder.newFile("bayes.model");
+		ModelFile.write(model, file);
+		CategoryScorer read = ModelFile.read(file);
+		
+		assertTrue(read instanceof CompiledBayesModel);
+		assertSameScores(model, read);
+	}
+	
+	private void assertSameScores(CategoryScorer expected, CategoryScorer actual) {
+		assertEquals(expected.getNumCategories(), actual.getNumCategories());
+		for (int category = 0; category < expected.getNumCategories(); category++) {
+			assertEquals(expected.getCategory(category), actual.getCategory(category));
+			assertEquals(category, actual.getCategoryIndex(expected.getCategory(category)));
+		}
+		
+		double[] expectedScores = new double[expected.getNumCategories()];
+		double[] actualScores = new double[actual.getNumCategories()];
+		for (OhsumedArticle article : articles) {
+			expected.score(article, expectedScores);
+			actual.score(article, actualScores);
+			assertArrayEquals(expectedScores, actualScores, 0.0);
+			assertEquals(expected.bestCategory(article), actual.bestCategory(article));
+		}
+	}
+}
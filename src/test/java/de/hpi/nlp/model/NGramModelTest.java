@@ -0,0 +1,59 @@
+package de.hpi.nlp.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.hpi.nlp.preparation.OhsumedParser;
+
+/**
+ * Scores of an n-gram model on a corpus small enough to smooth by hand.
+ */
+public class NGramModelTest {
+	private static final double DELTA = 1e-12;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	/**
+	 * "tt" follows "aa" in C0 only. With the term ids in this order the node of "aa tt" in C0 is
+	 * the last child of "aa", directly followed by the node of "bb tt" in C1, which must not be 
+	 * taken for "aa tt" in C1: P(tt | aa, C1) backs off to the unigram.
+	 */
+	@Test
+	public void lastLevelStopsAtTheChildrenOfTheContext() throws IOException, URISyntaxException {
+		for (String term : new String[] {"aa", "bb", "zz", "tt"}) {
+			TermDictionary.getInstance().intern(term);
+		}
+		File training = folder.newFolder("training");
+		write(training, "C0", "aa tt");
+		write(training, "C1", "aa zz\nbb tt");
+		NGramModel model = new NGramModel(OhsumedParser.parse(training, 1), 2);
+		
+		double[] scores = new double[model.getNumCategories()];
+		model.score(OhsumedParser.parseText("aa tt"), scores);
+		
+		// C0: 2 tokens, 2 terms, P(aa | C0) = P(tt | C0) = (1 + 1) / (2 + 2)
+		// P(aa | BOS, C0) = (1 + 1 * 0.5) / (1 + 1), P(tt | aa, C0) = (1 + 1 * 0.5) / (1 + 1)
+		int c0 = model.getCategoryIndex("C0");
+		assertEquals(Math.log(0.5) + Math.log(0.75) + Math.log(0.75), scores[c0], DELTA);
+		// C1: 4 tokens, 4 terms, P(aa | C1) = P(tt | C1) = (1 + 1) / (4 + 4)
+		// P(aa | BOS, C1) = (1 + 2 * 0.25) / (2 + 2), P(tt | aa, C1) = (0 + 1 * 0.25) / (1 + 1)
+		int c1 = model.getCategoryIndex("C1");
+		assertEquals(Math.log(0.5) + Math.log(0.375) + Math.log(0.125), scores[c1], DELTA);
+	}
+	
+	private static void write(File training, String category, String text) throws IOException {
+		File classFolder = new File(training, category);
+		classFolder.mkdir();
+		Files.write(new File(classFolder, "0000000").toPath(), text.getBytes(StandardCharsets.UTF_8));
+	}
+}